@@ -114,6 +114,8 @@ public final class Utils {
 
     static final int BD_ADDR_LEN = 6; // bytes
     static final int BD_UUID_LEN = 16; // bytes
+    private static final int BD_ADDR_STRING_LEN = 3 * BD_ADDR_LEN - 1; // chars
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     /** Thread pool to handle background and outgoing blocking task */
     public static final ExecutorService BackgroundExecutor = Executors.newSingleThreadExecutor();
@@ -220,9 +222,48 @@ public final class Utils {
             return null;
         }
 
-        return String.format(
-                "%02X:%02X:%02X:%02X:%02X:%02X",
-                address[0], address[1], address[2], address[3], address[4], address[5]);
+        // Called for every advertising report, so avoid String.format.
+        char[] chars = new char[BD_ADDR_STRING_LEN];
+        for (int i = 0; i < BD_ADDR_LEN; i++) {
+            int b = address[i] & 0xFF;
+            if (i > 0) {
+                chars[3 * i - 1] = ':';
+            }
+            chars[3 * i] = HEX_DIGITS[b >> 4];
+            chars[3 * i + 1] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the 48-bit value of an address such as "00:11:22:AA:BB:CC", in either case.
+     *
+     * <p>Unlike the address string, the value can be compared and used as a key without
+     * allocating.
+     *
+     * @param address the address to convert
+     * @return the value of the address, or -1 if it is not a valid address
+     */
+    public static long getLongFromAddress(String address) {
+        if (address == null || address.length() != BD_ADDR_STRING_LEN) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < BD_ADDR_STRING_LEN; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return -1;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
     }
 
     public static String getRedactedAddressStringFromByte(byte[] address) {
@@ -18,6 +18,8 @@ package com.android.bluetooth.avrcp;
 
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -26,6 +28,12 @@ import java.util.Map;
 final class AvrcpCoverArtStorage {
     private static final String TAG = AvrcpCoverArtStorage.class.getSimpleName();
 
+    /**
+     * Maximum number of bytes of encoded images kept with the stored images. Encodings of the least
+     * recently used images are dropped first, and done again if they are requested again.
+     */
+    @VisibleForTesting static final int MAX_ENCODED_IMAGE_BYTES = 512 * 1024;
+
     private final Object mHandlesLock = new Object();
     private int mNextImageHandle = 0;
 
@@ -57,7 +65,7 @@ final class AvrcpCoverArtStorage {
     /** Store an image and get the image handle it's been associated with. */
     public String storeImage(CoverArt coverArt) {
         debug("storeImage(CoverArt='" + coverArt + "')");
-        if (coverArt == null || coverArt.getImage() == null) {
+        if (coverArt == null) {
             debug("Received a null image");
             return null;
         }
@@ -102,6 +110,7 @@ final class AvrcpCoverArtStorage {
         synchronized (mImagesLock) {
             CoverArt coverArt = mImages.get(imageHandle);
             debug("Image handle '" + imageHandle + "' -> " + coverArt);
+            trimEncodedImages();
             return coverArt;
         }
     }
@@ -119,6 +128,7 @@ final class AvrcpCoverArtStorage {
     }
 
     private void trimToSize() {
+        trimEncodedImages();
         if (mMaxImages <= 0) return;
         synchronized (mImagesLock) {
             while (mImages.size() > mMaxImages) {
@@ -132,6 +142,28 @@ final class AvrcpCoverArtStorage {
         }
     }
 
+    /**
+     * Drop the encoded images of the least recently used images until the encoded images kept fit
+     * in {@link #MAX_ENCODED_IMAGE_BYTES}.
+     *
+     * <p>Images are encoded when they are requested, after they are returned by {@link #getImage},
+     * so the budget is enforced by the next access.
+     */
+    private void trimEncodedImages() {
+        synchronized (mImagesLock) {
+            int bytes = 0;
+            for (CoverArt coverArt : mImages.values()) {
+                bytes += coverArt.getEncodedImageSize();
+            }
+            // Iterating the values doesn't change the access order, LRU comes first
+            for (CoverArt coverArt : mImages.values()) {
+                if (bytes <= MAX_ENCODED_IMAGE_BYTES) break;
+                bytes -= coverArt.getEncodedImageSize();
+                coverArt.releaseEncodedImage();
+            }
+        }
+    }
+
     /**
      * Get the next available image handle value if one is available.
      *
@@ -27,6 +27,7 @@ import com.android.bluetooth.avrcpcontroller.BipImageProperties;
 import com.android.bluetooth.avrcpcontroller.BipPixel;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -44,6 +45,11 @@ public class CoverArt {
 
     private String mImageHandle = null;
     private Bitmap mImage = null;
+    private String mImageHash = null;
+
+    // The JPEG encoding of the image, shared by all the supported formats. Kept until released
+    // by the storage, see releaseEncodedImage().
+    private byte[] mEncodedImage = null;
 
     /** Create a CoverArt object from an audio_util Image abstraction */
     CoverArt(Image image) {
@@ -71,43 +77,35 @@ public class CoverArt {
         mImageHandle = handle;
     }
 
-    /** Covert a Bitmap to a byte array with an image format without lossy compression */
-    private byte[] toByteArray(Bitmap bitmap) {
-        if (bitmap == null) return null;
-        ByteArrayOutputStream buffer =
-                new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight());
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, buffer);
-        return buffer.toByteArray();
-    }
-
-    /** Get a hash code of this CoverArt image */
-    public String getImageHash() {
-        byte[] image = toByteArray(mImage);
-        if (image == null) return null;
-        String hash = null;
+    /**
+     * Get a hash code of this CoverArt image
+     *
+     * <p>The hash is computed once, from the pixels of the image rather than from an encoding.
+     */
+    public synchronized String getImageHash() {
+        if (mImageHash != null || mImage == null) return mImageHash;
+        ByteBuffer pixels = ByteBuffer.allocate(mImage.getByteCount());
+        mImage.copyPixelsToBuffer(pixels);
         try {
             final MessageDigest digest = MessageDigest.getInstance("MD5");
-            digest.update(/* Bitmap to input stream */ image);
+            digest.update(pixels.array());
             byte[] messageDigest = digest.digest();
 
             StringBuilder hexString = new StringBuilder();
             for (int i = 0; i < messageDigest.length; i++) {
                 hexString.append(Integer.toHexString(0xFF & messageDigest[i]));
             }
-            hash = hexString.toString();
+            mImageHash = hexString.toString();
         } catch (NoSuchAlgorithmException e) {
             Log.e(TAG, "Failed to hash bitmap", e);
         }
-        return hash;
+        return mImageHash;
     }
 
     /** Get the cover artwork image bytes in the native format */
     public byte[] getImage() {
         debug("GetImage(native)");
-        if (mImage == null) return null;
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        mImage.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-        return outputStream.toByteArray();
+        return getEncodedImage();
     }
 
     /** Get the cover artwork image bytes in the given encoding and pixel size */
@@ -119,10 +117,7 @@ public class CoverArt {
             error("Given format isn't available for this image");
             return null;
         }
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        mImage.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-        return outputStream.toByteArray();
+        return getEncodedImage();
     }
 
     /** Determine if a given image descriptor is valid */
@@ -142,10 +137,28 @@ public class CoverArt {
     /** Get the cover artwork image bytes as a 200 x 200 JPEG thumbnail */
     public byte[] getThumbnail() {
         debug("GetImageThumbnail()");
+        return getEncodedImage();
+    }
+
+    /** Encode the image, unless the encoding is still kept from a previous request */
+    private synchronized byte[] getEncodedImage() {
         if (mImage == null) return null;
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        mImage.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-        return outputStream.toByteArray();
+        if (mEncodedImage == null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            mImage.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
+            mEncodedImage = outputStream.toByteArray();
+        }
+        return mEncodedImage;
+    }
+
+    /** Get the size in bytes of the encoded image kept, 0 if none is */
+    synchronized int getEncodedImageSize() {
+        return mEncodedImage != null ? mEncodedImage.length : 0;
+    }
+
+    /** Drop the encoded image, it is encoded again by the next request */
+    synchronized void releaseEncodedImage() {
+        mEncodedImage = null;
     }
 
     /** Get the set of image properties that the cover artwork can be turned into */
@@ -171,9 +184,9 @@ public class CoverArt {
         return properties;
     }
 
-    /** Get the storage size of this image in bytes */
+    /** Get the storage size of this image in bytes, including the encoded image kept */
     public int size() {
-        return mImage != null ? mImage.getAllocationByteCount() : 0;
+        return (mImage != null ? mImage.getAllocationByteCount() : 0) + getEncodedImageSize();
     }
 
     @Override
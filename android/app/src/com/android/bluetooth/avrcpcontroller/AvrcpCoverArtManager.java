@@ -25,6 +25,7 @@ import android.util.Log;
 
 import com.android.obex.ResponseCodes;
 
+import java.io.File;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -333,6 +334,17 @@ public class AvrcpCoverArtManager {
         return mCoverArtStorage.getImage(device, imageUuid);
     }
 
+    /**
+     * Get the file holding a specific downloaded image if it exists
+     *
+     * @param device The remote Bluetooth device associated with the image
+     * @param imageUuid The UUID associated with the image you wish to retrieve
+     * @return The encoded image file, or null if the image is not available as a file
+     */
+    public File getImageFile(BluetoothDevice device, String imageUuid) {
+        return mCoverArtStorage.getImageFile(device, imageUuid);
+    }
+
     /**
      * Remove a specific downloaded image if it exists
      *
@@ -497,6 +509,7 @@ public class AvrcpCoverArtManager {
             }
         }
         sb.append("  ").append(mCoverArtStorage.toString());
+        sb.append("  ").append(mCoverArtStorage.getStats());
         return sb.toString();
     }
 
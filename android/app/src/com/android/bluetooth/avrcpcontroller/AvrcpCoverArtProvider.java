@@ -26,6 +26,7 @@ import android.net.Uri;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -89,9 +90,27 @@ public class AvrcpCoverArtProvider extends ContentProvider {
         return manager.getImage(device, imageUuid);
     }
 
+    private File getImageFile(BluetoothDevice device, String imageUuid) {
+        AvrcpControllerService service = AvrcpControllerService.getAvrcpControllerService();
+        if (service == null) return null;
+        AvrcpCoverArtManager manager = service.getCoverArtManager();
+        if (manager == null) return null;
+        return manager.getImageFile(device, imageUuid);
+    }
+
     private ParcelFileDescriptor getImageDescriptor(BluetoothDevice device, String imageUuid)
             throws FileNotFoundException, IOException {
         debug("getImageDescriptor(" + device + ", " + imageUuid + ")");
+        File file = getImageFile(device, imageUuid);
+        if (file != null) {
+            try {
+                return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            } catch (FileNotFoundException e) {
+                // The image was just removed or replaced, fall back to the decoded image.
+                debug("Could not open image file " + file);
+            }
+        }
+
         Bitmap image = getImage(device, imageUuid);
         if (image == null) {
             debug("Could not get requested image");
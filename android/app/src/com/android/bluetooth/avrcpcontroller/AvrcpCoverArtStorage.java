@@ -19,30 +19,69 @@ package com.android.bluetooth.avrcpcontroller;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.util.Log;
+import android.util.Pair;
 
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
-/** An abstraction of the cover art image storage mechanism. */
+/**
+ * An abstraction of the cover art image storage mechanism.
+ *
+ * <p>Decoded images are kept in memory up to a byte budget. Once the budget is exceeded the least
+ * recently used images are written to an app-private disk cache and dropped from memory. They are
+ * decoded again from disk when requested, and the same files are served by {@link
+ * AvrcpCoverArtProvider}.
+ */
 public class AvrcpCoverArtStorage {
     private static final String TAG = AvrcpCoverArtStorage.class.getSimpleName();
 
+    @VisibleForTesting static final long MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+
+    private static final String CACHE_DIR_NAME = "avrcp_cover_art";
+
     private final Context mContext;
+    private final long mMaxMemoryBytes;
 
     /* Each device gets its own place to land images. This makes it easier to clean things up on a
      * per device basis. This also allows us to be confident that acting on one device will not
      * impact the images of another.
      *
-     * The "landing place" is simply a map that will direct a given UUID to the proper bitmap image
+     * The "landing place" is simply the set of UUIDs stored for the device. Each image is either
+     * in memory, on disk, or both.
      */
-    private final Map<BluetoothDevice, Map<String, Bitmap>> mDeviceImages =
-            new ConcurrentHashMap<>(1);
+    private final Map<BluetoothDevice, Set<String>> mDeviceImages = new HashMap<>(1);
+
+    // In memory images in least recently used order, across all devices.
+    private final LinkedHashMap<Pair<BluetoothDevice, String>, Bitmap> mMemoryImages =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long mMemoryBytes;
+
+    private long mHits;
+    private long mDiskHits;
+    private long mMisses;
+    private long mEvictions;
 
     /** Create and initialize this Cover Art storage interface */
     public AvrcpCoverArtStorage(Context context) {
+        this(context, MAX_MEMORY_BYTES);
+    }
+
+    @VisibleForTesting
+    AvrcpCoverArtStorage(Context context, long maxMemoryBytes) {
         mContext = context;
+        mMaxMemoryBytes = maxMemoryBytes;
     }
 
     /**
@@ -51,11 +90,11 @@ public class AvrcpCoverArtStorage {
      * @param device - The device the images was downloaded from
      * @param imageUuid - The UUID that identifies the image
      */
-    public boolean doesImageExist(BluetoothDevice device, String imageUuid) {
+    public synchronized boolean doesImageExist(BluetoothDevice device, String imageUuid) {
         if (device == null || imageUuid == null || "".equals(imageUuid)) return false;
-        Map<String, Bitmap> images = mDeviceImages.get(device);
+        Set<String> images = mDeviceImages.get(device);
         if (images == null) return false;
-        return images.containsKey(imageUuid);
+        return images.contains(imageUuid);
     }
 
     /**
@@ -65,11 +104,45 @@ public class AvrcpCoverArtStorage {
      * @param imageUuid - The UUID that identifies the image
      * @return A Bitmap object of the image
      */
-    public Bitmap getImage(BluetoothDevice device, String imageUuid) {
-        if (device == null || imageUuid == null || "".equals(imageUuid)) return null;
-        Map<String, Bitmap> images = mDeviceImages.get(device);
-        if (images == null) return null;
-        return images.get(imageUuid);
+    public synchronized Bitmap getImage(BluetoothDevice device, String imageUuid) {
+        if (!doesImageExist(device, imageUuid)) {
+            mMisses++;
+            return null;
+        }
+        Pair<BluetoothDevice, String> key = new Pair<>(device, imageUuid);
+        Bitmap image = mMemoryImages.get(key);
+        if (image != null) {
+            mHits++;
+            return image;
+        }
+
+        File file = getCacheFile(device, imageUuid, false);
+        image = BitmapFactory.decodeFile(file.getPath());
+        if (image == null) {
+            warn("Failed to read image '" + imageUuid + "' for device " + device);
+            mMisses++;
+            removeImage(device, imageUuid);
+            return null;
+        }
+        mDiskHits++;
+        putInMemory(key, image);
+        return image;
+    }
+
+    /**
+     * Get the file holding the encoded image, writing it to the disk cache if needed
+     *
+     * @param device - The device the images was downloaded from
+     * @param imageUuid - The UUID that identifies the image
+     * @return The image file, or null if the image does not exist or could not be written
+     */
+    public synchronized File getImageFile(BluetoothDevice device, String imageUuid) {
+        if (!doesImageExist(device, imageUuid)) return null;
+        File file = getCacheFile(device, imageUuid, false);
+        if (file.exists()) return file;
+        Bitmap image = mMemoryImages.get(new Pair<>(device, imageUuid));
+        if (image == null || !writeImage(device, imageUuid, image)) return null;
+        return file;
     }
 
     /**
@@ -86,15 +159,11 @@ public class AvrcpCoverArtStorage {
             return null;
         }
 
-        // A Thread safe way of creating a new UUID->Image set for a device. The putIfAbsent()
-        // function will return the value of the key if it wasn't absent. If it returns null, then
-        // there was no value there and we are to assume the reference we passed in was added.
-        Map<String, Bitmap> newImageSet = new ConcurrentHashMap<String, Bitmap>(1);
-        Map<String, Bitmap> images = mDeviceImages.putIfAbsent(device, newImageSet);
-        if (images == null) {
-            newImageSet.put(imageUuid, image);
-        } else {
-            images.put(imageUuid, image);
+        synchronized (this) {
+            // A replaced image must not be served from its stale file.
+            getCacheFile(device, imageUuid, false).delete();
+            mDeviceImages.computeIfAbsent(device, d -> new LinkedHashSet<>(1)).add(imageUuid);
+            putInMemory(new Pair<>(device, imageUuid), image);
         }
 
         Uri uri = AvrcpCoverArtProvider.getImageUri(device, imageUuid);
@@ -109,19 +178,19 @@ public class AvrcpCoverArtStorage {
      * @param device The device the image belongs to
      * @param imageUuid - The UUID that identifies the image
      */
-    public void removeImage(BluetoothDevice device, String imageUuid) {
+    public synchronized void removeImage(BluetoothDevice device, String imageUuid) {
         debug("Removing image '" + imageUuid + "' from device " + device);
         if (device == null || imageUuid == null || "".equals(imageUuid)) return;
 
-        Map<String, Bitmap> images = mDeviceImages.get(device);
-        if (images == null) {
+        Set<String> images = mDeviceImages.get(device);
+        if (images == null || !images.remove(imageUuid)) {
             return;
         }
-
-        images.remove(imageUuid);
         if (images.size() == 0) {
             mDeviceImages.remove(device);
         }
+        removeFromMemory(new Pair<>(device, imageUuid));
+        getCacheFile(device, imageUuid, false).delete();
 
         debug("Image '" + imageUuid + "' removed for device '" + device + "'");
     }
@@ -131,25 +200,70 @@ public class AvrcpCoverArtStorage {
      *
      * @param device The device you wish to have images removed for
      */
-    public void removeImagesForDevice(BluetoothDevice device) {
+    public synchronized void removeImagesForDevice(BluetoothDevice device) {
         if (device == null) return;
         debug("Remove cover art for device " + device);
-        mDeviceImages.remove(device);
+        Set<String> images = mDeviceImages.remove(device);
+        if (images != null) {
+            for (String imageUuid : images) {
+                removeFromMemory(new Pair<>(device, imageUuid));
+            }
+        }
+        deleteRecursively(getDeviceDir(device));
     }
 
     /** Clear the entirety of storage */
-    public void clear() {
+    public synchronized void clear() {
         debug("Clearing all images");
         mDeviceImages.clear();
+        mMemoryImages.clear();
+        mMemoryBytes = 0;
+        // Also drops any images left on disk by a previous run.
+        deleteRecursively(getCacheDir());
+    }
+
+    /** Get the number of bytes used by the images held in memory */
+    @VisibleForTesting
+    synchronized long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    /** Get the number of images moved from memory to the disk cache */
+    @VisibleForTesting
+    synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /** Get the number of image requests served from the disk cache */
+    @VisibleForTesting
+    synchronized long getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    /** Get a summary of the memory use and the hit, miss and eviction counters */
+    public synchronized String getStats() {
+        return "CoverArtStorage stats: memory="
+                + mMemoryBytes
+                + "/"
+                + mMaxMemoryBytes
+                + " bytes, hits="
+                + mHits
+                + ", diskHits="
+                + mDiskHits
+                + ", misses="
+                + mMisses
+                + ", evictions="
+                + mEvictions
+                + "\n";
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder sb = new StringBuilder("CoverArtStorage:\n");
         for (BluetoothDevice device : mDeviceImages.keySet()) {
-            Map<String, Bitmap> images = mDeviceImages.get(device);
+            Set<String> images = mDeviceImages.get(device);
             sb.append("  ").append(device).append(" (").append(images.size()).append("):");
-            for (String uuid : images.keySet()) {
+            for (String uuid : images) {
                 sb.append("\n    ").append(uuid);
             }
             sb.append("\n");
@@ -157,6 +271,100 @@ public class AvrcpCoverArtStorage {
         return sb.toString();
     }
 
+    private void putInMemory(Pair<BluetoothDevice, String> key, Bitmap image) {
+        removeFromMemory(key);
+        mMemoryImages.put(key, image);
+        mMemoryBytes += image.getAllocationByteCount();
+        trimMemory();
+    }
+
+    private void removeFromMemory(Pair<BluetoothDevice, String> key) {
+        Bitmap image = mMemoryImages.remove(key);
+        if (image != null) {
+            mMemoryBytes -= image.getAllocationByteCount();
+        }
+    }
+
+    // Spills the least recently used images to disk until the memory budget is met. Images that
+    // cannot be written are dropped altogether.
+    private void trimMemory() {
+        Iterator<Map.Entry<Pair<BluetoothDevice, String>, Bitmap>> it =
+                mMemoryImages.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && it.hasNext()) {
+            Map.Entry<Pair<BluetoothDevice, String>, Bitmap> entry = it.next();
+            BluetoothDevice device = entry.getKey().first;
+            String imageUuid = entry.getKey().second;
+            Bitmap image = entry.getValue();
+            it.remove();
+            mMemoryBytes -= image.getAllocationByteCount();
+            mEvictions++;
+            if (getCacheFile(device, imageUuid, false).exists()
+                    || writeImage(device, imageUuid, image)) {
+                continue;
+            }
+            Set<String> images = mDeviceImages.get(device);
+            if (images != null) {
+                images.remove(imageUuid);
+                if (images.isEmpty()) {
+                    mDeviceImages.remove(device);
+                }
+            }
+        }
+    }
+
+    private boolean writeImage(BluetoothDevice device, String imageUuid, Bitmap image) {
+        File file = getCacheFile(device, imageUuid, true);
+        if (file == null) return false;
+        // Write to a temporary file so a partial image is never served.
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            if (!image.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                throw new IOException("Failed to encode image");
+            }
+        } catch (IOException e) {
+            warn("Failed to write image '" + imageUuid + "' for device " + device + ": " + e);
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(file)) {
+            warn("Failed to store image '" + imageUuid + "' for device " + device);
+            tmp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private File getCacheDir() {
+        return new File(mContext.getCacheDir(), CACHE_DIR_NAME);
+    }
+
+    private File getDeviceDir(BluetoothDevice device) {
+        return new File(getCacheDir(), device.getAddress().replace(":", ""));
+    }
+
+    private File getCacheFile(BluetoothDevice device, String imageUuid, boolean create) {
+        File dir = getDeviceDir(device);
+        if (create && !dir.isDirectory() && !dir.mkdirs()) {
+            warn("Failed to create cover art directory " + dir);
+            return null;
+        }
+        return new File(dir, imageUuid);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void warn(String msg) {
+        Log.w(TAG, msg);
+    }
+
     private void debug(String msg) {
         Log.d(TAG, msg);
     }
@@ -1189,6 +1189,10 @@ class AdapterProperties {
             Intent intent;
             if (state == AbstractionLayer.BT_DISCOVERY_STOPPED) {
                 mDiscovering = false;
+                if (mRemoteDevices != null) {
+                    // Deliver the devices found in the last batch before forgetting who asked.
+                    mRemoteDevices.flushFoundDevices();
+                }
                 mService.clearDiscoveringPackages();
                 mDiscoveryEndMs = System.currentTimeMillis();
                 intent = new Intent(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
@@ -162,7 +162,6 @@ import com.android.modules.utils.BytesMatcher;
 
 import libcore.util.SneakyThrow;
 
-import com.google.common.base.Ascii;
 import com.google.common.collect.EvictingQueue;
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -4781,11 +4780,10 @@ public class AdapterService extends Service {
     }
 
     public String getIdentityAddress(String address) {
-        BluetoothDevice device =
-                BluetoothAdapter.getDefaultAdapter().getRemoteDevice(Ascii.toUpperCase(address));
-        DeviceProperties deviceProp = mRemoteDevices.getDeviceProperties(device);
-        if (deviceProp != null && deviceProp.getIdentityAddress() != null) {
-            return deviceProp.getIdentityAddress();
+        // Called for every advertising report, so look the address up without a BluetoothDevice.
+        String identityAddress = mRemoteDevices.getIdentityAddress(address);
+        if (identityAddress != null) {
+            return identityAddress;
         } else {
             if (Flags.identityAddressNullIfNotKnown()) {
                 // Return null if identity address unknown
@@ -6374,6 +6372,7 @@ public class AdapterService extends Service {
         }
         mSilenceDeviceManager.dump(fd, writer, args);
         mDatabaseManager.dump(writer);
+        mRemoteDevices.dump(writer);
 
         writer.write(sb.toString());
         writer.flush();
@@ -44,6 +44,7 @@ import android.os.Message;
 import android.os.ParcelUuid;
 import android.os.SystemProperties;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import androidx.annotation.NonNull;
 
@@ -55,22 +56,30 @@ import com.android.bluetooth.flags.Flags;
 import com.android.bluetooth.hfp.HeadsetHalConstants;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 /** Remote device manager. This class is currently mostly used for HF and AG remote devices. */
 public class RemoteDevices {
     private static final String TAG = "BluetoothRemoteDevices";
 
-    // Maximum number of device properties to remember
-    private static final int MAX_DEVICE_QUEUE_SIZE = 200;
+    // Default maximum number of device properties to remember, bonded and connected devices
+    // excluded. Can be overridden with MAX_DEVICES_PROPERTY.
+    private static final int DEFAULT_MAX_DEVICES = 200;
+    private static final String MAX_DEVICES_PROPERTY = "bluetooth.remote_devices.max_cached";
 
     private BluetoothAdapter mAdapter;
     private AdapterService mAdapterService;
@@ -81,11 +90,38 @@ public class RemoteDevices {
     private static final int MESSAGE_UUID_INTENT = 1;
     private static final int MESSAGE_UUID_STATUS_SUCCESS = 0;
     private static final int MESSAGE_UUID_STATUS_TIMEOUT = 1;
+    private static final int MESSAGE_FLUSH_FOUND_DEVICES = 2;
     private static final String LOG_SOURCE_DIS = "DIS";
-
-    private final HashMap<String, DeviceProperties> mDevices;
-    private final HashMap<String, String> mDualDevicesMap;
-    private final ArrayDeque<String> mDeviceQueue;
+    // Window in milliseconds over which found devices are collected before ACTION_FOUND is sent,
+    // 0 to send it for every found device.
+    private static final String FOUND_BATCH_WINDOW_PROPERTY =
+            "bluetooth.discovery.found_batch_window_ms";
+
+    // Concurrent maps so that lookups do not lock. Changes still synchronize on mDevices.
+    private final ConcurrentHashMap<String, DeviceProperties> mDevices;
+    private final ConcurrentHashMap<String, String> mDualDevicesMap;
+    // Known identity addresses, by the 48-bit value of the addresses that resolve to them (see
+    // Utils#getLongFromAddress). Replaced as a whole under mDevices, so that the scan path can
+    // read it without locking or allocating.
+    private volatile LongSparseArray<String> mIdentityAddresses = new LongSparseArray<>();
+
+    private int mMaxDevices;
+    // Orders device properties by last use, see DeviceProperties#touch().
+    private final AtomicLong mUseCounter = new AtomicLong();
+    // Addresses of the device properties that may be evicted, neither bonded nor connected, from
+    // the least to the most recently used, with their last use when they were ordered. Lookups
+    // do not lock, so a use only moves its properties to the end once they reach the front.
+    // Guarded by mDevices.
+    private final LinkedHashMap<String, Long> mEvictionOrder = new LinkedHashMap<>();
+    private final LongAdder mLookupHits = new LongAdder();
+    private final LongAdder mLookupMisses = new LongAdder();
+    private final LongAdder mEvictions = new LongAdder();
+
+    private int mFoundBatchWindowMs;
+    // Devices found since the last ACTION_FOUND batch, by address. Guarded by itself.
+    private final Map<String, BluetoothDevice> mPendingFoundDevices = new LinkedHashMap<>();
+    private final LongAdder mFoundUpdates = new LongAdder();
+    private final LongAdder mFoundBroadcasts = new LongAdder();
 
     /**
      * Bluetooth HFP v1.8 specifies the Battery Charge indicator of AG can take values from {@code
@@ -134,6 +170,9 @@ public class RemoteDevices {
                                 .cacheCount(BluetoothProtoEnums.SDP_NOT_SENDING_DELAYED_UUID, 1);
                     }
                     break;
+                case MESSAGE_FLUSH_FOUND_DEVICES:
+                    flushFoundDevices();
+                    break;
             }
         }
     }
@@ -161,9 +200,11 @@ public class RemoteDevices {
         mAdapter = ((Context) service).getSystemService(BluetoothManager.class).getAdapter();
         mAdapterService = service;
         mSdpTracker = new ArrayList<>();
-        mDevices = new HashMap<>();
-        mDualDevicesMap = new HashMap<>();
-        mDeviceQueue = new ArrayDeque<>();
+        mDevices = new ConcurrentHashMap<>();
+        mDualDevicesMap = new ConcurrentHashMap<>();
+        mMaxDevices =
+                Math.max(1, SystemProperties.getInt(MAX_DEVICES_PROPERTY, DEFAULT_MAX_DEVICES));
+        mFoundBatchWindowMs = Math.max(0, SystemProperties.getInt(FOUND_BATCH_WINDOW_PROPERTY, 0));
         mHandler = new RemoteDevicesHandler(looper);
         mMainHandler = new Handler(Looper.getMainLooper());
     }
@@ -179,6 +220,12 @@ public class RemoteDevices {
         // Unregister Handler and stop all queued messages.
         mMainHandler.removeCallbacksAndMessages(null);
 
+        // Found devices are only reported to the current discovery, drop the pending batch.
+        mHandler.removeMessages(MESSAGE_FLUSH_FOUND_DEVICES);
+        synchronized (mPendingFoundDevices) {
+            mPendingFoundDevices.clear();
+        }
+
         synchronized (mDevices) {
             debugLog("reset(): Broadcasting ACL_DISCONNECTED");
 
@@ -209,10 +256,11 @@ public class RemoteDevices {
                         }
                     });
             mDevices.clear();
+            mEvictionOrder.clear();
+            mIdentityAddresses = new LongSparseArray<>();
         }
 
         mDualDevicesMap.clear();
-        mDeviceQueue.clear();
     }
 
     @Override
@@ -225,14 +273,19 @@ public class RemoteDevices {
             return null;
         }
 
-        synchronized (mDevices) {
-            String address = mDualDevicesMap.get(device.getAddress());
-            // If the device is not in the dual map, use its original address
-            if (address == null || mDevices.get(address) == null) {
-                address = device.getAddress();
-            }
-            return mDevices.get(address);
+        String address = mDualDevicesMap.get(device.getAddress());
+        // If the device is not in the dual map, use its original address
+        DeviceProperties prop = address != null ? mDevices.get(address) : null;
+        if (prop == null) {
+            prop = mDevices.get(device.getAddress());
+        }
+        if (prop == null) {
+            mLookupMisses.increment();
+            return null;
         }
+        mLookupHits.increment();
+        prop.touch();
+        return prop;
     }
 
     int getBondState(BluetoothDevice device) {
@@ -275,6 +328,68 @@ public class RemoteDevices {
         return deviceProp.getBluetoothClass();
     }
 
+    /**
+     * Get the identity address of a device without locking, for the scan and GATT paths.
+     *
+     * @param address the device address, in either case
+     * @return the identity address, or null if it is not known
+     */
+    String getIdentityAddress(String address) {
+        long key = Utils.getLongFromAddress(address);
+        return key < 0 ? null : mIdentityAddresses.get(key);
+    }
+
+    // Updates mIdentityAddresses for the given addresses from the device properties. Must be
+    // called with mDevices held, after mDevices or mDualDevicesMap changed for these addresses.
+    private void updateIdentityAddresses(Collection<String> addresses) {
+        LongSparseArray<String> identityAddresses = null;
+        for (String address : addresses) {
+            long key = Utils.getLongFromAddress(address);
+            if (key < 0) {
+                continue;
+            }
+            String identityAddress = getIdentityAddressLocked(address);
+            if (Objects.equals(identityAddress, mIdentityAddresses.get(key))) {
+                continue;
+            }
+            // Only copy on an actual change, as most new devices have no identity address.
+            if (identityAddresses == null) {
+                identityAddresses = mIdentityAddresses.clone();
+            }
+            if (identityAddress == null) {
+                identityAddresses.delete(key);
+            } else {
+                identityAddresses.put(key, identityAddress);
+            }
+        }
+        if (identityAddresses != null) {
+            mIdentityAddresses = identityAddresses;
+        }
+    }
+
+    // Same lookup as getDeviceProperties(), by address string.
+    private String getIdentityAddressLocked(String address) {
+        String deviceAddress = mDualDevicesMap.get(address);
+        if (deviceAddress == null || mDevices.get(deviceAddress) == null) {
+            deviceAddress = address;
+        }
+        DeviceProperties prop = mDevices.get(deviceAddress);
+        return prop != null ? prop.getIdentityAddress() : null;
+    }
+
+    // The given address and the dual mode addresses that resolve to its device properties.
+    private List<String> getResolvingAddressesLocked(String address) {
+        List<String> addresses = new ArrayList<>();
+        addresses.add(address);
+        mDualDevicesMap.forEach(
+                (dualAddress, deviceAddress) -> {
+                    if (address.equals(deviceAddress)) {
+                        addresses.add(dualAddress);
+                    }
+                });
+        return addresses;
+    }
+
     BluetoothDevice getDevice(byte[] address) {
         String addressString = Utils.getAddressStringFromByte(address);
         String deviceAddress = mDualDevicesMap.get(addressString);
@@ -297,25 +412,110 @@ public class RemoteDevices {
             prop.setDevice(mAdapter.getRemoteDevice(Utils.getAddressStringFromByte(address)));
             prop.setAddress(address);
             String key = Utils.getAddressStringFromByte(address);
+            prop.touch();
             DeviceProperties pv = mDevices.put(key, prop);
 
-            if (pv == null) {
-                mDeviceQueue.offer(key);
-                if (mDeviceQueue.size() > MAX_DEVICE_QUEUE_SIZE) {
-                    String deleteKey = mDeviceQueue.poll();
-                    for (BluetoothDevice device : mAdapterService.getBondedDevices()) {
-                        if (device.getAddress().equals(deleteKey)) {
-                            return prop;
-                        }
-                    }
-                    debugLog("Removing device " + deleteKey + " from property map");
-                    mDevices.remove(deleteKey);
-                }
+            if (pv != null) {
+                updateIdentityAddresses(getResolvingAddressesLocked(key));
             }
+            mEvictionOrder.remove(key);
+            mEvictionOrder.put(key, prop.mLastUsed);
+            evictDevicePropertiesLocked();
             return prop;
         }
     }
 
+    // Removes the least recently used device properties above mMaxDevices. Bonded and connected
+    // devices are kept, and do not count toward the limit.
+    private void evictDevicePropertiesLocked() {
+        // Bounds the reordering of properties used again while this runs.
+        int remainingChecks = 2 * mEvictionOrder.size();
+        while (mEvictionOrder.size() > mMaxDevices && remainingChecks-- > 0) {
+            Iterator<Map.Entry<String, Long>> eldest = mEvictionOrder.entrySet().iterator();
+            Map.Entry<String, Long> entry = eldest.next();
+            String key = entry.getKey();
+            long orderedUse = entry.getValue();
+            eldest.remove();
+            DeviceProperties prop = mDevices.get(key);
+            if (prop == null || prop.isPinned()) {
+                // Ordered again by onPinnedStateChanged() once neither bonded nor connected.
+                continue;
+            }
+            if (prop.mLastUsed != orderedUse) {
+                mEvictionOrder.put(key, prop.mLastUsed);
+                continue;
+            }
+            debugLog("Removing device " + key + " from property map");
+            mDevices.remove(key);
+            mEvictions.increment();
+            updateIdentityAddresses(getResolvingAddressesLocked(key));
+        }
+    }
+
+    // Keeps bonded and connected device properties out of the eviction order.
+    private void onPinnedStateChanged(DeviceProperties prop) {
+        BluetoothDevice device = prop.getDevice();
+        if (device == null) {
+            return;
+        }
+        synchronized (mDevices) {
+            String key = device.getAddress();
+            if (mDevices.get(key) != prop) {
+                return;
+            }
+            if (prop.isPinned()) {
+                mEvictionOrder.remove(key);
+            } else if (!mEvictionOrder.containsKey(key)) {
+                mEvictionOrder.put(key, prop.mLastUsed);
+                evictDevicePropertiesLocked();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void setMaxDevicesForTesting(int maxDevices) {
+        mMaxDevices = maxDevices;
+    }
+
+    @VisibleForTesting
+    void setFoundBatchWindowForTesting(int windowMs) {
+        mFoundBatchWindowMs = windowMs;
+    }
+
+    void dump(PrintWriter writer) {
+        long hits = mLookupHits.sum();
+        long lookups = hits + mLookupMisses.sum();
+        writer.println("RemoteDevices:");
+        int evictable;
+        synchronized (mDevices) {
+            evictable = mEvictionOrder.size();
+        }
+        writer.println(
+                "  Device properties: "
+                        + mDevices.size()
+                        + " ("
+                        + evictable
+                        + " evictable, max "
+                        + mMaxDevices
+                        + ")");
+        writer.println(
+                "  Lookups: "
+                        + lookups
+                        + ", hit rate: "
+                        + (lookups == 0 ? 0 : hits * 100 / lookups)
+                        + "%, evictions: "
+                        + mEvictions.sum());
+        writer.println(
+                "  Found devices: "
+                        + mFoundUpdates.sum()
+                        + " updates, "
+                        + mFoundBroadcasts.sum()
+                        + " broadcasts, batch window: "
+                        + mFoundBatchWindowMs
+                        + "ms");
+        writer.println();
+    }
+
     class DeviceProperties {
         private String mName;
         private byte[] mAddress;
@@ -339,10 +539,26 @@ public class RemoteDevices {
         @VisibleForTesting ParcelUuid[] mUuids;
         private BluetoothSinkAudioPolicy mAudioPolicy;
 
+        // Last use of these properties, in mUseCounter order.
+        private volatile long mLastUsed;
+
         DeviceProperties() {
             mBondState = BluetoothDevice.BOND_NONE;
         }
 
+        void touch() {
+            mLastUsed = mUseCounter.incrementAndGet();
+        }
+
+        // Whether these properties must never be evicted.
+        boolean isPinned() {
+            synchronized (mObject) {
+                return mBondState != BluetoothDevice.BOND_NONE
+                        || mBredrConnectionHandle != BluetoothDevice.ERROR
+                        || mLeConnectionHandle != BluetoothDevice.ERROR;
+            }
+        }
+
         /**
          * @return the mName
          */
@@ -445,6 +661,7 @@ public class RemoteDevices {
                     errorLog("setConnectionHandle() unexpected transport value " + transport);
                 }
             }
+            onPinnedStateChanged(this);
         }
 
         /**
@@ -582,6 +799,7 @@ public class RemoteDevices {
                     mAlias = null;
                 }
             }
+            onPinnedStateChanged(this);
         }
 
         /**
@@ -1084,6 +1302,44 @@ public class RemoteDevices {
         }
 
         infoLog("deviceFoundCallback: Remote Address is:" + device);
+        mFoundUpdates.increment();
+        if (mFoundBatchWindowMs <= 0) {
+            sendDeviceFoundIntent(device, deviceProp);
+            return;
+        }
+        // A device found again before the batch is sent, e.g. with a new RSSI, is only reported
+        // once with its latest properties.
+        synchronized (mPendingFoundDevices) {
+            if (mPendingFoundDevices.isEmpty()) {
+                mHandler.sendEmptyMessageDelayed(MESSAGE_FLUSH_FOUND_DEVICES, mFoundBatchWindowMs);
+            }
+            mPendingFoundDevices.put(device.getAddress(), device);
+        }
+    }
+
+    /**
+     * Sends ACTION_FOUND for the devices found since the last batch. Called when the batch window
+     * expires, and before discovery stops so that the batch still reaches the discovering packages.
+     */
+    void flushFoundDevices() {
+        List<BluetoothDevice> devices;
+        synchronized (mPendingFoundDevices) {
+            mHandler.removeMessages(MESSAGE_FLUSH_FOUND_DEVICES);
+            devices = new ArrayList<>(mPendingFoundDevices.values());
+            mPendingFoundDevices.clear();
+        }
+        for (BluetoothDevice device : devices) {
+            DeviceProperties deviceProp = getDeviceProperties(device);
+            if (deviceProp == null) {
+                debugLog("flushFoundDevices: Device Properties evicted for Device:" + device);
+                continue;
+            }
+            sendDeviceFoundIntent(device, deviceProp);
+        }
+    }
+
+    private void sendDeviceFoundIntent(BluetoothDevice device, DeviceProperties deviceProp) {
+        mFoundBroadcasts.increment();
         Intent intent = new Intent(BluetoothDevice.ACTION_FOUND);
         intent.putExtra(BluetoothDevice.EXTRA_DEVICE, device);
         intent.putExtra(
@@ -1139,8 +1395,11 @@ public class RemoteDevices {
         deviceProperties.setIsConsolidated(true);
         deviceProperties.setDeviceType(BluetoothDevice.DEVICE_TYPE_DUAL);
         deviceProperties.setIdentityAddress(Utils.getAddressStringFromByte(secondaryAddress));
-        mDualDevicesMap.put(
-                deviceProperties.getIdentityAddress(), Utils.getAddressStringFromByte(mainAddress));
+        synchronized (mDevices) {
+            String address = Utils.getAddressStringFromByte(mainAddress);
+            mDualDevicesMap.put(deviceProperties.getIdentityAddress(), address);
+            updateIdentityAddresses(getResolvingAddressesLocked(address));
+        }
     }
 
     /**
@@ -1168,6 +1427,10 @@ public class RemoteDevices {
 
         DeviceProperties deviceProperties = getDeviceProperties(device);
         deviceProperties.mIdentityAddress = Utils.getAddressStringFromByte(secondaryAddress);
+        synchronized (mDevices) {
+            updateIdentityAddresses(
+                    getResolvingAddressesLocked(Utils.getAddressStringFromByte(mainAddress)));
+        }
     }
 
     void aclStateChangeCallback(
@@ -1356,12 +1619,14 @@ public class RemoteDevices {
         }
 
         synchronized (mDevices) {
+            List<String> resolvingAddresses = getResolvingAddressesLocked(address);
             mDevices.remove(address);
-            mDeviceQueue.remove(address); // Remove from LRU cache
+            mEvictionOrder.remove(address);
 
             // Remove from dual mode device mappings
             mDualDevicesMap.values().remove(address);
             mDualDevicesMap.remove(address);
+            updateIdentityAddresses(resolvingAddresses);
         }
     }
 
@@ -52,6 +52,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -74,11 +75,18 @@ public class DatabaseManager {
     private boolean mMigratedFromSettingsGlobal = false;
 
     @VisibleForTesting final Map<String, Metadata> mMetadataCache = new HashMap<>();
+
+    // Latest metadata of each address waiting to be written, see updateDatabase().
+    @GuardedBy("mPendingUpdates")
+    private final Map<String, Metadata> mPendingUpdates = new LinkedHashMap<>();
+
+    private final long mWriteBehindDelayMillis;
     private final Semaphore mSemaphore = new Semaphore(1);
     private static final int METADATA_CHANGED_LOG_MAX_SIZE = 20;
     private final EvictingQueue<String> mMetadataChangedLog;
 
     private static final int LOAD_DATABASE_TIMEOUT = 500; // milliseconds
+    private static final int WRITE_BEHIND_DELAY = 100; // milliseconds
     private static final int MSG_LOAD_DATABASE = 0;
     private static final int MSG_UPDATE_DATABASE = 1;
     private static final int MSG_DELETE_DATABASE = 2;
@@ -106,8 +114,14 @@ public class DatabaseManager {
 
     /** Constructor of the DatabaseManager */
     public DatabaseManager(AdapterService service) {
+        this(service, WRITE_BEHIND_DELAY);
+    }
+
+    @VisibleForTesting
+    DatabaseManager(AdapterService service, long writeBehindDelayMillis) {
         mAdapterService = Objects.requireNonNull(service, "Adapter service cannot be null");
         mMetadataChangedLog = EvictingQueue.create(METADATA_CHANGED_LOG_MAX_SIZE);
+        mWriteBehindDelayMillis = writeBehindDelayMillis;
     }
 
     class DatabaseHandler extends Handler {
@@ -138,10 +152,7 @@ public class DatabaseManager {
                     }
                 case MSG_UPDATE_DATABASE:
                     {
-                        Metadata data = (Metadata) msg.obj;
-                        synchronized (mDatabaseLock) {
-                            mDatabase.insert(data);
-                        }
+                        writePendingUpdates();
                         break;
                     }
                 case MSG_DELETE_DATABASE:
@@ -1141,6 +1152,9 @@ public class DatabaseManager {
     /** Clear all persistence data in database */
     public void factoryReset() {
         Log.w(TAG, "factoryReset");
+        synchronized (mPendingUpdates) {
+            mPendingUpdates.clear();
+        }
         Message message = mHandler.obtainMessage(MSG_CLEAR_DATABASE);
         mHandler.sendMessage(message);
     }
@@ -1159,6 +1173,8 @@ public class DatabaseManager {
             mHandlerThread.quit();
             mHandlerThread = null;
         }
+        // Updates still waiting for the write behind delay are written before returning.
+        writePendingUpdates();
         mMetadataCache.clear();
     }
 
@@ -1436,9 +1452,33 @@ public class DatabaseManager {
             return;
         }
         Log.d(TAG, "updateDatabase " + data.getAnonymizedAddress());
+        // Updates are written behind: all the updates made within the delay are merged by
+        // address and written in a single transaction.
+        synchronized (mPendingUpdates) {
+            boolean writeScheduled = !mPendingUpdates.isEmpty();
+            mPendingUpdates.put(data.getAddress(), data);
+            if (writeScheduled) {
+                return;
+            }
+        }
         Message message = mHandler.obtainMessage(MSG_UPDATE_DATABASE);
-        message.obj = data;
-        mHandler.sendMessage(message);
+        mHandler.sendMessageDelayed(message, mWriteBehindDelayMillis);
+    }
+
+    private void writePendingUpdates() {
+        // Hold the database lock while taking the updates, so batches are written in order.
+        synchronized (mDatabaseLock) {
+            Metadata[] updates;
+            synchronized (mPendingUpdates) {
+                if (mPendingUpdates.isEmpty()) {
+                    return;
+                }
+                updates = mPendingUpdates.values().toArray(new Metadata[0]);
+                mPendingUpdates.clear();
+            }
+            Log.d(TAG, "writePendingUpdates: " + updates.length + " device(s)");
+            mDatabase.insert(updates);
+        }
     }
 
     @VisibleForTesting
@@ -1449,6 +1489,9 @@ public class DatabaseManager {
             return;
         }
         logMetadataChange(data, "Metadata deleted");
+        synchronized (mPendingUpdates) {
+            mPendingUpdates.remove(address);
+        }
         Message message = mHandler.obtainMessage(MSG_DELETE_DATABASE);
         message.obj = data.getAddress();
         mHandler.sendMessage(message);
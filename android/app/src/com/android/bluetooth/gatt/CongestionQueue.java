@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Objects;
+
+/**
+ * Bounded FIFO of the callbacks held for an application while its transport is congested.
+ *
+ * <p>Callbacks are kept in a ring buffer that grows up to a maximum size. A callback added with
+ * {@code coalesce} set replaces the last queued callback if it is for the same address, handle and
+ * status, so only the latest value is reported. When the queue is full, new callbacks are rejected
+ * and the caller reports them right away, as no completion may be lost.
+ */
+class CongestionQueue {
+    private static final String TAG = GattServiceConfig.TAG_PREFIX + "CongestionQueue";
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int mMaxSize;
+
+    @GuardedBy("this")
+    private CallbackInfo[] mBuffer;
+
+    // Index of the oldest callback.
+    @GuardedBy("this")
+    private int mHead;
+
+    @GuardedBy("this")
+    private int mSize;
+
+    @GuardedBy("this")
+    private int mMaxDepth;
+
+    @GuardedBy("this")
+    private long mCoalescedCount;
+
+    @GuardedBy("this")
+    private long mRejectedCount;
+
+    CongestionQueue(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        mMaxSize = maxSize;
+        mBuffer = new CallbackInfo[Math.min(INITIAL_CAPACITY, maxSize)];
+    }
+
+    /**
+     * Adds a callback at the end of the queue. Returns false, without adding it, if the queue is
+     * full.
+     */
+    synchronized boolean add(CallbackInfo callbackInfo, boolean coalesce) {
+        if (coalesce && mSize > 0) {
+            int tail = index(mSize - 1);
+            CallbackInfo last = mBuffer[tail];
+            if (last.handle == callbackInfo.handle
+                    && last.status == callbackInfo.status
+                    && Objects.equals(last.address, callbackInfo.address)) {
+                mBuffer[tail] = callbackInfo;
+                mCoalescedCount++;
+                return true;
+            }
+        }
+
+        if (mSize == mMaxSize) {
+            Log.w(TAG, "Congestion queue full, rejecting callback");
+            mRejectedCount++;
+            return false;
+        }
+        if (mSize == mBuffer.length) {
+            grow();
+        }
+        mBuffer[index(mSize)] = callbackInfo;
+        mSize++;
+        mMaxDepth = Math.max(mMaxDepth, mSize);
+        return true;
+    }
+
+    /** Removes and returns the oldest callback, or null if the queue is empty. */
+    synchronized CallbackInfo poll() {
+        if (mSize == 0) {
+            return null;
+        }
+        CallbackInfo callbackInfo = mBuffer[mHead];
+        mBuffer[mHead] = null;
+        mHead = (mHead + 1) % mBuffer.length;
+        mSize--;
+        return callbackInfo;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    synchronized void dump(StringBuilder sb) {
+        sb.append("depth: ")
+                .append(mSize)
+                .append(", max depth: ")
+                .append(mMaxDepth)
+                .append(", coalesced: ")
+                .append(mCoalescedCount)
+                .append(", rejected: ")
+                .append(mRejectedCount);
+    }
+
+    @GuardedBy("this")
+    private int index(int offset) {
+        return (mHead + offset) % mBuffer.length;
+    }
+
+    @GuardedBy("this")
+    private void grow() {
+        CallbackInfo[] buffer = new CallbackInfo[Math.min(mBuffer.length * 2, mMaxSize)];
+        for (int i = 0; i < mSize; i++) {
+            buffer[i] = mBuffer[index(i)];
+        }
+        mBuffer = buffer;
+        mHead = 0;
+    }
+}
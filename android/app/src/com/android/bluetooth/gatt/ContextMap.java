@@ -21,21 +21,24 @@ import android.os.IBinder;
 import android.os.IInterface;
 import android.os.RemoteException;
 import android.os.SystemClock;
+import android.os.SystemProperties;
 import android.util.Log;
 
 import com.android.bluetooth.flags.Flags;
 import com.android.internal.annotations.GuardedBy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Helper class that keeps track of registered GATT applications. This class manages application
@@ -82,7 +85,19 @@ public class ContextMap<C> {
         public Boolean isCongested = false;
 
         /** Internal callback info queue, waiting to be send on congestion clear */
-        private List<CallbackInfo> mCongestionQueue = new ArrayList<>();
+        private final CongestionQueue mCongestionQueue =
+                new CongestionQueue(
+                        Math.max(
+                                1,
+                                SystemProperties.getInt(
+                                        GattServiceConfig.CONGESTION_QUEUE_MAX_SIZE_PROPERTY,
+                                        GattServiceConfig.CONGESTION_QUEUE_MAX_SIZE)));
+
+        /** Time the transport became congested, or 0 if it is not congested */
+        private long mCongestionStartTime;
+
+        /** Total time the transport has been congested, excluding the current congestion */
+        private long mCongestedTimeMillis;
 
         /** Creates a new app context. */
         App(UUID uuid, C callback, String name) {
@@ -118,15 +133,108 @@ public class ContextMap<C> {
             }
         }
 
-        public void queueCallback(CallbackInfo callbackInfo) {
-            mCongestionQueue.add(callbackInfo);
+        /** Updates the congestion state and the time spent congested. */
+        public synchronized void setCongested(boolean congested) {
+            long now = SystemClock.elapsedRealtime();
+            if (congested && mCongestionStartTime == 0) {
+                mCongestionStartTime = now;
+            } else if (!congested && mCongestionStartTime != 0) {
+                mCongestedTimeMillis += now - mCongestionStartTime;
+                mCongestionStartTime = 0;
+            }
+            isCongested = congested;
+        }
+
+        /** Returns the total time spent congested, including the current congestion. */
+        public synchronized long getCongestedTimeMillis() {
+            if (mCongestionStartTime == 0) {
+                return mCongestedTimeMillis;
+            }
+            return mCongestedTimeMillis + SystemClock.elapsedRealtime() - mCongestionStartTime;
+        }
+
+        /** Queues a callback. Returns false if the queue is full and it must be reported now. */
+        public boolean queueCallback(CallbackInfo callbackInfo) {
+            return mCongestionQueue.add(callbackInfo, false);
+        }
+
+        /**
+         * Queues a write complete callback, replacing the last queued one if it is for the same
+         * address, handle and status. Returns false if the queue is full and it must be reported
+         * now.
+         */
+        public boolean queueWriteCallback(CallbackInfo callbackInfo) {
+            return mCongestionQueue.add(callbackInfo, true);
         }
 
         public CallbackInfo popQueuedCallback() {
-            if (mCongestionQueue.size() == 0) {
-                return null;
+            return mCongestionQueue.poll();
+        }
+
+        void dumpCongestion(StringBuilder sb) {
+            sb.append("  app_if: ")
+                    .append(id)
+                    .append(", appName: ")
+                    .append(name)
+                    .append(", congested: ")
+                    .append(isCongested)
+                    .append(", congested time: ")
+                    .append(getCongestedTimeMillis())
+                    .append("ms, ");
+            mCongestionQueue.dump(sb);
+            sb.append("\n");
+        }
+    }
+
+    /**
+     * Immutable snapshot of the registered applications, indexed for lookups without locking.
+     * Application IDs are assigned after registration, so apps are indexed by ID lazily.
+     */
+    private class AppIndex {
+        final List<App> mApps;
+        final Map<UUID, App> mAppsByUuid = new HashMap<>();
+        final Map<Integer, App> mAppsById = new ConcurrentHashMap<>();
+
+        AppIndex(List<App> apps) {
+            mApps = Collections.unmodifiableList(new ArrayList<>(apps));
+            for (App app : mApps) {
+                mAppsByUuid.putIfAbsent(app.uuid, app);
+            }
+        }
+
+        App getById(int id) {
+            App app = mAppsById.get(id);
+            if (app != null && app.id == id) {
+                return app;
             }
-            return mCongestionQueue.remove(0);
+            for (App entry : mApps) {
+                if (entry.id == id) {
+                    mAppsById.put(id, entry);
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Immutable snapshot of the connections, indexed for lookups without locking. */
+    private static class ConnectionIndex {
+        final List<Connection> mConnections;
+        final Map<Integer, Connection> mConnectionsByConnId = new HashMap<>();
+        final Map<String, List<Connection>> mConnectionsByAddress = new HashMap<>();
+
+        ConnectionIndex(List<Connection> connections) {
+            mConnections = Collections.unmodifiableList(new ArrayList<>(connections));
+            for (Connection connection : mConnections) {
+                mConnectionsByConnId.putIfAbsent(connection.connId, connection);
+                mConnectionsByAddress
+                        .computeIfAbsent(addressKey(connection.address), k -> new ArrayList<>())
+                        .add(connection);
+            }
+        }
+
+        static String addressKey(String address) {
+            return address.toUpperCase(Locale.ROOT);
         }
     }
 
@@ -136,11 +244,27 @@ public class ContextMap<C> {
     @GuardedBy("mAppsLock")
     private List<App> mApps = new ArrayList<>();
 
+    private volatile AppIndex mAppIndex = new AppIndex(Collections.emptyList());
+
     /** Internal list of connected devices */
+    @GuardedBy("mConnectionsLock")
     private List<Connection> mConnections = new ArrayList<>();
 
+    private volatile ConnectionIndex mConnectionIndex =
+            new ConnectionIndex(Collections.emptyList());
+
     private final Object mConnectionsLock = new Object();
 
+    @GuardedBy("mAppsLock")
+    private void updateAppIndex() {
+        mAppIndex = new AppIndex(mApps);
+    }
+
+    @GuardedBy("mConnectionsLock")
+    private void updateConnectionIndex() {
+        mConnectionIndex = new ConnectionIndex(mConnections);
+    }
+
     /** Add an entry to the application context list. */
     public App add(UUID uuid, C callback, Context context) {
         int appUid = Binder.getCallingUid();
@@ -152,6 +276,7 @@ public class ContextMap<C> {
         synchronized (mAppsLock) {
             App app = new App(uuid, callback, appName);
             mApps.add(app);
+            updateAppIndex();
             return app;
         }
     }
@@ -165,6 +290,7 @@ public class ContextMap<C> {
                 if (entry.uuid.equals(uuid)) {
                     entry.unlinkToDeath();
                     i.remove();
+                    updateAppIndex();
                     break;
                 }
             }
@@ -182,6 +308,7 @@ public class ContextMap<C> {
                     find = true;
                     entry.unlinkToDeath();
                     i.remove();
+                    updateAppIndex();
                     break;
                 }
             }
@@ -193,10 +320,8 @@ public class ContextMap<C> {
 
     public List<Integer> getAllAppsIds() {
         List<Integer> appIds = new ArrayList();
-        synchronized (mAppsLock) {
-            for (App entry : mApps) {
-                appIds.add(entry.id);
-            }
+        for (App entry : mAppIndex.mApps) {
+            appIds.add(entry.id);
         }
         return appIds;
     }
@@ -207,6 +332,7 @@ public class ContextMap<C> {
             App entry = getById(id);
             if (entry != null) {
                 mConnections.add(new Connection(connId, address, id));
+                updateConnectionIndex();
             }
         }
     }
@@ -226,31 +352,22 @@ public class ContextMap<C> {
                     }
                 }
             }
+            updateConnectionIndex();
         }
     }
 
     /** Remove all connections for a given application ID. */
     void removeConnectionsByAppId(int appId) {
         synchronized (mConnectionsLock) {
-            mConnections.removeIf(conn -> conn.appId == appId);
-        }
-    }
-
-    private App getAppByPredicate(Predicate<App> predicate) {
-        synchronized (mAppsLock) {
-            // Intentionally using a for-loop over a stream for performance.
-            for (App app : mApps) {
-                if (predicate.test(app)) {
-                    return app;
-                }
+            if (mConnections.removeIf(conn -> conn.appId == appId)) {
+                updateConnectionIndex();
             }
-            return null;
         }
     }
 
     /** Get an application context by ID. */
     public App getById(int id) {
-        App app = getAppByPredicate(entry -> entry.id == id);
+        App app = mAppIndex.getById(id);
         if (app == null) {
             Log.e(TAG, "Context not found for ID " + id);
         }
@@ -259,7 +376,7 @@ public class ContextMap<C> {
 
     /** Get an application context by UUID. */
     public App getByUuid(UUID uuid) {
-        App app = getAppByPredicate(entry -> entry.uuid.equals(uuid));
+        App app = mAppIndex.mAppsByUuid.get(uuid);
         if (app == null) {
             Log.e(TAG, "Context not found for UUID " + uuid);
         }
@@ -269,27 +386,17 @@ public class ContextMap<C> {
     /** Get the device addresses for all connected devices */
     Set<String> getConnectedDevices() {
         Set<String> addresses = new HashSet<String>();
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                addresses.add(connection.address);
-            }
+        for (Connection connection : mConnectionIndex.mConnections) {
+            addresses.add(connection.address);
         }
         return addresses;
     }
 
     /** Get an application context by a connection ID. */
     App getByConnId(int connId) {
-        int appId = -1;
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.connId == connId) {
-                    appId = connection.appId;
-                    break;
-                }
-            }
-        }
-        if (appId >= 0) {
-            return getById(appId);
+        Connection connection = mConnectionIndex.mConnectionsByConnId.get(connId);
+        if (connection != null && connection.appId >= 0) {
+            return getById(connection.appId);
         }
         return null;
     }
@@ -300,11 +407,14 @@ public class ContextMap<C> {
         if (entry == null) {
             return null;
         }
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.address.equalsIgnoreCase(address) && connection.appId == id) {
-                    return connection.connId;
-                }
+        List<Connection> connections =
+                mConnectionIndex.mConnectionsByAddress.get(ConnectionIndex.addressKey(address));
+        if (connections == null) {
+            return null;
+        }
+        for (Connection connection : connections) {
+            if (connection.appId == id) {
+                return connection.connId;
             }
         }
         return null;
@@ -312,23 +422,15 @@ public class ContextMap<C> {
 
     /** Returns the device address for a given connection ID. */
     String addressByConnId(int connId) {
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.connId == connId) {
-                    return connection.address;
-                }
-            }
-        }
-        return null;
+        Connection connection = mConnectionIndex.mConnectionsByConnId.get(connId);
+        return connection != null ? connection.address : null;
     }
 
     public List<Connection> getConnectionByApp(int appId) {
         List<Connection> currentConnections = new ArrayList<Connection>();
-        synchronized (mConnectionsLock) {
-            for (Connection connection : mConnections) {
-                if (connection.appId == appId) {
-                    currentConnections.add(connection);
-                }
+        for (Connection connection : mConnectionIndex.mConnections) {
+            if (connection.appId == appId) {
+                currentConnections.add(connection);
             }
         }
         return currentConnections;
@@ -341,28 +443,31 @@ public class ContextMap<C> {
                 entry.unlinkToDeath();
             }
             mApps.clear();
+            updateAppIndex();
         }
 
         synchronized (mConnectionsLock) {
             mConnections.clear();
+            updateConnectionIndex();
         }
     }
 
     /** Returns connect device map with addr and appid */
     Map<Integer, String> getConnectedMap() {
         Map<Integer, String> connectedmap = new HashMap<Integer, String>();
-        synchronized (mConnectionsLock) {
-            for (Connection conn : mConnections) {
-                connectedmap.put(conn.appId, conn.address);
-            }
+        for (Connection conn : mConnectionIndex.mConnections) {
+            connectedmap.put(conn.appId, conn.address);
         }
         return connectedmap;
     }
 
     /** Logs debug information. */
     protected void dump(StringBuilder sb) {
-        synchronized (mAppsLock) {
-            sb.append("  Entries: ").append(mApps.size()).append("\n\n");
+        List<App> apps = mAppIndex.mApps;
+        sb.append("  Entries: ").append(apps.size()).append("\n");
+        for (App app : apps) {
+            app.dumpCongestion(sb);
         }
+        sb.append("\n");
     }
 }
@@ -1742,7 +1742,11 @@ public class GattService extends ProfileService {
                             .setHandle(handle)
                             .setValue(data)
                             .build();
-            app.queueCallback(callbackInfo);
+            if (!app.queueWriteCallback(callbackInfo)) {
+                // Fail the write now rather than losing its completion, the app waits for it.
+                app.callback.onCharacteristicWrite(
+                        address, BluetoothGatt.GATT_CONNECTION_CONGESTED, handle, data);
+            }
         }
     }
 
@@ -1828,7 +1832,7 @@ public class GattService extends ProfileService {
         ContextMap<IBluetoothGattCallback>.App app = mClientMap.getByConnId(connId);
 
         if (app != null) {
-            app.isCongested = congested;
+            app.setCongested(congested);
             while (!app.isCongested) {
                 CallbackInfo callbackInfo = app.popQueuedCallback();
                 if (callbackInfo == null) {
@@ -3096,7 +3100,11 @@ public class GattService extends ProfileService {
             if (status == BluetoothGatt.GATT_CONNECTION_CONGESTED) {
                 status = BluetoothGatt.GATT_SUCCESS;
             }
-            app.queueCallback(new CallbackInfo.Builder(address, status).build());
+            if (!app.queueCallback(new CallbackInfo.Builder(address, status).build())) {
+                // Fail the notification now rather than losing its completion, the app waits
+                // for it before sending the next one.
+                app.callback.onNotificationSent(address, BluetoothGatt.GATT_CONNECTION_CONGESTED);
+            }
         }
     }
 
@@ -3108,7 +3116,7 @@ public class GattService extends ProfileService {
             return;
         }
 
-        app.isCongested = congested;
+        app.setCongested(congested);
         while (!app.isCongested) {
             CallbackInfo callbackInfo = app.popQueuedCallback();
             if (callbackInfo == null) {
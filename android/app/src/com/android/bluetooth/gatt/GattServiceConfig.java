@@ -20,4 +20,13 @@ package com.android.bluetooth.gatt;
 public class GattServiceConfig {
     public static final String TAG_PREFIX = "BtGatt.";
     public static final boolean DEBUG_ADMIN = false;
+
+    /**
+     * Default max number of callbacks held for an application while its transport is congested.
+     * Can be overridden with {@link #CONGESTION_QUEUE_MAX_SIZE_PROPERTY}.
+     */
+    public static final int CONGESTION_QUEUE_MAX_SIZE = 512;
+
+    public static final String CONGESTION_QUEUE_MAX_SIZE_PROPERTY =
+            "bluetooth.gatt.congestion_queue.max_size";
 }
@@ -17,11 +17,13 @@ package com.android.bluetooth.gatt;
 
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 class HandleMap {
     private static final String TAG = GattServiceConfig.TAG_PREFIX + "HandleMap";
@@ -96,20 +98,40 @@ class HandleMap {
         }
     }
 
-    List<Entry> mEntries = null;
+    // Attributes indexed by handle, and by the handle of the service they belong to.
+    // Changes to the attributes are made while holding mEntriesByService.
+    Map<Integer, Entry> mEntriesByHandle = null;
+    Map<Integer, List<Entry>> mEntriesByService = null;
+    // All the attributes ordered by handle, built on demand and dropped on every change.
+    private volatile List<Entry> mSortedEntries = null;
     Map<Integer, RequestData> mRequestMap = null;
     int mLastCharacteristic = 0;
 
     HandleMap() {
-        mEntries = new CopyOnWriteArrayList<Entry>();
+        mEntriesByHandle = new ConcurrentHashMap<Integer, Entry>();
+        mEntriesByService = new ConcurrentHashMap<Integer, List<Entry>>();
         mRequestMap = new ConcurrentHashMap<Integer, RequestData>();
     }
 
     void clear() {
-        mEntries.clear();
+        synchronized (mEntriesByService) {
+            mEntriesByHandle.clear();
+            mEntriesByService.clear();
+            mSortedEntries = null;
+        }
         mRequestMap.clear();
     }
 
+    private void addEntry(Entry entry, int serviceHandle) {
+        synchronized (mEntriesByService) {
+            mEntriesByHandle.put(entry.handle, entry);
+            mEntriesByService
+                    .computeIfAbsent(serviceHandle, k -> new ArrayList<Entry>())
+                    .add(entry);
+            mSortedEntries = null;
+        }
+    }
+
     void addService(
             int serverIf,
             int handle,
@@ -117,67 +139,90 @@ class HandleMap {
             int serviceType,
             int instance,
             boolean advertisePreferred) {
-        mEntries.add(new Entry(serverIf, handle, uuid, serviceType, instance, advertisePreferred));
+        addEntry(
+                new Entry(serverIf, handle, uuid, serviceType, instance, advertisePreferred),
+                handle);
     }
 
     void addCharacteristic(int serverIf, int handle, UUID uuid, int serviceHandle) {
         mLastCharacteristic = handle;
-        mEntries.add(new Entry(serverIf, TYPE_CHARACTERISTIC, handle, uuid, serviceHandle));
+        addEntry(
+                new Entry(serverIf, TYPE_CHARACTERISTIC, handle, uuid, serviceHandle),
+                serviceHandle);
     }
 
     void addDescriptor(int serverIf, int handle, UUID uuid, int serviceHandle) {
-        mEntries.add(
+        addEntry(
                 new Entry(
                         serverIf,
                         TYPE_DESCRIPTOR,
                         handle,
                         uuid,
                         serviceHandle,
-                        mLastCharacteristic));
+                        mLastCharacteristic),
+                serviceHandle);
     }
 
     void setStarted(int serverIf, int handle, boolean started) {
-        for (Entry entry : mEntries) {
-            if (entry.type != TYPE_SERVICE
-                    || entry.serverIf != serverIf
-                    || entry.handle != handle) {
-                continue;
-            }
-
-            entry.started = started;
+        Entry entry = mEntriesByHandle.get(handle);
+        if (entry == null || entry.type != TYPE_SERVICE || entry.serverIf != serverIf) {
             return;
         }
+
+        entry.started = started;
     }
 
     Entry getByHandle(int handle) {
-        for (Entry entry : mEntries) {
-            if (entry.handle == handle) {
-                return entry;
-            }
+        Entry entry = mEntriesByHandle.get(handle);
+        if (entry == null) {
+            Log.e(TAG, "getByHandle() - Handle " + handle + " not found!");
         }
-        Log.e(TAG, "getByHandle() - Handle " + handle + " not found!");
-        return null;
+        return entry;
     }
 
     boolean checkServiceExists(UUID uuid, int handle) {
-        for (Entry entry : mEntries) {
-            if (entry.type == TYPE_SERVICE && entry.handle == handle && entry.uuid.equals(uuid)) {
-                return true;
-            }
-        }
-        return false;
+        Entry entry = mEntriesByHandle.get(handle);
+        return entry != null && entry.type == TYPE_SERVICE && entry.uuid.equals(uuid);
     }
 
     void deleteService(int serverIf, int serviceHandle) {
-        mEntries.removeIf(
-                entry ->
-                        ((entry.serverIf == serverIf)
-                                && (entry.handle == serviceHandle
-                                        || entry.serviceHandle == serviceHandle)));
+        synchronized (mEntriesByService) {
+            List<Entry> serviceEntries = mEntriesByService.get(serviceHandle);
+            if (serviceEntries == null) {
+                return;
+            }
+            boolean removed =
+                    serviceEntries.removeIf(
+                            entry -> {
+                                if (entry.serverIf != serverIf) {
+                                    return false;
+                                }
+                                mEntriesByHandle.remove(entry.handle, entry);
+                                return true;
+                            });
+            if (serviceEntries.isEmpty()) {
+                mEntriesByService.remove(serviceHandle);
+            }
+            if (removed) {
+                mSortedEntries = null;
+            }
+        }
     }
 
+    /** Returns an unmodifiable snapshot of all the attributes, ordered by handle. */
     List<Entry> getEntries() {
-        return mEntries;
+        List<Entry> entries = mSortedEntries;
+        if (entries != null) {
+            return entries;
+        }
+        synchronized (mEntriesByService) {
+            if (mSortedEntries == null) {
+                List<Entry> sorted = new ArrayList<Entry>(mEntriesByHandle.values());
+                sorted.sort(Comparator.comparingInt(entry -> entry.handle));
+                mSortedEntries = Collections.unmodifiableList(sorted);
+            }
+            return mSortedEntries;
+        }
     }
 
     void addRequest(int connId, int requestId, int handle) {
@@ -218,10 +263,11 @@ class HandleMap {
 
     /** Logs debug information. */
     void dump(StringBuilder sb) {
-        sb.append("  Entries: ").append(mEntries.size()).append("\n");
+        List<Entry> entries = getEntries();
+        sb.append("  Entries: ").append(entries.size()).append("\n");
         sb.append("  Requests: ").append(mRequestMap.size()).append("\n");
 
-        for (Entry entry : mEntries) {
+        for (Entry entry : entries) {
             sb.append("  ").append(entry.serverIf).append(": [").append(entry.handle).append("] ");
             switch (entry.type) {
                 case TYPE_SERVICE:
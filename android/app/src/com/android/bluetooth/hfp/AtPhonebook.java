@@ -23,6 +23,7 @@ import android.bluetooth.BluetoothDevice;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -42,6 +43,8 @@ import com.android.bluetooth.util.GsmAlphabet;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /** Helper for managing phonebook presentation over AT commands */
 public class AtPhonebook {
@@ -67,6 +70,9 @@ public class AtPhonebook {
      */
     private static final int MAX_PHONEBOOK_SIZE = 16384;
 
+    /** Maximum number of caller ID lookups of the call history kept until the contacts change. */
+    @VisibleForTesting static final int MAX_CACHED_CALLER_NAMES = 128;
+
     private static final String OUTGOING_CALL_WHERE = Calls.TYPE + "=" + Calls.OUTGOING_TYPE;
     private static final String INCOMING_CALL_WHERE = Calls.TYPE + "=" + Calls.INCOMING_TYPE;
     private static final String MISSED_CALL_WHERE = Calls.TYPE + "=" + Calls.MISSED_TYPE;
@@ -95,6 +101,27 @@ public class AtPhonebook {
     @VisibleForTesting
     final HashMap<String, PhonebookResult> mPhonebooks = new HashMap<String, PhonebookResult>(4);
 
+    // Caller ID lookups of the call history, by number. Numbers without a contact map to "".
+    @VisibleForTesting
+    final Map<String, String> mCallerNames =
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_CACHED_CALLER_NAMES;
+                }
+            };
+
+    private final ContentObserver mContactsObserver =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    clearCallerNames();
+                }
+            };
+    private boolean mContactsObserverRegistered;
+    // Incremented whenever mCallerNames is cleared, guarded by mCallerNames.
+    private int mCallerNamesGeneration;
+
     static final int TYPE_UNKNOWN = -1;
     static final int TYPE_READ = 0;
     static final int TYPE_SET = 1;
@@ -117,6 +144,14 @@ public class AtPhonebook {
 
     public void cleanup() {
         mPhonebooks.clear();
+        synchronized (mCallerNames) {
+            if (mContactsObserverRegistered) {
+                mContentResolver.unregisterContentObserver(mContactsObserver);
+                mContactsObserverRegistered = false;
+            }
+            mCallerNames.clear();
+            mCallerNamesGeneration++;
+        }
     }
 
     /** Returns the last dialled number, or null if no numbers have been called */
@@ -559,31 +594,8 @@ public class AtPhonebook {
             String name = null;
             int type = -1;
             if (pbr.nameColumn == -1 && number != null && number.length() > 0) {
-                // try caller id lookup
-                // TODO: This code is horribly inefficient. I saw it
-                // take 7 seconds to process 100 missed calls.
-                Cursor c =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverQuery(
-                                        mContentResolver,
-                                        Uri.withAppendedPath(
-                                                PhoneLookup.ENTERPRISE_CONTENT_FILTER_URI,
-                                                Uri.encode(number)),
-                                        new String[] {PhoneLookup.DISPLAY_NAME, PhoneLookup.TYPE},
-                                        null,
-                                        null,
-                                        null);
-                if (c != null) {
-                    if (c.moveToFirst()) {
-                        name = c.getString(0);
-                        type = c.getInt(1);
-                    }
-                    c.close();
-                }
-                if (name == null) {
-                    Log.d(TAG, "Caller ID lookup failed for " + number);
-                }
-
+                // try caller id lookup, once per number until the contacts change
+                name = getCallerName(number);
             } else if (pbr.nameColumn != -1) {
                 name = pbr.cursor.getString(pbr.nameColumn);
             } else {
@@ -649,6 +661,73 @@ public class AtPhonebook {
         return atCommandResult;
     }
 
+    private String getCallerName(String number) {
+        boolean observed;
+        int generation;
+        synchronized (mCallerNames) {
+            String name = mCallerNames.get(number);
+            if (name != null) {
+                return name;
+            }
+            // Observe the contacts before the query, so that changes during it are noticed.
+            observed = registerContactsObserver();
+            generation = mCallerNamesGeneration;
+        }
+        String name = null;
+        Cursor c =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mContentResolver,
+                                Uri.withAppendedPath(
+                                        PhoneLookup.ENTERPRISE_CONTENT_FILTER_URI,
+                                        Uri.encode(number)),
+                                new String[] {PhoneLookup.DISPLAY_NAME},
+                                null,
+                                null,
+                                null);
+        if (c != null) {
+            if (c.moveToFirst()) {
+                name = c.getString(0);
+            }
+            c.close();
+        }
+        if (name == null) {
+            Log.d(TAG, "Caller ID lookup failed for " + number);
+            name = "";
+        }
+        synchronized (mCallerNames) {
+            // Without the observer the names could go stale, hence are not kept. Neither is a
+            // name queried while the contacts changed.
+            if (observed && generation == mCallerNamesGeneration) {
+                mCallerNames.put(number, name);
+            }
+        }
+        return name;
+    }
+
+    // Called with the mCallerNames lock held. Returns whether the contacts are observed.
+    private boolean registerContactsObserver() {
+        if (mContactsObserverRegistered) {
+            return true;
+        }
+        try {
+            mContentResolver.registerContentObserver(
+                    DevicePolicyUtils.getEnterprisePhoneUri(mContext), false, mContactsObserver);
+            mContactsObserverRegistered = true;
+        } catch (SecurityException | IllegalStateException e) {
+            Log.w(TAG, "Unable to observe the contacts: " + e);
+        }
+        return mContactsObserverRegistered;
+    }
+
+    @VisibleForTesting
+    void clearCallerNames() {
+        synchronized (mCallerNames) {
+            mCallerNames.clear();
+            mCallerNamesGeneration++;
+        }
+    }
+
     private void requestAccessPermission(BluetoothDevice remoteDevice) {
         Intent intent = new Intent(BluetoothDevice.ACTION_CONNECTION_ACCESS_REQUEST);
         intent.setPackage(mPairingPackage);
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.os.ParcelUuid;
+import android.util.SparseArray;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index over the software {@link ScanFilter}s of a set of scan clients.
+ *
+ * <p>Each filter is keyed by its most selective exact-match field: device address, manufacturer
+ * id, service data UUID or unmasked service UUID. A scan result then only needs to be matched
+ * against the clients owning a filter keyed by one of the fields present in the result. Clients
+ * without filters, or with a filter that has none of these fields, are candidates for every
+ * result. The index only narrows down the clients to check, the final decision is still made by
+ * {@link ScanFilter#matches}.
+ */
+class ScanFilterIndex {
+    // Filters each client had when the index was built, to detect a stale index.
+    private final Map<ScanClient, List<ScanFilter>> mIndexedFilters = new HashMap<>();
+    private final Set<ScanClient> mUnkeyedClients = new HashSet<>();
+    private final Map<String, Set<ScanClient>> mByAddress = new HashMap<>();
+    private final SparseArray<Set<ScanClient>> mByManufacturerId = new SparseArray<>();
+    private final Map<ParcelUuid, Set<ScanClient>> mByServiceDataUuid = new HashMap<>();
+    private final Map<ParcelUuid, Set<ScanClient>> mByServiceUuid = new HashMap<>();
+
+    ScanFilterIndex(Collection<ScanClient> clients) {
+        for (ScanClient client : clients) {
+            mIndexedFilters.put(client, client.filters);
+            if (client.filters == null || client.filters.isEmpty()) {
+                mUnkeyedClients.add(client);
+                continue;
+            }
+            for (ScanFilter filter : client.filters) {
+                addFilter(client, filter);
+            }
+        }
+    }
+
+    private void addFilter(ScanClient client, ScanFilter filter) {
+        if (filter.getDeviceAddress() != null) {
+            // The original address of a result is compared ignoring case.
+            String address = filter.getDeviceAddress().toUpperCase(Locale.ROOT);
+            mByAddress.computeIfAbsent(address, k -> new HashSet<>()).add(client);
+        } else if (filter.getManufacturerId() >= 0 && filter.getManufacturerData() != null) {
+            int manufacturerId = filter.getManufacturerId();
+            Set<ScanClient> clients = mByManufacturerId.get(manufacturerId);
+            if (clients == null) {
+                clients = new HashSet<>();
+                mByManufacturerId.put(manufacturerId, clients);
+            }
+            clients.add(client);
+        } else if (filter.getServiceDataUuid() != null) {
+            mByServiceDataUuid
+                    .computeIfAbsent(filter.getServiceDataUuid(), k -> new HashSet<>())
+                    .add(client);
+        } else if (filter.getServiceUuid() != null && filter.getServiceUuidMask() == null) {
+            mByServiceUuid
+                    .computeIfAbsent(filter.getServiceUuid(), k -> new HashSet<>())
+                    .add(client);
+        } else {
+            mUnkeyedClients.add(client);
+        }
+    }
+
+    /** Returns true if the index was built from exactly these clients and their filters. */
+    boolean isCurrent(Set<ScanClient> clients) {
+        if (clients.size() != mIndexedFilters.size()) {
+            return false;
+        }
+        for (ScanClient client : clients) {
+            if (!isIndexed(client)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the clients owning a keyed filter that may match the result. Clients that are not
+     * keyed must be checked with {@link #isCandidate}.
+     */
+    Set<ScanClient> getCandidates(ScanResult result, String originalAddress) {
+        Set<ScanClient> candidates = new HashSet<>();
+        BluetoothDevice device = result.getDevice();
+        if (device != null) {
+            addAll(candidates, mByAddress.get(device.getAddress().toUpperCase(Locale.ROOT)));
+        }
+        if (originalAddress != null) {
+            addAll(candidates, mByAddress.get(originalAddress.toUpperCase(Locale.ROOT)));
+        }
+
+        ScanRecord scanRecord = result.getScanRecord();
+        if (scanRecord == null) {
+            return candidates;
+        }
+        SparseArray<byte[]> manufacturerData = scanRecord.getManufacturerSpecificData();
+        if (manufacturerData != null && mByManufacturerId.size() > 0) {
+            for (int i = 0; i < manufacturerData.size(); i++) {
+                addAll(candidates, mByManufacturerId.get(manufacturerData.keyAt(i)));
+            }
+        }
+        Map<ParcelUuid, byte[]> serviceData = scanRecord.getServiceData();
+        if (serviceData != null && !mByServiceDataUuid.isEmpty()) {
+            for (ParcelUuid uuid : serviceData.keySet()) {
+                addAll(candidates, mByServiceDataUuid.get(uuid));
+            }
+        }
+        List<ParcelUuid> serviceUuids = scanRecord.getServiceUuids();
+        if (serviceUuids != null && !mByServiceUuid.isEmpty()) {
+            for (ParcelUuid uuid : serviceUuids) {
+                addAll(candidates, mByServiceUuid.get(uuid));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns true if the client needs its filters checked against a result, given the
+     * candidates returned by {@link #getCandidates} for that result. Clients unknown to the index
+     * are always checked.
+     */
+    boolean isCandidate(ScanClient client, Set<ScanClient> candidates) {
+        return !isIndexed(client)
+                || mUnkeyedClients.contains(client)
+                || candidates.contains(client);
+    }
+
+    private boolean isIndexed(ScanClient client) {
+        return mIndexedFilters.containsKey(client) && mIndexedFilters.get(client) == client.filters;
+    }
+
+    private static void addAll(Set<ScanClient> candidates, Set<ScanClient> clients) {
+        if (clients != null) {
+            candidates.addAll(clients);
+        }
+    }
+}
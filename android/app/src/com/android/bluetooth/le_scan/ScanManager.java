@@ -55,16 +55,22 @@ import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /** Class that handles Bluetooth LE scan related operations. */
@@ -1012,6 +1018,19 @@ public class ScanManager {
         // Keep track of the clients that uses ALL_PASS filters.
         private final Set<Integer> mAllPassRegularClients = new HashSet<>();
         private final Set<Integer> mAllPassBatchClients = new HashSet<>();
+        // Filters offloaded for clients without onfound/onlost, by filter index. Like the ALL_PASS
+        // filters, an identical filter from another client shares the same index, as matches are
+        // demultiplexed to the clients in software.
+        private final Map<Integer, SharedFilter> mSharedFilters = new HashMap<>();
+        // Scan filter operations issued but not completed yet, in issue order. The stack
+        // completes them in the same order, so each completion matches the head of the queue.
+        private final Queue<PendingFilterOperation> mPendingFilterOperations =
+                new ConcurrentLinkedQueue<>();
+        // Generation of the batch of scan filter operations in progress. Completions of operations
+        // left pending by an earlier batch that timed out are ignored until
+        // mLateFilterOperationsDeadline.
+        private final AtomicInteger mFilterOperationsGeneration = new AtomicInteger();
+        private volatile long mLateFilterOperationsDeadline = 0;
 
         private final AtomicReference<BroadcastReceiver> mBatchAlarmReceiver =
                 new AtomicReference<>();
@@ -1057,6 +1076,24 @@ public class ScanManager {
 
         private void callbackDone(int scannerId, int status) {
             Log.d(TAG, "callback done for scannerId - " + scannerId + " status - " + status);
+            int generation = mFilterOperationsGeneration.get();
+            PendingFilterOperation operation = mPendingFilterOperations.poll();
+            while (operation != null && operation.mGeneration != generation) {
+                if (SystemClock.elapsedRealtime() <= mLateFilterOperationsDeadline) {
+                    // Late completion of a batch that timed out, not one of the current batch.
+                    Log.w(TAG, "Ignoring late completion of scan filter operation " + operation);
+                    return;
+                }
+                operation = mPendingFilterOperations.poll();
+            }
+            if (operation != null) {
+                if (status != 0) {
+                    Log.e(TAG, "Scan filter operation " + operation + " failed: " + status);
+                }
+                // Count failures too, so that one rejected filter does not stall the others.
+                mNativeInterface.callbackDone();
+                return;
+            }
             if (status == 0) {
                 mNativeInterface.callbackDone();
             }
@@ -1071,6 +1108,89 @@ public class ScanManager {
             return mNativeInterface.waitForCallback(OPERATION_TIME_OUT_MILLIS);
         }
 
+        /** A scan filter operation waiting for its completion, and the batch it belongs to. */
+        private static class PendingFilterOperation {
+            final String mName;
+            final int mGeneration;
+
+            PendingFilterOperation(String name, int generation) {
+                mName = name;
+                mGeneration = generation;
+            }
+
+            @Override
+            public String toString() {
+                return mName;
+            }
+        }
+
+        /** An offloaded filter and the number of client filters using its index. */
+        private class SharedFilter {
+            final int mDeliveryMode;
+            final ScanFilter mFilter;
+            int mRefCount = 1;
+
+            SharedFilter(int deliveryMode, ScanFilter filter) {
+                mDeliveryMode = deliveryMode;
+                mFilter = filter;
+            }
+        }
+
+        /**
+         * Scan filter operations that are issued back to back and waited for together, instead of
+         * waiting for a controller round trip after each of them.
+         */
+        private class FilterOperations {
+            private final List<String> mNames = new ArrayList<>();
+            private final List<Runnable> mOperations = new ArrayList<>();
+
+            void add(String name, Runnable operation) {
+                mNames.add(name);
+                mOperations.add(operation);
+            }
+
+            void run() {
+                int count = mOperations.size();
+                if (count == 0) {
+                    return;
+                }
+                if (SystemClock.elapsedRealtime() > mLateFilterOperationsDeadline) {
+                    mPendingFilterOperations.clear();
+                }
+                int generation = mFilterOperationsGeneration.incrementAndGet();
+                mNativeInterface.resetCountDownLatch(count);
+                // Queued before issuing, as completions arrive on another thread.
+                for (String name : mNames) {
+                    mPendingFilterOperations.add(new PendingFilterOperation(name, generation));
+                }
+                for (Runnable operation : mOperations) {
+                    operation.run();
+                }
+                // The completions arrive back to back, so only time out when none arrived for
+                // a whole operation timeout, instead of waiting for each operation in turn.
+                long pending = count;
+                while (!mNativeInterface.waitForCallback(OPERATION_TIME_OUT_MILLIS)) {
+                    long remaining = mNativeInterface.getPendingCallbackCount();
+                    if (remaining >= pending) {
+                        Log.w(
+                                TAG,
+                                "Timed out with "
+                                        + remaining
+                                        + " of "
+                                        + count
+                                        + " scan filter operations pending");
+                        // Keep the pending operations as an earlier generation, so that their
+                        // late completions are not counted for the next operations.
+                        mLateFilterOperationsDeadline =
+                                SystemClock.elapsedRealtime() + OPERATION_TIME_OUT_MILLIS;
+                        mFilterOperationsGeneration.incrementAndGet();
+                        return;
+                    }
+                    pending = remaining;
+                }
+            }
+        }
+
         void configureRegularScanParams() {
             Log.d(TAG, "configureRegularScanParams() - queue=" + mRegularScanClients.size());
             int curScanSetting = Integer.MIN_VALUE;
@@ -1541,34 +1661,48 @@ public class ScanManager {
                 return;
             }
 
-            resetCountDownLatch();
-            mNativeInterface.gattClientScanFilterEnable(scannerId, true);
-            waitForCallback();
+            FilterOperations operations = new FilterOperations();
+            operations.add(
+                    "enable", () -> mNativeInterface.gattClientScanFilterEnable(scannerId, true));
 
             if (shouldUseAllPassFilter(client)) {
                 int filterIndex =
                         (deliveryMode == DELIVERY_MODE_BATCH)
                                 ? ALL_PASS_FILTER_INDEX_BATCH_SCAN
                                 : ALL_PASS_FILTER_INDEX_REGULAR_SCAN;
-                resetCountDownLatch();
                 // Don't allow Onfound/onlost with all pass
-                configureFilterParameter(
-                        scannerId, client, ALL_PASS_FILTER_SELECTION, filterIndex, 0);
-                waitForCallback();
+                operations.add(
+                        "params " + filterIndex,
+                        () ->
+                                configureFilterParameter(
+                                        scannerId,
+                                        client,
+                                        ALL_PASS_FILTER_SELECTION,
+                                        filterIndex,
+                                        0));
             } else {
                 Deque<Integer> clientFilterIndices = new ArrayDeque<Integer>();
                 for (ScanFilter filter : client.filters) {
+                    Integer sharedIndex = getSharedFilterIndex(deliveryMode, filter);
+                    if (sharedIndex != null) {
+                        mSharedFilters.get(sharedIndex).mRefCount++;
+                        clientFilterIndices.add(sharedIndex);
+                        continue;
+                    }
                     ScanFilterQueue queue = new ScanFilterQueue();
                     queue.addScanFilter(filter);
                     int featureSelection = queue.getFeatureSelection();
                     int filterIndex = mFilterIndexStack.pop();
+                    if (isShareableDeliveryMode(deliveryMode)) {
+                        mSharedFilters.put(filterIndex, new SharedFilter(deliveryMode, filter));
+                    }
 
-                    resetCountDownLatch();
-                    mNativeInterface.gattClientScanFilterAdd(
-                            scannerId, queue.toArray(), filterIndex);
-                    waitForCallback();
+                    operations.add(
+                            "add " + filterIndex,
+                            () ->
+                                    mNativeInterface.gattClientScanFilterAdd(
+                                            scannerId, queue.toArray(), filterIndex));
 
-                    resetCountDownLatch();
                     if (deliveryMode == DELIVERY_MODE_ON_FOUND_LOST) {
                         trackEntries = getNumOfTrackingAdvertisements(client.settings);
                         if (!manageAllocationOfTrackingAdvertisement(trackEntries, true)) {
@@ -1590,13 +1724,21 @@ public class ScanManager {
                             }
                         }
                     }
-                    configureFilterParameter(
-                            scannerId, client, featureSelection, filterIndex, trackEntries);
-                    waitForCallback();
+                    int numOfTrackingEntries = trackEntries;
+                    operations.add(
+                            "params " + filterIndex,
+                            () ->
+                                    configureFilterParameter(
+                                            scannerId,
+                                            client,
+                                            featureSelection,
+                                            filterIndex,
+                                            numOfTrackingEntries));
                     clientFilterIndices.add(filterIndex);
                 }
                 mClientFilterIndexMap.put(scannerId, clientFilterIndices);
             }
+            operations.run();
         }
 
         // Check whether the filter should be added to controller.
@@ -1617,35 +1759,106 @@ public class ScanManager {
         }
 
         private void removeScanFilters(int scannerId) {
+            FilterOperations operations = new FilterOperations();
             Deque<Integer> filterIndices = mClientFilterIndexMap.remove(scannerId);
             if (filterIndices != null) {
-                mFilterIndexStack.addAll(filterIndices);
                 for (Integer filterIndex : filterIndices) {
-                    resetCountDownLatch();
-                    mNativeInterface.gattClientScanFilterParamDelete(scannerId, filterIndex);
-                    waitForCallback();
+                    if (releaseSharedFilter(filterIndex)) {
+                        // Still used by another client.
+                        continue;
+                    }
+                    mFilterIndexStack.add(filterIndex);
+                    addFilterDelete(operations, scannerId, filterIndex);
                 }
             }
             // Remove if ALL_PASS filters are used.
             removeFilterIfExisits(
-                    mAllPassRegularClients, scannerId, ALL_PASS_FILTER_INDEX_REGULAR_SCAN);
+                    operations,
+                    mAllPassRegularClients,
+                    scannerId,
+                    ALL_PASS_FILTER_INDEX_REGULAR_SCAN);
             removeFilterIfExisits(
-                    mAllPassBatchClients, scannerId, ALL_PASS_FILTER_INDEX_BATCH_SCAN);
+                    operations, mAllPassBatchClients, scannerId, ALL_PASS_FILTER_INDEX_BATCH_SCAN);
+            operations.run();
         }
 
-        private void removeFilterIfExisits(Set<Integer> clients, int scannerId, int filterIndex) {
+        private void removeFilterIfExisits(
+                FilterOperations operations,
+                Set<Integer> clients,
+                int scannerId,
+                int filterIndex) {
             if (!clients.contains(scannerId)) {
                 return;
             }
             clients.remove(scannerId);
             // Remove ALL_PASS filter iff no app is using it.
             if (clients.isEmpty()) {
-                resetCountDownLatch();
-                mNativeInterface.gattClientScanFilterParamDelete(scannerId, filterIndex);
-                waitForCallback();
+                addFilterDelete(operations, scannerId, filterIndex);
             }
         }
 
+        private boolean isShareableDeliveryMode(int deliveryMode) {
+            // Onfound/onlost filters track advertisers for the client that added them.
+            return deliveryMode != DELIVERY_MODE_ON_FOUND_LOST;
+        }
+
+        // Returns the index of an offloaded filter the given filter can share, or null.
+        private Integer getSharedFilterIndex(int deliveryMode, ScanFilter filter) {
+            if (!isShareableDeliveryMode(deliveryMode)) {
+                return null;
+            }
+            for (Map.Entry<Integer, SharedFilter> entry : mSharedFilters.entrySet()) {
+                SharedFilter sharedFilter = entry.getValue();
+                if (sharedFilter.mDeliveryMode == deliveryMode
+                        && isSameOffloadedFilter(sharedFilter.mFilter, filter)) {
+                    return entry.getKey();
+                }
+            }
+            return null;
+        }
+
+        // ScanFilter#equals ignores the address type and IRK, which are programmed as well.
+        private boolean isSameOffloadedFilter(ScanFilter filter, ScanFilter other) {
+            return filter.equals(other)
+                    && filter.getAddressType() == other.getAddressType()
+                    && Arrays.equals(filter.getIrk(), other.getIrk());
+        }
+
+        // Returns true if the filter index is still used by another client filter.
+        private boolean releaseSharedFilter(int filterIndex) {
+            SharedFilter sharedFilter = mSharedFilters.get(filterIndex);
+            if (sharedFilter == null) {
+                return false;
+            }
+            if (--sharedFilter.mRefCount > 0) {
+                return true;
+            }
+            mSharedFilters.remove(filterIndex);
+            return false;
+        }
+
+        // Number of filter indices needed by the client, filters sharing an index not included.
+        private int getNumOfNewFilterIndices(ScanClient client) {
+            int deliveryMode = getDeliveryMode(client);
+            if (!isShareableDeliveryMode(deliveryMode)) {
+                return client.filters.size();
+            }
+            List<ScanFilter> newFilters = new ArrayList<>();
+            for (ScanFilter filter : client.filters) {
+                if (getSharedFilterIndex(deliveryMode, filter) == null
+                        && newFilters.stream().noneMatch(f -> isSameOffloadedFilter(f, filter))) {
+                    newFilters.add(filter);
+                }
+            }
+            return newFilters.size();
+        }
+
+        private void addFilterDelete(FilterOperations operations, int scannerId, int filterIndex) {
+            operations.add(
+                    "delete " + filterIndex,
+                    () -> mNativeInterface.gattClientScanFilterParamDelete(scannerId, filterIndex));
+        }
+
         private ScanClient getBatchScanClient(int scannerId) {
             for (ScanClient client : mBatchClients) {
                 if (client.scannerId == scannerId) {
@@ -1677,7 +1890,7 @@ public class ScanManager {
             if (client.filters == null || client.filters.isEmpty()) {
                 return true;
             }
-            if (client.filters.size() > mFilterIndexStack.size()) {
+            if (getNumOfNewFilterIndices(client) > mFilterIndexStack.size()) {
                 if (client.stats != null) {
                     client.stats.recordHwFilterNotAvailableCountMetrics(
                             client.scannerId,
@@ -32,7 +32,7 @@ public class ScanNativeInterface {
 
     private static ScanNativeInterface sInterface;
 
-    private CountDownLatch mLatch = new CountDownLatch(1);
+    private volatile CountDownLatch mLatch = new CountDownLatch(1);
     @Nullable private TransitionalScanHelper mScanHelper;
 
     private ScanNativeInterface() {}
@@ -209,7 +209,17 @@ public class ScanNativeInterface {
     }
 
     void resetCountDownLatch() {
-        mLatch = new CountDownLatch(1);
+        resetCountDownLatch(1);
+    }
+
+    // Expects the given number of callbacks before waitForCallback() returns.
+    void resetCountDownLatch(int count) {
+        mLatch = new CountDownLatch(count);
+    }
+
+    // Returns the number of callbacks still expected by waitForCallback().
+    long getPendingCallbackCount() {
+        return mLatch.getCount();
     }
 
     // Returns true if mLatch reaches 0, false if timeout or interrupted.
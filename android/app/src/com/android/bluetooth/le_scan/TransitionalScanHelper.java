@@ -60,14 +60,14 @@ import com.android.bluetooth.btservice.AdapterService;
 import com.android.bluetooth.btservice.BluetoothAdapterProxy;
 import com.android.bluetooth.flags.Flags;
 import com.android.bluetooth.gatt.GattServiceConfig;
-import com.android.bluetooth.util.NumberUtils;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -119,6 +119,92 @@ public class TransitionalScanHelper {
         }
     }
 
+    /**
+     * A single advertising report shared by every scan client it is dispatched to. The {@link
+     * ScanRecord} and {@link ScanResult} are built lazily, at most once for the full advertising
+     * data and once for the fixed-size legacy data, instead of once per client.
+     */
+    private static final class ScanReport {
+        // Legacy scanners expect fixed-size advertising data (31 bytes adv + 31 bytes scan rsp).
+        private static final int LEGACY_ADV_DATA_LENGTH = 62;
+
+        private final int mEventType;
+        private final int mAddressType;
+        private final String mAddress;
+        private final int mPrimaryPhy;
+        private final int mSecondaryPhy;
+        private final int mAdvertisingSid;
+        private final int mTxPower;
+        private final int mRssi;
+        private final int mPeriodicAdvInt;
+        private final byte[] mAdvData;
+        private final long mTimestampNanos;
+
+        private BluetoothDevice mDevice;
+        private ScanResult mResult;
+        private ScanResult mLegacyResult;
+
+        ScanReport(
+                int eventType,
+                int addressType,
+                String address,
+                int primaryPhy,
+                int secondaryPhy,
+                int advertisingSid,
+                int txPower,
+                int rssi,
+                int periodicAdvInt,
+                byte[] advData) {
+            mEventType = eventType;
+            mAddressType = addressType;
+            mAddress = address;
+            mPrimaryPhy = primaryPhy;
+            mSecondaryPhy = secondaryPhy;
+            mAdvertisingSid = advertisingSid;
+            mTxPower = txPower;
+            mRssi = rssi;
+            mPeriodicAdvInt = periodicAdvInt;
+            mAdvData = advData;
+            mTimestampNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /** Returns the result carrying the full advertising data. */
+        ScanResult getResult() {
+            if (mResult == null) {
+                mResult = buildResult(mAdvData);
+            }
+            return mResult;
+        }
+
+        /** Returns the result carrying advertising data truncated to the legacy length. */
+        ScanResult getLegacyResult() {
+            if (mLegacyResult == null) {
+                mLegacyResult =
+                        buildResult(Arrays.copyOfRange(mAdvData, 0, LEGACY_ADV_DATA_LENGTH));
+            }
+            return mLegacyResult;
+        }
+
+        private ScanResult buildResult(byte[] scanRecordData) {
+            if (mDevice == null) {
+                mDevice =
+                        BluetoothAdapter.getDefaultAdapter()
+                                .getRemoteLeDevice(mAddress, mAddressType);
+            }
+            return new ScanResult(
+                    mDevice,
+                    mEventType,
+                    mPrimaryPhy,
+                    mSecondaryPhy,
+                    mAdvertisingSid,
+                    mTxPower,
+                    mRssi,
+                    mPeriodicAdvInt,
+                    ScanRecord.parseFromBytes(scanRecordData),
+                    mTimestampNanos);
+        }
+    }
+
     public interface TestModeAccessor {
         /** Indicates if bluetooth test mode is enabled. */
         boolean isTestModeEnabled();
@@ -142,6 +228,7 @@ public class TransitionalScanHelper {
     private AdapterService mAdapterService;
 
     private ScannerMap mScannerMap = new ScannerMap();
+    private volatile ScanFilterIndex mScanFilterIndex;
     private String mExposureNotificationPackage;
 
     public ScannerMap getScannerMap() {
@@ -367,20 +454,33 @@ public class TransitionalScanHelper {
             originalAddress = identityAddress;
         }
 
-        byte[] legacyAdvData = Arrays.copyOfRange(advData, 0, 62);
-
-        for (ScanClient client : mScanManager.getRegularScanQueue()) {
+        ScanReport report =
+                new ScanReport(
+                        eventType,
+                        addressType,
+                        address,
+                        primaryPhy,
+                        secondaryPhy,
+                        advertisingSid,
+                        txPower,
+                        rssi,
+                        periodicAdvInt,
+                        advData);
+        Set<ScanClient> clients = mScanManager.getRegularScanQueue();
+        ScanFilterIndex filterIndex = getScanFilterIndex(clients);
+        Set<ScanClient> candidates = null;
+        Set<ScanClient> legacyCandidates = null;
+
+        for (ScanClient client : clients) {
             ScannerMap.ScannerApp app = mScannerMap.getById(client.scannerId);
             if (app == null) {
                 Log.v(TAG, "App is null; skip.");
                 continue;
             }
 
-            BluetoothDevice device =
-                    BluetoothAdapter.getDefaultAdapter().getRemoteLeDevice(address, addressType);
-
             ScanSettings settings = client.settings;
-            byte[] scanRecordData;
+            ScanResult result;
+            boolean isFilterCandidate;
             // This is for compatibility with applications that assume fixed size scan data.
             if (settings.getLegacy()) {
                 if ((eventType & ET_LEGACY_MASK) == 0) {
@@ -389,26 +489,20 @@ public class TransitionalScanHelper {
                     continue;
                 } else {
                     // Some apps are used to fixed-size advertise data.
-                    scanRecordData = legacyAdvData;
+                    result = report.getLegacyResult();
+                    if (legacyCandidates == null) {
+                        legacyCandidates = filterIndex.getCandidates(result, originalAddress);
+                    }
+                    isFilterCandidate = filterIndex.isCandidate(client, legacyCandidates);
                 }
             } else {
-                scanRecordData = advData;
+                result = report.getResult();
+                if (candidates == null) {
+                    candidates = filterIndex.getCandidates(result, originalAddress);
+                }
+                isFilterCandidate = filterIndex.isCandidate(client, candidates);
             }
 
-            ScanRecord scanRecord = ScanRecord.parseFromBytes(scanRecordData);
-            ScanResult result =
-                    new ScanResult(
-                            device,
-                            eventType,
-                            primaryPhy,
-                            secondaryPhy,
-                            advertisingSid,
-                            txPower,
-                            rssi,
-                            periodicAdvInt,
-                            scanRecord,
-                            SystemClock.elapsedRealtimeNanos());
-
             if (client.hasDisavowedLocation) {
                 if (mLocationDenylistPredicate.test(result)) {
                     Log.i(TAG, "Skipping client for location deny list");
@@ -432,7 +526,10 @@ public class TransitionalScanHelper {
                     result = sanitized;
                 }
             }
-            boolean matchResult = matchesFilters(client, result, originalAddress);
+            // A sanitized result only carries fields of the original one, so the candidates
+            // computed for the original result still apply.
+            boolean matchResult =
+                    isFilterCandidate && matchesFilters(client, result, originalAddress);
             if (!hasPermission || !matchResult) {
                 Log.v(
                         TAG,
@@ -471,6 +568,16 @@ public class TransitionalScanHelper {
         }
     }
 
+    /** Returns the filter index of the clients, rebuilding it if they started or stopped. */
+    private ScanFilterIndex getScanFilterIndex(Set<ScanClient> clients) {
+        ScanFilterIndex filterIndex = mScanFilterIndex;
+        if (filterIndex == null || !filterIndex.isCurrent(clients)) {
+            filterIndex = new ScanFilterIndex(clients);
+            mScanFilterIndex = filterIndex;
+        }
+        return filterIndex;
+    }
+
     private void sendResultByPendingIntent(
             PendingIntentInfo pii, ScanResult result, int callbackType, ScanClient client) {
         ArrayList<ScanResult> results = new ArrayList<>();
@@ -694,7 +801,7 @@ public class TransitionalScanHelper {
                         + ", numRecords="
                         + numRecords);
 
-        Set<ScanResult> results = parseBatchScanResults(numRecords, reportType, recordData);
+        ArrayList<ScanResult> results = parseBatchScanResults(numRecords, reportType, recordData);
         if (reportType == ScanManager.SCAN_RESULT_TYPE_TRUNCATED) {
             // We only support single client for truncated mode.
             ScannerMap.ScannerApp app = mScannerMap.getById(scannerId);
@@ -709,7 +816,8 @@ public class TransitionalScanHelper {
 
             ArrayList<ScanResult> permittedResults;
             if (hasScanResultPermission(client)) {
-                permittedResults = new ArrayList<ScanResult>(results);
+                // Only this client gets the results, no need to copy them.
+                permittedResults = results;
             } else {
                 permittedResults = new ArrayList<ScanResult>();
                 for (ScanResult scanResult : results) {
@@ -780,7 +888,8 @@ public class TransitionalScanHelper {
     }
 
     // Check and deliver scan results for different scan clients.
-    private void deliverBatchScan(ScanClient client, Set<ScanResult> allResults)
+    @SuppressWarnings("NonApiType")
+    private void deliverBatchScan(ScanClient client, ArrayList<ScanResult> allResults)
             throws RemoteException {
         ScannerMap.ScannerApp app = mScannerMap.getById(client.scannerId);
         if (app == null) {
@@ -789,7 +898,8 @@ public class TransitionalScanHelper {
 
         ArrayList<ScanResult> permittedResults;
         if (hasScanResultPermission(client)) {
-            permittedResults = new ArrayList<ScanResult>(allResults);
+            // Shared by all clients, it must not be modified.
+            permittedResults = allResults;
         } else {
             permittedResults = new ArrayList<ScanResult>();
             for (ScanResult scanResult : allResults) {
@@ -818,76 +928,75 @@ public class TransitionalScanHelper {
         sendBatchScanResults(app, client, results);
     }
 
-    private Set<ScanResult> parseBatchScanResults(
+    // Results are decoded straight from the batch buffer, in the order reported by the controller.
+    @SuppressWarnings("NonApiType")
+    private ArrayList<ScanResult> parseBatchScanResults(
             int numRecords, int reportType, byte[] batchRecord) {
         if (numRecords == 0) {
-            return Collections.emptySet();
+            return new ArrayList<ScanResult>();
         }
-        Log.d(TAG, "current time is " + SystemClock.elapsedRealtimeNanos());
+        Log.d(
+                TAG,
+                "current time is "
+                        + SystemClock.elapsedRealtimeNanos()
+                        + ", batch record length "
+                        + batchRecord.length);
+        ByteBuffer buffer = ByteBuffer.wrap(batchRecord).order(ByteOrder.LITTLE_ENDIAN);
         if (reportType == ScanManager.SCAN_RESULT_TYPE_TRUNCATED) {
-            return parseTruncatedResults(numRecords, batchRecord);
+            return parseTruncatedResults(numRecords, buffer);
         } else {
-            return parseFullResults(numRecords, batchRecord);
+            return parseFullResults(numRecords, buffer);
         }
     }
 
-    private Set<ScanResult> parseTruncatedResults(int numRecords, byte[] batchRecord) {
-        Log.d(TAG, "batch record " + Arrays.toString(batchRecord));
-        Set<ScanResult> results = new HashSet<ScanResult>(numRecords);
+    @SuppressWarnings("NonApiType")
+    private ArrayList<ScanResult> parseTruncatedResults(int numRecords, ByteBuffer buffer) {
+        ArrayList<ScanResult> results = new ArrayList<ScanResult>(numRecords);
         long now = SystemClock.elapsedRealtimeNanos();
+        // Truncated records carry no advertising data, share a single empty scan record.
+        ScanRecord emptyScanRecord = ScanRecord.parseFromBytes(new byte[0]);
         for (int i = 0; i < numRecords; ++i) {
-            byte[] record =
-                    extractBytes(batchRecord, i * TRUNCATED_RESULT_SIZE, TRUNCATED_RESULT_SIZE);
-            byte[] address = extractBytes(record, 0, 6);
-            reverse(address);
-            BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
-            int rssi = record[8];
-            long timestampNanos = now - parseTimestampNanos(extractBytes(record, 9, 2));
-            results.add(
-                    new ScanResult(
-                            device, ScanRecord.parseFromBytes(new byte[0]), rssi, timestampNanos));
+            int position = i * TRUNCATED_RESULT_SIZE;
+            BluetoothDevice device = getBatchScanDevice(buffer, position);
+            int rssi = buffer.get(position + 8);
+            long timestampNanos = now - parseTimestampNanos(buffer.getShort(position + 9));
+            results.add(new ScanResult(device, emptyScanRecord, rssi, timestampNanos));
         }
         return results;
     }
 
     @VisibleForTesting
-    long parseTimestampNanos(byte[] data) {
-        long timestampUnit = NumberUtils.littleEndianByteArrayToInt(data);
+    static long parseTimestampNanos(short data) {
+        long timestampUnit = data & 0xFFFF;
         // Timestamp is in every 50 ms.
         return TimeUnit.MILLISECONDS.toNanos(timestampUnit * 50);
     }
 
-    private Set<ScanResult> parseFullResults(int numRecords, byte[] batchRecord) {
-        Log.d(TAG, "Batch record : " + Arrays.toString(batchRecord));
-        Set<ScanResult> results = new HashSet<ScanResult>(numRecords);
-        int position = 0;
+    @SuppressWarnings("NonApiType")
+    private ArrayList<ScanResult> parseFullResults(int numRecords, ByteBuffer buffer) {
+        ArrayList<ScanResult> results = new ArrayList<ScanResult>(numRecords);
         long now = SystemClock.elapsedRealtimeNanos();
-        while (position < batchRecord.length) {
-            byte[] address = extractBytes(batchRecord, position, 6);
-            // TODO: remove temp hack.
-            reverse(address);
-            BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
+        while (buffer.hasRemaining()) {
+            int position = buffer.position();
+            BluetoothDevice device = getBatchScanDevice(buffer, position);
             position += 6;
             // Skip address type.
             position++;
             // Skip tx power level.
             position++;
-            int rssi = batchRecord[position++];
-            long timestampNanos = now - parseTimestampNanos(extractBytes(batchRecord, position, 2));
+            int rssi = buffer.get(position++);
+            long timestampNanos = now - parseTimestampNanos(buffer.getShort(position));
             position += 2;
 
             // Combine advertise packet and scan response packet.
-            int advertisePacketLen = batchRecord[position++];
-            byte[] advertiseBytes = extractBytes(batchRecord, position, advertisePacketLen);
-            position += advertisePacketLen;
-            int scanResponsePacketLen = batchRecord[position++];
-            byte[] scanResponseBytes = extractBytes(batchRecord, position, scanResponsePacketLen);
-            position += scanResponsePacketLen;
+            int advertisePacketLen = buffer.get(position++);
+            int scanResponsePacketLen = buffer.get(position + advertisePacketLen);
             byte[] scanRecord = new byte[advertisePacketLen + scanResponsePacketLen];
-            System.arraycopy(advertiseBytes, 0, scanRecord, 0, advertisePacketLen);
-            System.arraycopy(
-                    scanResponseBytes, 0, scanRecord, advertisePacketLen, scanResponsePacketLen);
-            Log.d(TAG, "ScanRecord : " + Arrays.toString(scanRecord));
+            buffer.position(position);
+            buffer.get(scanRecord, 0, advertisePacketLen);
+            // Skip scan response packet length.
+            buffer.get();
+            buffer.get(scanRecord, advertisePacketLen, scanResponsePacketLen);
             results.add(
                     new ScanResult(
                             device, ScanRecord.parseFromBytes(scanRecord), rssi, timestampNanos));
@@ -895,21 +1004,13 @@ public class TransitionalScanHelper {
         return results;
     }
 
-    // Reverse byte array.
-    private void reverse(byte[] address) {
-        int len = address.length;
-        for (int i = 0; i < len / 2; ++i) {
-            byte b = address[i];
-            address[i] = address[len - 1 - i];
-            address[len - 1 - i] = b;
+    // Reads the address of a batch scan record, stored in reverse byte order.
+    private static BluetoothDevice getBatchScanDevice(ByteBuffer buffer, int position) {
+        byte[] address = new byte[6];
+        for (int i = 0; i < address.length; ++i) {
+            address[i] = buffer.get(position + address.length - 1 - i);
         }
-    }
-
-    // Helper method to extract bytes from byte array.
-    private static byte[] extractBytes(byte[] scanRecord, int start, int length) {
-        byte[] bytes = new byte[length];
-        System.arraycopy(scanRecord, start, bytes, 0, length);
-        return bytes;
+        return BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
     }
 
     public void onBatchScanThresholdCrossed(int clientIf) {
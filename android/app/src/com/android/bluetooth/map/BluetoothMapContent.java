@@ -61,6 +61,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -163,6 +164,9 @@ public class BluetoothMapContent {
     private int mRemoteFeatureMask = BluetoothMapUtils.MAP_FEATURE_DEFAULT_BITMASK;
     @VisibleForTesting int mMsgListingVersion = BluetoothMapUtils.MAP_MESSAGE_LISTING_FORMAT_V10;
 
+    /* Only set while a message listing is built, to reuse the addresses and names it resolves */
+    private SmsMmsListingResolver mListingResolver = null;
+
     static final String[] SMS_PROJECTION =
             new String[] {
                 BaseColumns._ID,
@@ -946,13 +950,13 @@ public class BluetoothMapContent {
                     // If a draft message has no recipient, it has no thread ID
                     // hence threadIdStr could possibly be null
                     if (threadIdStr != null) {
-                        address = getCanonicalAddressSms(mResolver, Integer.valueOf(threadIdStr));
+                        address = getCanonicalAddress(Integer.valueOf(threadIdStr));
                     }
                     Log.v(TAG, "threadId = " + threadIdStr + " address:" + address + "\n");
                 }
             } else if (fi.mMsgType == FilterInfo.TYPE_MMS) {
                 long id = c.getLong(c.getColumnIndex(BaseColumns._ID));
-                address = getAddressMms(mResolver, id, MMS_TO);
+                address = getMmsAddress(id, MMS_TO);
             } else if (fi.mMsgType == FilterInfo.TYPE_EMAIL) {
                 /* Might be another way to handle addresses */
                 address = getRecipientAddressingEmail(c, fi);
@@ -977,7 +981,7 @@ public class BluetoothMapContent {
                 if (msgType != 1) {
                     String phone = c.getString(fi.mSmsColAddress);
                     if (phone != null && !phone.isEmpty()) {
-                        name = getContactNameFromPhone(phone, mResolver);
+                        name = getContactName(phone);
                     }
                 } else {
                     name = fi.mPhoneAlphaTag;
@@ -986,12 +990,12 @@ public class BluetoothMapContent {
                 long id = c.getLong(fi.mMmsColId);
                 String phone;
                 if (e.getRecipientAddressing() != null) {
-                    phone = getAddressMms(mResolver, id, MMS_TO);
+                    phone = getMmsAddress(id, MMS_TO);
                 } else {
                     phone = e.getRecipientAddressing();
                 }
                 if (phone != null && !phone.isEmpty()) {
-                    name = getContactNameFromPhone(phone, mResolver);
+                    name = getContactName(phone);
                 }
             } else if (fi.mMsgType == FilterInfo.TYPE_EMAIL) {
                 /* Might be another way to handle address and names */
@@ -1041,7 +1045,7 @@ public class BluetoothMapContent {
                 }
             } else if (fi.mMsgType == FilterInfo.TYPE_MMS) {
                 long id = c.getLong(fi.mMmsColId);
-                tempAddress = getAddressMms(mResolver, id, MMS_FROM);
+                tempAddress = getMmsAddress(id, MMS_FROM);
                 address = PhoneNumberUtils.extractNetworkPortion(tempAddress);
                 if (address == null || address.length() < 1) {
                     address = tempAddress; // if the number is a service ascii text just use it
@@ -1108,7 +1112,7 @@ public class BluetoothMapContent {
                 if (msgType == 1) {
                     String phone = c.getString(fi.mSmsColAddress);
                     if (phone != null && !phone.isEmpty()) {
-                        name = getContactNameFromPhone(phone, mResolver);
+                        name = getContactName(phone);
                     }
                 } else {
                     name = fi.mPhoneAlphaTag;
@@ -1117,12 +1121,12 @@ public class BluetoothMapContent {
                 long id = c.getLong(fi.mMmsColId);
                 String phone;
                 if (e.getSenderAddressing() != null) {
-                    phone = getAddressMms(mResolver, id, MMS_FROM);
+                    phone = getMmsAddress(id, MMS_FROM);
                 } else {
                     phone = e.getSenderAddressing();
                 }
                 if (phone != null && !phone.isEmpty()) {
-                    name = getContactNameFromPhone(phone, mResolver);
+                    name = getContactName(phone);
                 }
             } else if (fi.mMsgType == FilterInfo.TYPE_EMAIL /*  ||
                        fi.mMsgType == FilterInfo.TYPE_IM*/) {
@@ -1322,6 +1326,56 @@ public class BluetoothMapContent {
         return e;
     }
 
+    private String getContactName(String phone) {
+        if (mListingResolver != null) {
+            return mListingResolver.getContactName(phone);
+        }
+        return getContactNameFromPhone(phone, mResolver);
+    }
+
+    private String getMmsAddress(long id, int type) {
+        if (mListingResolver != null) {
+            return mListingResolver.getMmsAddress(id, type);
+        }
+        return getAddressMms(mResolver, id, type);
+    }
+
+    private String getCanonicalAddress(int threadId) {
+        if (mListingResolver != null) {
+            return mListingResolver.getCanonicalAddress(threadId);
+        }
+        return getCanonicalAddressSms(mResolver, threadId);
+    }
+
+    /**
+     * Fetches the recipients of the SMS drafts in the listing at once, as drafts have no address of
+     * their own.
+     */
+    private void prefetchDraftRecipients(
+            List<BluetoothMapMessageListingElement> list,
+            Cursor smsCursor,
+            FilterInfo fi,
+            BluetoothMapAppParams ap) {
+        if (mListingResolver == null || (ap.getParameterMask() & MASK_RECIPIENT_ADDRESSING) == 0) {
+            return;
+        }
+        int threadIdInd = smsCursor.getColumnIndex(Sms.THREAD_ID);
+        int addressInd = smsCursor.getColumnIndex(Sms.ADDRESS);
+        List<Integer> threadIds = new ArrayList<>();
+        for (BluetoothMapMessageListingElement ele : list) {
+            if (!TYPE.SMS_GSM.equals(ele.getType()) && !TYPE.SMS_CDMA.equals(ele.getType())) {
+                continue;
+            }
+            smsCursor.moveToPosition(ele.getCursorIndex());
+            if (smsCursor.getInt(fi.mSmsColType) == Sms.MESSAGE_TYPE_DRAFT
+                    && smsCursor.getString(addressInd) == null
+                    && !smsCursor.isNull(threadIdInd)) {
+                threadIds.add(smsCursor.getInt(threadIdInd));
+            }
+        }
+        mListingResolver.prefetchCanonicalAddresses(threadIds);
+    }
+
     /* TODO: Change to use SmsMmsContacts.getContactNameFromPhone() with proper use of
      *       caching. */
     public static String getContactNameFromPhone(String phone, ContentResolver resolver) {
@@ -1480,13 +1534,13 @@ public class BluetoothMapContent {
     private boolean matchRecipientMms(Cursor c, String recip) {
         boolean res;
         long id = c.getLong(c.getColumnIndex(BaseColumns._ID));
-        String phone = getAddressMms(mResolver, id, MMS_TO);
+        String phone = getMmsAddress(id, MMS_TO);
         if (phone != null && phone.length() > 0) {
             if (phone.matches(recip)) {
                 Log.v(TAG, "matchRecipientMms: match recipient phone = " + phone);
                 res = true;
             } else {
-                String name = getContactNameFromPhone(phone, mResolver);
+                String name = getContactName(phone);
                 if (name != null && name.length() > 0 && name.matches(recip)) {
                     Log.v(TAG, "matchRecipientMms: match recipient name = " + name);
                     res = true;
@@ -1522,7 +1576,7 @@ public class BluetoothMapContent {
                     Log.v(TAG, "matchRecipientSms: match recipient phone = " + phone);
                     res = true;
                 } else {
-                    String name = getContactNameFromPhone(phone, mResolver);
+                    String name = getContactName(phone);
                     if (name != null && name.length() > 0 && name.matches(recip)) {
                         Log.v(TAG, "matchRecipientSms: match recipient name = " + name);
                         res = true;
@@ -1560,13 +1614,13 @@ public class BluetoothMapContent {
     private boolean matchOriginatorMms(Cursor c, String orig) {
         boolean res;
         long id = c.getLong(c.getColumnIndex(BaseColumns._ID));
-        String phone = getAddressMms(mResolver, id, MMS_FROM);
+        String phone = getMmsAddress(id, MMS_FROM);
         if (phone != null && phone.length() > 0) {
             if (phone.matches(orig)) {
                 Log.v(TAG, "matchOriginatorMms: match originator phone = " + phone);
                 res = true;
             } else {
-                String name = getContactNameFromPhone(phone, mResolver);
+                String name = getContactName(phone);
                 if (name != null && name.length() > 0 && name.matches(orig)) {
                     Log.v(TAG, "matchOriginatorMms: match originator name = " + name);
                     res = true;
@@ -1590,7 +1644,7 @@ public class BluetoothMapContent {
                     Log.v(TAG, "matchOriginatorSms: match originator phone = " + phone);
                     res = true;
                 } else {
-                    String name = getContactNameFromPhone(phone, mResolver);
+                    String name = getContactName(phone);
                     if (name != null && name.length() > 0 && name.matches(orig)) {
                         Log.v(TAG, "matchOriginatorSms: match originator name = " + name);
                         res = true;
@@ -2176,6 +2230,7 @@ public class BluetoothMapContent {
         if (ap.getMaxListCount() > 0) {
             limit = " LIMIT " + (ap.getMaxListCount() + ap.getStartOffset());
         }
+        mListingResolver = new SmsMmsListingResolver(mResolver);
         try {
             if (smsSelected(fi, ap) && folderElement.hasSmsMmsContent()) {
                 if (ap.getFilterMessageType()
@@ -2351,11 +2406,13 @@ public class BluetoothMapContent {
                 }
             }
 
-            /* Enable this if post sorting and segmenting needed */
-            bmList.sort();
-            bmList.segment(ap.getMaxListCount(), offsetNum);
+            /* Merge the date ordered results of each message type, up to the requested segment */
+            bmList.sortAndSegment(ap.getMaxListCount(), offsetNum);
             List<BluetoothMapMessageListingElement> list = bmList.getList();
             int listSize = list.size();
+            if (smsCursor != null) {
+                prefetchDraftRecipients(list, smsCursor, fi, ap);
+            }
             Cursor tmpCursor = null;
             for (int x = 0; x < listSize; x++) {
                 BluetoothMapMessageListingElement ele = list.get(x);
@@ -2400,6 +2457,7 @@ public class BluetoothMapContent {
                 }
             }
         } finally {
+            mListingResolver = null;
             if (emailCursor != null) {
                 emailCursor.close();
             }
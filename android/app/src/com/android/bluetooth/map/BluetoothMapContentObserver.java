@@ -80,9 +80,11 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -1500,29 +1502,19 @@ public class BluetoothMapContentObserver {
         HashMap<Long, Msg> msgListSms = new HashMap<Long, Msg>();
         boolean listChanged = false;
 
+        List<Msg> newMsgs = new ArrayList<>();
         Cursor c;
         synchronized (getMsgListSms()) {
-            if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-                c =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverQuery(
-                                        mResolver,
-                                        Sms.CONTENT_URI,
-                                        SMS_PROJECTION_SHORT,
-                                        null,
-                                        null,
-                                        null);
-            } else {
-                c =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverQuery(
-                                        mResolver,
-                                        Sms.CONTENT_URI,
-                                        SMS_PROJECTION_SHORT_EXT,
-                                        null,
-                                        null,
-                                        null);
-            }
+            // Only changes are found with the short projection, see handleNewSms()
+            c =
+                    BluetoothMethodProxy.getInstance()
+                            .contentResolverQuery(
+                                    mResolver,
+                                    Sms.CONTENT_URI,
+                                    SMS_PROJECTION_SHORT,
+                                    null,
+                                    null,
+                                    null);
             try {
                 if (c != null && c.moveToFirst()) {
                     do {
@@ -1549,94 +1541,7 @@ public class BluetoothMapContentObserver {
 
                         if (msg == null) {
                             /* New message */
-                            msg = new Msg(id, type, threadId, read);
-                            msgListSms.put(id, msg);
-                            Event evt;
-                            if (mTransmitEvents
-                                    && // extract contact details only if needed
-                                    mMapEventReportVersion
-                                            > BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-                                long timestamp = c.getLong(c.getColumnIndex(Sms.DATE));
-                                String date = BluetoothMapUtils.getDateTimeString(timestamp);
-                                if (Flags.mapLimitNotification()) {
-                                    if (BluetoothMapUtils.isDateTimeOlderThanDuration(
-                                            timestamp, NEW_MESSAGE_DURATION_FOR_NOTIFICATION)) {
-                                        msgListSms.remove(id);
-                                        continue;
-                                    }
-                                } else {
-                                    if (BluetoothMapUtils.isDateTimeOlderThanOneYear(timestamp)) {
-                                        // Skip sending message events older than one year
-                                        msgListSms.remove(id);
-                                        continue;
-                                    }
-                                }
-                                String subject = c.getString(c.getColumnIndex(Sms.BODY));
-                                if (subject == null) {
-                                    subject = "";
-                                }
-                                String name = "";
-                                String phone = "";
-                                if (type == 1) { // inbox
-                                    phone = c.getString(c.getColumnIndex(Sms.ADDRESS));
-                                    if (phone != null && !phone.isEmpty()) {
-                                        name =
-                                                BluetoothMapContent.getContactNameFromPhone(
-                                                        phone, mResolver);
-                                        if (name == null || name.isEmpty()) {
-                                            name = phone;
-                                        }
-                                    } else {
-                                        name = phone;
-                                    }
-                                } else {
-                                    TelephonyManager tm =
-                                            mContext.getSystemService(TelephonyManager.class);
-                                    if (tm != null) {
-                                        phone = tm.getLine1Number();
-                                        name = phone;
-                                    }
-                                }
-                                String priority = "no"; // no priority for sms
-                                /* Incoming message from the network */
-                                if (mMapEventReportVersion
-                                        == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    getSmsFolderName(type),
-                                                    mSmsType,
-                                                    date,
-                                                    subject,
-                                                    name,
-                                                    priority);
-                                } else {
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    getSmsFolderName(type),
-                                                    mSmsType,
-                                                    date,
-                                                    subject,
-                                                    name,
-                                                    priority,
-                                                    (long) threadId,
-                                                    null);
-                                }
-                            } else {
-                                /* Incoming message from the network */
-                                evt =
-                                        new Event(
-                                                EVENT_TYPE_NEW,
-                                                id,
-                                                getSmsFolderName(type),
-                                                null,
-                                                mSmsType);
-                            }
-                            listChanged = true;
-                            sendEvent(evt);
+                            newMsgs.add(new Msg(id, type, threadId, read));
                         } else {
                             /* Existing message */
                             if (type != msg.type) {
@@ -1718,6 +1623,9 @@ public class BluetoothMapContentObserver {
                     c.close();
                 }
             }
+            if (handleNewSms(msgListSms, newMsgs)) {
+                listChanged = true;
+            }
             String eventType = EVENT_TYPE_DELETE;
             for (Msg msg : getMsgListSms().values()) {
                 // "old_folder" used only for MessageShift event
@@ -1735,35 +1643,147 @@ public class BluetoothMapContentObserver {
         }
     }
 
+    /**
+     * Adds the new SMS messages found by {@link #handleMsgListChangesSms} to {@code msgListSms}
+     * and sends their events. The columns only needed for the events are queried for the new
+     * messages alone, rather than with the short projection used to compare every message.
+     *
+     * @return true if any message was added
+     */
+    private boolean handleNewSms(Map<Long, Msg> msgListSms, List<Msg> newMsgs) {
+        if (newMsgs.isEmpty()) {
+            return false;
+        }
+        if (!mTransmitEvents || mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
+            for (Msg msg : newMsgs) {
+                msgListSms.put(msg.id, msg);
+                /* Incoming message from the network */
+                Event evt =
+                        new Event(
+                                EVENT_TYPE_NEW, msg.id, getSmsFolderName(msg.type), null, mSmsType);
+                sendEvent(evt);
+            }
+            return true;
+        }
+
+        // Extract contact details only if needed
+        Map<Long, Msg> pendingMsgs = getMsgsById(newMsgs);
+        boolean listChanged = false;
+        Cursor c =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mResolver,
+                                Sms.CONTENT_URI,
+                                SMS_PROJECTION_SHORT_EXT,
+                                getNewMsgsSelection(Sms._ID, pendingMsgs.keySet()),
+                                null,
+                                null);
+        try {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    Msg msg = pendingMsgs.remove(c.getLong(c.getColumnIndex(Sms._ID)));
+                    if (msg == null) {
+                        continue;
+                    }
+                    long timestamp = c.getLong(c.getColumnIndex(Sms.DATE));
+                    String date = BluetoothMapUtils.getDateTimeString(timestamp);
+                    if (Flags.mapLimitNotification()) {
+                        if (BluetoothMapUtils.isDateTimeOlderThanDuration(
+                                timestamp, NEW_MESSAGE_DURATION_FOR_NOTIFICATION)) {
+                            continue;
+                        }
+                    } else {
+                        if (BluetoothMapUtils.isDateTimeOlderThanOneYear(timestamp)) {
+                            // Skip sending message events older than one year
+                            continue;
+                        }
+                    }
+                    msgListSms.put(msg.id, msg);
+                    listChanged = true;
+                    String subject = c.getString(c.getColumnIndex(Sms.BODY));
+                    if (subject == null) {
+                        subject = "";
+                    }
+                    String name = "";
+                    String phone = "";
+                    if (msg.type == 1) { // inbox
+                        phone = c.getString(c.getColumnIndex(Sms.ADDRESS));
+                        if (phone != null && !phone.isEmpty()) {
+                            name = BluetoothMapContent.getContactNameFromPhone(phone, mResolver);
+                            if (name == null || name.isEmpty()) {
+                                name = phone;
+                            }
+                        } else {
+                            name = phone;
+                        }
+                    } else {
+                        TelephonyManager tm = mContext.getSystemService(TelephonyManager.class);
+                        if (tm != null) {
+                            phone = tm.getLine1Number();
+                            name = phone;
+                        }
+                    }
+                    String priority = "no"; // no priority for sms
+                    /* Incoming message from the network */
+                    Event evt;
+                    if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        msg.id,
+                                        getSmsFolderName(msg.type),
+                                        mSmsType,
+                                        date,
+                                        subject,
+                                        name,
+                                        priority);
+                    } else {
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        msg.id,
+                                        getSmsFolderName(msg.type),
+                                        mSmsType,
+                                        date,
+                                        subject,
+                                        name,
+                                        priority,
+                                        (long) msg.threadId,
+                                        null);
+                    }
+                    sendEvent(evt);
+                } while (c.moveToNext());
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (!pendingMsgs.isEmpty()) {
+            Log.w(TAG, "handleNewSms, messages removed meanwhile: " + pendingMsgs.keySet());
+        }
+        return listChanged;
+    }
+
     @VisibleForTesting
     void handleMsgListChangesMms() {
         Log.v(TAG, "handleMsgListChangesMms");
 
         HashMap<Long, Msg> msgListMms = new HashMap<Long, Msg>();
         boolean listChanged = false;
+        List<Msg> newMsgs = new ArrayList<>();
         Cursor c;
         synchronized (getMsgListMms()) {
-            if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-                c =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverQuery(
-                                        mResolver,
-                                        Mms.CONTENT_URI,
-                                        MMS_PROJECTION_SHORT,
-                                        null,
-                                        null,
-                                        null);
-            } else {
-                c =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverQuery(
-                                        mResolver,
-                                        Mms.CONTENT_URI,
-                                        MMS_PROJECTION_SHORT_EXT,
-                                        null,
-                                        null,
-                                        null);
-            }
+            // Only changes are found with the short projection, see handleNewMms()
+            c =
+                    BluetoothMethodProxy.getInstance()
+                            .contentResolverQuery(
+                                    mResolver,
+                                    Mms.CONTENT_URI,
+                                    MMS_PROJECTION_SHORT,
+                                    null,
+                                    null,
+                                    null);
 
             try {
                 if (c != null && c.moveToFirst()) {
@@ -1801,102 +1821,7 @@ public class BluetoothMapContentObserver {
                                     && mtype != MESSAGE_TYPE_RETRIEVE_CONF) {
                                 continue;
                             }
-                            msg = new Msg(id, type, threadId, read);
-                            msgListMms.put(id, msg);
-                            Event evt;
-                            if (mTransmitEvents
-                                    && // extract contact details only if needed
-                                    mMapEventReportVersion
-                                            != BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-                                // MMS date field is in seconds
-                                long timestamp =
-                                        TimeUnit.SECONDS.toMillis(
-                                                c.getLong(c.getColumnIndex(Mms.DATE)));
-                                String date = BluetoothMapUtils.getDateTimeString(timestamp);
-                                if (Flags.mapLimitNotification()) {
-                                    if (BluetoothMapUtils.isDateTimeOlderThanDuration(
-                                            timestamp, NEW_MESSAGE_DURATION_FOR_NOTIFICATION)) {
-                                        msgListMms.remove(id);
-                                        continue;
-                                    }
-                                } else {
-                                    if (BluetoothMapUtils.isDateTimeOlderThanOneYear(timestamp)) {
-                                        // Skip sending new message events older than one year
-                                        msgListMms.remove(id);
-                                        continue;
-                                    }
-                                }
-
-                                String subject = c.getString(c.getColumnIndex(Mms.SUBJECT));
-                                if (subject == null || subject.length() == 0) {
-                                    /* Get subject from mms text body parts - if any exists */
-                                    subject = BluetoothMapContent.getTextPartsMms(mResolver, id);
-                                    if (subject == null) {
-                                        subject = "";
-                                    }
-                                }
-                                int tmpPri = c.getInt(c.getColumnIndex(Mms.PRIORITY));
-                                Log.d(
-                                        TAG,
-                                        "TEMP handleMsgListChangesMms, "
-                                                + "newMessage 'read' state: "
-                                                + read
-                                                + "priority: "
-                                                + tmpPri);
-
-                                String address =
-                                        BluetoothMapContent.getAddressMms(
-                                                mResolver, id, BluetoothMapContent.MMS_FROM);
-                                if (address == null) {
-                                    address = "";
-                                }
-
-                                String priority = "no";
-                                if (tmpPri == PduHeaders.PRIORITY_HIGH) {
-                                    priority = "yes";
-                                }
-
-                                /* Incoming message from the network */
-                                if (mMapEventReportVersion
-                                        == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    getMmsFolderName(type),
-                                                    TYPE.MMS,
-                                                    date,
-                                                    subject,
-                                                    address,
-                                                    priority);
-                                } else {
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    getMmsFolderName(type),
-                                                    TYPE.MMS,
-                                                    date,
-                                                    subject,
-                                                    address,
-                                                    priority,
-                                                    (long) threadId,
-                                                    null);
-                                }
-
-                            } else {
-                                /* Incoming message from the network */
-                                evt =
-                                        new Event(
-                                                EVENT_TYPE_NEW,
-                                                id,
-                                                getMmsFolderName(type),
-                                                null,
-                                                TYPE.MMS);
-                            }
-                            listChanged = true;
-
-                            sendEvent(evt);
+                            newMsgs.add(new Msg(id, type, threadId, read));
                         } else {
                             /* Existing message */
                             if (type != msg.type) {
@@ -1989,6 +1914,9 @@ public class BluetoothMapContentObserver {
                     c.close();
                 }
             }
+            if (handleNewMms(msgListMms, newMsgs)) {
+                listChanged = true;
+            }
             for (Msg msg : getMsgListMms().values()) {
                 // "old_folder" used only for MessageShift event
                 Event evt =
@@ -2005,6 +1933,136 @@ public class BluetoothMapContentObserver {
         }
     }
 
+    /**
+     * Adds the new MMS messages found by {@link #handleMsgListChangesMms} to {@code msgListMms}
+     * and sends their events. The columns only needed for the events are queried for the new
+     * messages alone, rather than with the short projection used to compare every message.
+     *
+     * @return true if any message was added
+     */
+    private boolean handleNewMms(Map<Long, Msg> msgListMms, List<Msg> newMsgs) {
+        if (newMsgs.isEmpty()) {
+            return false;
+        }
+        if (!mTransmitEvents || mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
+            for (Msg msg : newMsgs) {
+                msgListMms.put(msg.id, msg);
+                /* Incoming message from the network */
+                Event evt =
+                        new Event(
+                                EVENT_TYPE_NEW, msg.id, getMmsFolderName(msg.type), null, TYPE.MMS);
+                sendEvent(evt);
+            }
+            return true;
+        }
+
+        // Extract contact details only if needed
+        Map<Long, Msg> pendingMsgs = getMsgsById(newMsgs);
+        boolean listChanged = false;
+        Cursor c =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mResolver,
+                                Mms.CONTENT_URI,
+                                MMS_PROJECTION_SHORT_EXT,
+                                getNewMsgsSelection(Mms._ID, pendingMsgs.keySet()),
+                                null,
+                                null);
+        try {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    Msg msg = pendingMsgs.remove(c.getLong(c.getColumnIndex(Mms._ID)));
+                    if (msg == null) {
+                        continue;
+                    }
+                    // MMS date field is in seconds
+                    long timestamp =
+                            TimeUnit.SECONDS.toMillis(c.getLong(c.getColumnIndex(Mms.DATE)));
+                    String date = BluetoothMapUtils.getDateTimeString(timestamp);
+                    if (Flags.mapLimitNotification()) {
+                        if (BluetoothMapUtils.isDateTimeOlderThanDuration(
+                                timestamp, NEW_MESSAGE_DURATION_FOR_NOTIFICATION)) {
+                            continue;
+                        }
+                    } else {
+                        if (BluetoothMapUtils.isDateTimeOlderThanOneYear(timestamp)) {
+                            // Skip sending new message events older than one year
+                            continue;
+                        }
+                    }
+                    msgListMms.put(msg.id, msg);
+                    listChanged = true;
+
+                    String subject = c.getString(c.getColumnIndex(Mms.SUBJECT));
+                    if (subject == null || subject.length() == 0) {
+                        /* Get subject from mms text body parts - if any exists */
+                        subject = BluetoothMapContent.getTextPartsMms(mResolver, msg.id);
+                        if (subject == null) {
+                            subject = "";
+                        }
+                    }
+                    int tmpPri = c.getInt(c.getColumnIndex(Mms.PRIORITY));
+                    Log.d(
+                            TAG,
+                            "TEMP handleMsgListChangesMms, "
+                                    + "newMessage 'read' state: "
+                                    + msg.flagRead
+                                    + "priority: "
+                                    + tmpPri);
+
+                    String address =
+                            BluetoothMapContent.getAddressMms(
+                                    mResolver, msg.id, BluetoothMapContent.MMS_FROM);
+                    if (address == null) {
+                        address = "";
+                    }
+
+                    String priority = "no";
+                    if (tmpPri == PduHeaders.PRIORITY_HIGH) {
+                        priority = "yes";
+                    }
+
+                    /* Incoming message from the network */
+                    Event evt;
+                    if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        msg.id,
+                                        getMmsFolderName(msg.type),
+                                        TYPE.MMS,
+                                        date,
+                                        subject,
+                                        address,
+                                        priority);
+                    } else {
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        msg.id,
+                                        getMmsFolderName(msg.type),
+                                        TYPE.MMS,
+                                        date,
+                                        subject,
+                                        address,
+                                        priority,
+                                        (long) msg.threadId,
+                                        null);
+                    }
+                    sendEvent(evt);
+                } while (c.moveToNext());
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (!pendingMsgs.isEmpty()) {
+            Log.w(TAG, "handleNewMms, messages removed meanwhile: " + pendingMsgs.keySet());
+        }
+        return listChanged;
+    }
+
     @VisibleForTesting
     void handleMsgListChangesMsg(Uri uri) throws RemoteException {
         Log.v(TAG, "handleMsgListChangesMsg uri: " + uri.toString());
@@ -2012,15 +2070,10 @@ public class BluetoothMapContentObserver {
         // TODO: Change observer to handle accountId and message ID if present
 
         HashMap<Long, Msg> msgList = new HashMap<Long, Msg>();
-        Cursor c;
+        Map<Long, String> newMsgFolders = new LinkedHashMap<>();
         boolean listChanged = false;
-        if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-            c = mProviderClient.query(mMessageUri, MSG_PROJECTION_SHORT, null, null, null);
-        } else if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
-            c = mProviderClient.query(mMessageUri, MSG_PROJECTION_SHORT_EXT, null, null, null);
-        } else {
-            c = mProviderClient.query(mMessageUri, MSG_PROJECTION_SHORT_EXT2, null, null, null);
-        }
+        // Only changes are found with the short projection, see sendNewMsgEvents()
+        Cursor c = mProviderClient.query(mMessageUri, MSG_PROJECTION_SHORT, null, null, null);
         synchronized (getMsgListMsg()) {
             try {
                 if (c != null && c.moveToFirst()) {
@@ -2052,73 +2105,7 @@ public class BluetoothMapContentObserver {
                             /* New message - created with message unread */
                             msg = new Msg(id, folderId, 0, readFlag);
                             msgList.put(id, msg);
-                            Event evt;
-                            /* Incoming message from the network */
-                            if (mMapEventReportVersion != BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
-                                String date =
-                                        BluetoothMapUtils.getDateTimeString(
-                                                c.getLong(
-                                                        c.getColumnIndex(
-                                                                BluetoothMapContract.MessageColumns
-                                                                        .DATE)));
-                                String subject =
-                                        c.getString(
-                                                c.getColumnIndex(
-                                                        BluetoothMapContract.MessageColumns
-                                                                .SUBJECT));
-                                String address =
-                                        c.getString(
-                                                c.getColumnIndex(
-                                                        BluetoothMapContract.MessageColumns
-                                                                .FROM_LIST));
-                                String priority = "no";
-                                if (c.getInt(
-                                                c.getColumnIndex(
-                                                        BluetoothMapContract.MessageColumns
-                                                                .FLAG_HIGH_PRIORITY))
-                                        == 1) {
-                                    priority = "yes";
-                                }
-                                if (mMapEventReportVersion
-                                        == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    newFolder,
-                                                    mAccount.getType(),
-                                                    date,
-                                                    subject,
-                                                    address,
-                                                    priority);
-                                } else {
-                                    long threadId =
-                                            c.getLong(
-                                                    c.getColumnIndex(
-                                                            BluetoothMapContract.MessageColumns
-                                                                    .THREAD_ID));
-                                    String threadName =
-                                            c.getString(
-                                                    c.getColumnIndex(
-                                                            BluetoothMapContract.MessageColumns
-                                                                    .THREAD_NAME));
-                                    evt =
-                                            new Event(
-                                                    EVENT_TYPE_NEW,
-                                                    id,
-                                                    newFolder,
-                                                    mAccount.getType(),
-                                                    date,
-                                                    subject,
-                                                    address,
-                                                    priority,
-                                                    threadId,
-                                                    threadName);
-                                }
-                            } else {
-                                evt = new Event(EVENT_TYPE_NEW, id, newFolder, null, TYPE.EMAIL);
-                            }
-                            sendEvent(evt);
+                            newMsgFolders.put(id, newFolder);
                         } else {
                             /* Existing message */
                             if (folderId != msg.folderId && msg.folderId != -1) {
@@ -2220,6 +2207,7 @@ public class BluetoothMapContentObserver {
                     c.close();
                 }
             }
+            sendNewMsgEvents(newMsgFolders);
             // For all messages no longer in the database send a delete notification
             for (Msg msg : getMsgListMsg().values()) {
                 BluetoothMapFolderElement oldFolderElement = mFolders.getFolderById(msg.folderId);
@@ -2265,6 +2253,131 @@ public class BluetoothMapContentObserver {
         }
     }
 
+    /**
+     * Sends the events of the new messages found by {@link #handleMsgListChangesMsg}. The columns
+     * only needed for the events are queried for the new messages alone, rather than with the
+     * short projection used to compare every message.
+     */
+    private void sendNewMsgEvents(Map<Long, String> newMsgFolders) throws RemoteException {
+        if (newMsgFolders.isEmpty()) {
+            return;
+        }
+        if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V10) {
+            for (Map.Entry<Long, String> newMsg : newMsgFolders.entrySet()) {
+                /* Incoming message from the network */
+                Event evt =
+                        new Event(
+                                EVENT_TYPE_NEW,
+                                newMsg.getKey(),
+                                newMsg.getValue(),
+                                null,
+                                TYPE.EMAIL);
+                sendEvent(evt);
+            }
+            return;
+        }
+
+        Map<Long, String> pendingMsgs = new HashMap<>(newMsgFolders);
+        String[] projection =
+                mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V11
+                        ? MSG_PROJECTION_SHORT_EXT
+                        : MSG_PROJECTION_SHORT_EXT2;
+        Cursor c =
+                mProviderClient.query(
+                        mMessageUri,
+                        projection,
+                        getNewMsgsSelection(
+                                BluetoothMapContract.MessageColumns._ID, pendingMsgs.keySet()),
+                        null,
+                        null);
+        try {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    long id = c.getLong(c.getColumnIndex(BluetoothMapContract.MessageColumns._ID));
+                    String newFolder = pendingMsgs.remove(id);
+                    if (newFolder == null) {
+                        continue;
+                    }
+                    String date =
+                            BluetoothMapUtils.getDateTimeString(
+                                    c.getLong(
+                                            c.getColumnIndex(
+                                                    BluetoothMapContract.MessageColumns.DATE)));
+                    String subject =
+                            c.getString(
+                                    c.getColumnIndex(BluetoothMapContract.MessageColumns.SUBJECT));
+                    String address =
+                            c.getString(
+                                    c.getColumnIndex(
+                                            BluetoothMapContract.MessageColumns.FROM_LIST));
+                    String priority = "no";
+                    if (c.getInt(
+                                    c.getColumnIndex(
+                                            BluetoothMapContract.MessageColumns.FLAG_HIGH_PRIORITY))
+                            == 1) {
+                        priority = "yes";
+                    }
+                    /* Incoming message from the network */
+                    Event evt;
+                    if (mMapEventReportVersion == BluetoothMapUtils.MAP_EVENT_REPORT_V11) {
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        id,
+                                        newFolder,
+                                        mAccount.getType(),
+                                        date,
+                                        subject,
+                                        address,
+                                        priority);
+                    } else {
+                        long threadId =
+                                c.getLong(
+                                        c.getColumnIndex(
+                                                BluetoothMapContract.MessageColumns.THREAD_ID));
+                        String threadName =
+                                c.getString(
+                                        c.getColumnIndex(
+                                                BluetoothMapContract.MessageColumns.THREAD_NAME));
+                        evt =
+                                new Event(
+                                        EVENT_TYPE_NEW,
+                                        id,
+                                        newFolder,
+                                        mAccount.getType(),
+                                        date,
+                                        subject,
+                                        address,
+                                        priority,
+                                        threadId,
+                                        threadName);
+                    }
+                    sendEvent(evt);
+                } while (c.moveToNext());
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (!pendingMsgs.isEmpty()) {
+            Log.w(TAG, "sendNewMsgEvents, messages removed meanwhile: " + pendingMsgs.keySet());
+        }
+    }
+
+    /**
+     * Returns the selection of the rows from the oldest of the given new message ids on. New
+     * messages are normally the latest rows, so this selects few rows besides them.
+     */
+    @VisibleForTesting
+    static String getNewMsgsSelection(String idColumn, Collection<Long> ids) {
+        long watermark = Long.MAX_VALUE;
+        for (long id : ids) {
+            watermark = Math.min(watermark, id);
+        }
+        return idColumn + " >= " + watermark;
+    }
+
     private void handleMsgListChanges(Uri uri) {
         if (uri.getAuthority().equals(mAuthority)) {
             try {
@@ -27,11 +27,13 @@ import com.android.bluetooth.content_profiles.ContentProfileErrorReportUtils;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
 
 // Next tag value for ContentProfileErrorReportUtils.report(): 3
 public class BluetoothMapMessageListing {
@@ -93,37 +95,10 @@ public class BluetoothMapMessageListing {
     // TODO: Remove includeThreadId when MAP-IM is adopted
     public byte[] encode(boolean includeThreadId, String version) {
         StringWriter sw = new StringWriter();
-        boolean isBenzCarkit;
-
-        if (Utils.isInstrumentationTestMode()) {
-            isBenzCarkit = false;
-        } else {
-            isBenzCarkit =
-                    DeviceWorkArounds.addressStartsWith(
-                            BluetoothMapService.getBluetoothMapService()
-                                    .getRemoteDevice()
-                                    .getAddress(),
-                            DeviceWorkArounds.MERCEDES_BENZ_CARKIT);
-        }
         try {
             XmlSerializer xmlMsgElement = Xml.newSerializer();
             xmlMsgElement.setOutput(sw);
-            if (isBenzCarkit) {
-                Log.d(TAG, "java_interop: Remote is Mercedes Benz, " + "using Xml Workaround.");
-                xmlMsgElement.text("\n");
-            } else {
-                xmlMsgElement.startDocument("UTF-8", true);
-                xmlMsgElement.setFeature(
-                        "http://xmlpull.org/v1/doc/features.html#indent-output", true);
-            }
-            xmlMsgElement.startTag(null, "MAP-msg-listing");
-            xmlMsgElement.attribute(null, "version", version);
-            // Do the XML encoding of list
-            for (BluetoothMapMessageListingElement element : mList) {
-                element.encode(xmlMsgElement, includeThreadId); // Append the list element
-            }
-            xmlMsgElement.endTag(null, "MAP-msg-listing");
-            xmlMsgElement.endDocument();
+            encode(xmlMsgElement, includeThreadId, version);
         } catch (IllegalArgumentException e) {
             ContentProfileErrorReportUtils.report(
                     BluetoothProfile.MAP,
@@ -147,10 +122,7 @@ public class BluetoothMapMessageListing {
             Log.w(TAG, e);
         }
         /* Fix IOT issue to replace '&amp;' by '&', &lt; by < and '&gt; by '>' in MessageListing */
-        if (!Utils.isInstrumentationTestMode()
-                && DeviceWorkArounds.addressStartsWith(
-                        BluetoothMapService.getBluetoothMapService().getRemoteDevice().getAddress(),
-                        DeviceWorkArounds.BREZZA_ZDI_CARKIT)) {
+        if (isRemoteCarkit(DeviceWorkArounds.BREZZA_ZDI_CARKIT)) {
             return sw.toString()
                     .replaceAll("&amp;", "&")
                     .replaceAll("&lt;", "<")
@@ -160,10 +132,115 @@ public class BluetoothMapMessageListing {
         return sw.toString().getBytes(StandardCharsets.UTF_8);
     }
 
+    /**
+     * Encode the list of BluetoothMapMessageListingElement(s) as UTF-8 formatted XML directly into
+     * a stream, without building the whole document in memory first.
+     *
+     * @param out the stream to write to. It is flushed, but not closed.
+     * @param version the version as a string, see {@link #encode(boolean, String)}.
+     * @throws IOException if writing to the stream fails, or the list cannot be encoded.
+     */
+    // TODO: Remove includeThreadId when MAP-IM is adopted
+    public void encode(OutputStream out, boolean includeThreadId, String version)
+            throws IOException {
+        if (isRemoteCarkit(DeviceWorkArounds.BREZZA_ZDI_CARKIT)) {
+            // The IOT fix needs the whole document
+            out.write(encode(includeThreadId, version));
+            out.flush();
+            return;
+        }
+        try {
+            XmlSerializer xmlMsgElement = Xml.newSerializer();
+            xmlMsgElement.setOutput(out, "UTF-8");
+            encode(xmlMsgElement, includeThreadId, version);
+            xmlMsgElement.flush();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("Unable to encode message listing", e);
+        }
+    }
+
+    private void encode(XmlSerializer xmlMsgElement, boolean includeThreadId, String version)
+            throws IOException {
+        if (isRemoteCarkit(DeviceWorkArounds.MERCEDES_BENZ_CARKIT)) {
+            Log.d(TAG, "java_interop: Remote is Mercedes Benz, " + "using Xml Workaround.");
+            xmlMsgElement.text("\n");
+        } else {
+            xmlMsgElement.startDocument("UTF-8", true);
+            xmlMsgElement.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        }
+        xmlMsgElement.startTag(null, "MAP-msg-listing");
+        xmlMsgElement.attribute(null, "version", version);
+        // Do the XML encoding of list
+        for (BluetoothMapMessageListingElement element : mList) {
+            element.encode(xmlMsgElement, includeThreadId); // Append the list element
+        }
+        xmlMsgElement.endTag(null, "MAP-msg-listing");
+        xmlMsgElement.endDocument();
+    }
+
+    private static boolean isRemoteCarkit(String addressPrefix) {
+        if (Utils.isInstrumentationTestMode()) {
+            return false;
+        }
+        return DeviceWorkArounds.addressStartsWith(
+                BluetoothMapService.getBluetoothMapService().getRemoteDevice().getAddress(),
+                addressPrefix);
+    }
+
     public void sort() {
         Collections.sort(mList);
     }
 
+    /**
+     * Equivalent to {@link #sort()} followed by {@link #segment(int, int)}, without sorting the
+     * whole list.
+     *
+     * <p>The elements of each message type are added in date order, as returned by their query.
+     * These already sorted runs are merged, and the merge stops at the end of the segment, so only
+     * the elements before it are ordered and only the segment itself is kept.
+     */
+    public void sortAndSegment(int count, int offset) {
+        int size = mList.size();
+        int end;
+        count = Math.min(count, size - offset);
+        if (count > 0) {
+            end = offset + count;
+        } else if (offset > size) {
+            mList = new ArrayList<BluetoothMapMessageListingElement>();
+            Log.d(TAG, "offset greater than list size. Returning empty list");
+            return;
+        } else {
+            end = size;
+        }
+
+        // Each run is {next index, end index}. Equal elements keep their order, as with sort().
+        PriorityQueue<int[]> runs =
+                new PriorityQueue<>(
+                        (a, b) -> {
+                            int result = mList.get(a[0]).compareTo(mList.get(b[0]));
+                            return result != 0 ? result : Integer.compare(a[0], b[0]);
+                        });
+        int runStart = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || mList.get(i).compareTo(mList.get(i - 1)) < 0) {
+                runs.add(new int[] {runStart, i});
+                runStart = i;
+            }
+        }
+
+        List<BluetoothMapMessageListingElement> segment = new ArrayList<>(end - offset);
+        for (int i = 0; i < end; i++) {
+            int[] run = runs.poll();
+            if (i >= offset) {
+                segment.add(mList.get(run[0]));
+            }
+            if (++run[0] < run[1]) {
+                runs.add(run);
+            }
+        }
+        mList = segment;
+    }
+
     public void segment(int count, int offset) {
         count = Math.min(count, mList.size() - offset);
         if (count > 0) {
@@ -43,6 +43,8 @@ import com.android.obex.Operation;
 import com.android.obex.ResponseCodes;
 import com.android.obex.ServerRequestHandler;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -1295,12 +1297,12 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
     private int sendMessageListingRsp(
             Operation op, BluetoothMapAppParams appParams, String folderName) {
         OutputStream outStream = null;
-        byte[] outBytes = null;
-        int maxChunkSize, bytesToWrite, bytesWritten = 0, listSize;
+        BluetoothMapMessageListing outList = null;
+        String version = null;
+        int maxChunkSize, listSize;
         boolean hasUnread = false;
         HeaderSet replyHeaders = new HeaderSet();
         BluetoothMapAppParams outAppParams = new BluetoothMapAppParams();
-        BluetoothMapMessageListing outList;
         if (appParams == null) {
             appParams = new BluetoothMapAppParams();
             appParams.setMaxListCount(1024);
@@ -1361,7 +1363,6 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
                 outList = mOutContent.msgListing(folderToList, appParams);
                 // Generate the byte stream
                 outAppParams.setMessageListingSize(outList.getCount());
-                String version;
                 if (0
                         < (mRemoteFeatureMask
                                 & BluetoothMapUtils.MAP_FEATURE_MESSAGE_LISTING_FORMAT_V11_BIT)) {
@@ -1370,8 +1371,7 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
                     version = BluetoothMapUtils.MAP_V10_STR;
                 }
                 /* This will only set the version, the bit must also be checked before adding any
-                 * 1.1 bits to the listing. */
-                outBytes = outList.encode(mThreadIdSupport, version);
+                 * 1.1 bits to the listing. The listing is encoded into the body stream below. */
                 hasUnread = outList.hasUnread();
             } else {
                 listSize = mOutContent.msgListingSize(folderToList, appParams);
@@ -1457,13 +1457,15 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
         }
 
         maxChunkSize = op.getMaxPacketSize(); // This must be called after setting the headers.
-        if (outBytes != null) {
+        if (outList != null) {
+            boolean completed = false;
             try {
-                while (bytesWritten < outBytes.length && !mIsAborted) {
-                    bytesToWrite = Math.min(maxChunkSize, outBytes.length - bytesWritten);
-                    outStream.write(outBytes, bytesWritten, bytesToWrite);
-                    bytesWritten += bytesToWrite;
-                }
+                // Encode straight into the body, in chunks of the OBEX packet size
+                OutputStream bodyStream =
+                        new BufferedOutputStream(
+                                new AbortableOutputStream(outStream), maxChunkSize);
+                outList.encode(bodyStream, mThreadIdSupport, version);
+                completed = true;
             } catch (IOException e) {
                 ContentProfileErrorReportUtils.report(
                         BluetoothProfile.MAP,
@@ -1487,10 +1489,10 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
                     }
                 }
             }
-            if (bytesWritten != outBytes.length && !mIsAborted) {
+            if (!completed && !mIsAborted) {
                 Log.w(
                         TAG,
-                        "sendMessageListingRsp: bytesWritten != outBytes.length"
+                        "sendMessageListingRsp: listing not completely written"
                                 + " - sending OBEX_HTTP_BAD_REQUEST");
                 ContentProfileErrorReportUtils.report(
                         BluetoothProfile.MAP,
@@ -2242,4 +2244,29 @@ public class BluetoothMapObexServer extends ServerRequestHandler {
     private static void logHeader(HeaderSet hs) {
         Log.v(TAG, hs.dump());
     }
+
+    /** Stops writing a response body once the operation has been aborted by the peer. */
+    private class AbortableOutputStream extends FilterOutputStream {
+        AbortableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkNotAborted();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkNotAborted();
+            out.write(b, off, len);
+        }
+
+        private void checkNotAborted() throws IOException {
+            if (mIsAborted) {
+                throw new IOException("Operation aborted");
+            }
+        }
+    }
 }
@@ -34,6 +34,8 @@ import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -45,10 +47,12 @@ public class SmsMmsContacts {
 
     private static final String TAG = "SmsMmsContacts";
 
+    @VisibleForTesting static final int MAX_CACHED_NAMES = 256;
+
     private HashMap<Long, String> mPhoneNumbers = null;
 
     @VisibleForTesting
-    final HashMap<String, MapContact> mNames = new HashMap<String, MapContact>(10);
+    final HashMap<String, MapContact> mNames = createLruCache(MAX_CACHED_NAMES);
 
     private static final Uri ADDRESS_URI =
             MmsSms.CONTENT_URI.buildUpon().appendPath("canonical-addresses").build();
@@ -81,11 +85,12 @@ public class SmsMmsContacts {
      * @return the phone number of the contact - or null if id does not exist.
      */
     public String getPhoneNumber(ContentResolver resolver, long id) {
-        String number;
-        if (mPhoneNumbers != null && (number = mPhoneNumbers.get(id)) != null) {
-            return number;
+        if (mPhoneNumbers == null) {
+            fillPhoneCache(resolver);
+        } else if (!mPhoneNumbers.containsKey(id)) {
+            // Only look up the missing id, rather than refilling the whole cache
+            mPhoneNumbers.put(id, getPhoneNumberUncached(resolver, id));
         }
-        fillPhoneCache(resolver);
         return mPhoneNumbers.get(id);
     }
 
@@ -115,6 +120,19 @@ public class SmsMmsContacts {
         return null;
     }
 
+    /**
+     * Creates a map that keeps at most {@code maxSize} entries, evicting the least recently used
+     * one first.
+     */
+    private static <K, V> LinkedHashMap<K, V> createLruCache(int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, /* accessOrder= */ true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
     /** Clears the local cache. Call after a listing is complete, to avoid using invalid data. */
     public void clearCache() {
         if (mPhoneNumbers != null) {
@@ -214,10 +232,16 @@ public class SmsMmsContacts {
             selectionArgs = new String[] {"%" + contactNameFilter.replace("*", "%") + "%"};
         }
 
+        // Sorted as BluetoothMapContent#getContactNameFromPhone, for phones of several contacts
         Cursor c =
                 BluetoothMethodProxy.getInstance()
                         .contentResolverQuery(
-                                resolver, uri, CONTACT_PROJECTION, selection, selectionArgs, null);
+                                resolver,
+                                uri,
+                                CONTACT_PROJECTION,
+                                selection,
+                                selectionArgs,
+                                Contacts.DISPLAY_NAME + " ASC");
         try {
             if (c != null && c.getCount() >= 1) {
                 c.moveToFirst();
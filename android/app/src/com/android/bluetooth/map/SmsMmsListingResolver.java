@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.map;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony.Threads;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the addresses and contact names of the SMS and MMS messages of a single listing.
+ *
+ * <p>Building a listing looks up the same message addresses and phone numbers several times, for
+ * filtering, for the addressing and for the names. Results are kept until the listing is complete,
+ * contact names in the bounded cache of {@link SmsMmsContacts}, and the recipients of draft threads
+ * are fetched for all threads at once.
+ */
+class SmsMmsListingResolver {
+    private static final String TAG = "SmsMmsListingResolver";
+
+    @VisibleForTesting
+    static final String[] THREAD_RECIPIENTS_PROJECTION = {Threads._ID, Threads.RECIPIENT_IDS};
+
+    private final ContentResolver mResolver;
+    private final SmsMmsContacts mContacts = new SmsMmsContacts();
+
+    private final Map<Long, String> mMmsFromAddresses = new HashMap<>();
+    private final Map<Long, String> mMmsToAddresses = new HashMap<>();
+    private final Map<Integer, String> mThreadAddresses = new HashMap<>();
+
+    SmsMmsListingResolver(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /** See {@link BluetoothMapContent#getContactNameFromPhone}. */
+    String getContactName(String phone) {
+        if (TextUtils.isEmpty(phone)) {
+            return null;
+        }
+        MapContact contact = mContacts.getContactNameFromPhone(phone, mResolver);
+        return contact != null ? contact.getName() : null;
+    }
+
+    /** See {@link BluetoothMapContent#getAddressMms}. */
+    String getMmsAddress(long id, int type) {
+        Map<Long, String> addresses;
+        if (type == BluetoothMapContent.MMS_FROM) {
+            addresses = mMmsFromAddresses;
+        } else if (type == BluetoothMapContent.MMS_TO) {
+            addresses = mMmsToAddresses;
+        } else {
+            return BluetoothMapContent.getAddressMms(mResolver, id, type);
+        }
+        if (addresses.containsKey(id)) {
+            return addresses.get(id);
+        }
+        String address = BluetoothMapContent.getAddressMms(mResolver, id, type);
+        addresses.put(id, address);
+        return address;
+    }
+
+    /** See {@link BluetoothMapContent#getCanonicalAddressSms}. */
+    String getCanonicalAddress(int threadId) {
+        String address = mThreadAddresses.get(threadId);
+        if (address == null) {
+            address = BluetoothMapContent.getCanonicalAddressSms(mResolver, threadId);
+            mThreadAddresses.put(threadId, address);
+        }
+        return address;
+    }
+
+    /**
+     * Fetches the recipient addresses of the given threads with a single query on the threads and
+     * a single query on the canonical addresses.
+     */
+    void prefetchCanonicalAddresses(Collection<Integer> threadIds) {
+        String ids =
+                threadIds.stream()
+                        .filter(id -> !mThreadAddresses.containsKey(id))
+                        .distinct()
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(","));
+        if (ids.isEmpty()) {
+            return;
+        }
+        Uri threadsUri =
+                Threads.CONTENT_URI.buildUpon().appendQueryParameter("simple", "true").build();
+        Cursor c =
+                BluetoothMethodProxy.getInstance()
+                        .contentResolverQuery(
+                                mResolver,
+                                threadsUri,
+                                THREAD_RECIPIENTS_PROJECTION,
+                                Threads._ID + " IN (" + ids + ")",
+                                null,
+                                null);
+        if (c == null) {
+            Log.w(TAG, "prefetchCanonicalAddresses: query failed");
+            return;
+        }
+        try {
+            while (c.moveToNext()) {
+                int threadId = c.getInt(0);
+                String recipientIds = c.getString(1);
+                StringBuilder recipientAddress = new StringBuilder();
+                if (recipientIds != null) {
+                    for (String recipientId : recipientIds.split(" ")) {
+                        String address = getPhoneNumber(recipientId);
+                        if (address == null) {
+                            continue;
+                        }
+                        // Multiple recipients are separated by ";", as for a single thread.
+                        if (recipientAddress.length() != 0) {
+                            recipientAddress.append(";");
+                        }
+                        recipientAddress.append(address);
+                    }
+                }
+                mThreadAddresses.put(threadId, recipientAddress.toString());
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private String getPhoneNumber(String recipientId) {
+        try {
+            return mContacts.getPhoneNumber(mResolver, Long.parseLong(recipientId));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid recipient id: " + recipientId);
+            return null;
+        }
+    }
+}
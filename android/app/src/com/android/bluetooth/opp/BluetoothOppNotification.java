@@ -318,7 +318,9 @@ class BluetoothOppNotification {
             int dir = cursor.getInt(directionIndex);
             int id = cursor.getInt(idIndex);
             long total = cursor.getLong(totalBytesIndex);
-            long current = cursor.getLong(currentBytesIndex);
+            long current =
+                    BluetoothOppTransferProgress.getCurrentBytes(
+                            id, cursor.getLong(currentBytesIndex));
             int confirmation = cursor.getInt(confirmIndex);
 
             String destination = cursor.getString(destinationIndex);
@@ -58,7 +58,6 @@ import com.android.obex.ResponseCodes;
 
 import com.google.common.annotations.VisibleForTesting;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -400,6 +399,8 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
             ClientOperation putOperation = null;
             OutputStream outputStream = null;
             InputStream inputStream = null;
+            BluetoothOppPipelinedInputStream fileStream = null;
+            BluetoothOppTransferProgress progress = null;
             try {
                 synchronized (this) {
                     mWaitingForRemote = true;
@@ -473,18 +474,19 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
 
                 if (!error) {
                     int readLength = 0;
-                    long percent = 0;
-                    long prevPercent = 0;
                     boolean okToProceed = false;
                     long timestamp = 0;
                     long currentTime = 0;
-                    long prevTimestamp = SystemClock.elapsedRealtime();
+                    progress =
+                            new BluetoothOppTransferProgress(
+                                    mContext1, mInfo.mId, fileInfo.mLength);
                     int outputBufferSize = putOperation.getMaxPacketSize();
                     byte[] buffer = new byte[outputBufferSize];
-                    BufferedInputStream a = new BufferedInputStream(fileInfo.mInputStream, 0x4000);
+                    // Read the file ahead, so storage latency does not delay the OBEX packets
+                    fileStream = new BluetoothOppPipelinedInputStream(fileInfo.mInputStream);
 
                     if (!mInterrupted && (position != fileInfo.mLength)) {
-                        readLength = readFully(a, buffer, outputBufferSize);
+                        readLength = readFully(fileStream, buffer, outputBufferSize);
 
                         mCallbackHandler.sendMessageDelayed(
                                 mCallbackHandler.obtainMessage(
@@ -519,11 +521,7 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
                                 || responseCode == ResponseCodes.OBEX_HTTP_OK) {
                             Log.v(TAG, "Remote accept");
                             okToProceed = true;
-                            updateValues = new ContentValues();
-                            updateValues.put(BluetoothShare.CURRENT_BYTES, position);
-                            mContext1
-                                    .getContentResolver()
-                                    .update(contentUri, updateValues, null, null);
+                            progress.persist(position);
                             mNumFilesAttemptedToSend++;
                         } else {
                             Log.i(TAG, "Remote reject, Response code is " + responseCode);
@@ -533,7 +531,7 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
                     while (!mInterrupted && okToProceed && (position < fileInfo.mLength)) {
                         timestamp = SystemClock.elapsedRealtime();
 
-                        readLength = a.read(buffer, 0, outputBufferSize);
+                        readLength = fileStream.read(buffer, 0, outputBufferSize);
                         outputStream.write(buffer, 0, readLength);
 
                         /* check remote abort */
@@ -555,19 +553,9 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
                                             + " bytes took "
                                             + (currentTime - timestamp)
                                             + " ms");
-                            // Update the Progress Bar only if there is change in percentage
-                            // or once per a period to notify NFC of this transfer is still alive
-                            percent = position * 100 / fileInfo.mLength;
-                            if (percent > prevPercent
-                                    || currentTime - prevTimestamp > Constants.NFC_ALIVE_CHECK_MS) {
-                                updateValues = new ContentValues();
-                                updateValues.put(BluetoothShare.CURRENT_BYTES, position);
-                                mContext1
-                                        .getContentResolver()
-                                        .update(contentUri, updateValues, null, null);
-                                prevPercent = percent;
-                                prevTimestamp = currentTime;
-                            }
+                            // The progress is only written to the provider periodically,
+                            // which also notifies NFC that this transfer is still alive
+                            progress.update(position);
                         }
                     }
 
@@ -641,7 +629,14 @@ public class BluetoothOppObexClientSession implements BluetoothOppObexSession {
                     Log.e(TAG, "Error when closing output stream after send");
                 }
 
-                // Close InputStream and remove SendFileInfo from map
+                // Persist the final progress, also when the transfer failed
+                if (progress != null) {
+                    progress.finish(position);
+                }
+                // Stop reading ahead, then close InputStream and remove SendFileInfo from map
+                if (fileStream != null) {
+                    fileStream.close();
+                }
                 BluetoothOppUtility.closeSendFileInfo(mInfo.mUri);
                 try {
                     if (!error) {
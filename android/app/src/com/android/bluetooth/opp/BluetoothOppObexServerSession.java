@@ -499,15 +499,19 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
         }
 
         long position = 0;
-        long percent;
-        long prevPercent = 0;
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(mContext, mInfo.mId, fileInfo.mLength);
 
         if (!error) {
             try {
+                // Write the file from a separate thread, so storage latency does not delay
+                // the OBEX packets
                 os =
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverOpenOutputStream(
-                                        mContext.getContentResolver(), fileInfo.mInsertUri);
+                        new BluetoothOppPipelinedOutputStream(
+                                BluetoothMethodProxy.getInstance()
+                                        .contentResolverOpenOutputStream(
+                                                mContext.getContentResolver(),
+                                                fileInfo.mInsertUri));
             } catch (FileNotFoundException e) {
                 ContentProfileErrorReportUtils.report(
                         BluetoothProfile.OPP,
@@ -525,7 +529,6 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
             int readLength;
             long timestamp = 0;
             long currentTime;
-            long prevTimestamp = SystemClock.elapsedRealtime();
             try {
                 while ((!mInterrupted) && (position != fileInfo.mLength)) {
 
@@ -540,7 +543,6 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
 
                     os.write(b, 0, readLength);
                     position += readLength;
-                    percent = position * 100 / fileInfo.mLength;
                     currentTime = SystemClock.elapsedRealtime();
 
                     Log.v(
@@ -553,23 +555,12 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
                                     + (currentTime - timestamp)
                                     + " ms");
 
-                    // Update the Progress Bar only if there is change in percentage
-                    // or once per a period to notify NFC of this transfer is still alive
-                    if (percent > prevPercent
-                            || currentTime - prevTimestamp > Constants.NFC_ALIVE_CHECK_MS) {
-                        ContentValues updateValues = new ContentValues();
-                        updateValues.put(BluetoothShare.CURRENT_BYTES, position);
-                        BluetoothMethodProxy.getInstance()
-                                .contentResolverUpdate(
-                                        mContext.getContentResolver(),
-                                        contentUri,
-                                        updateValues,
-                                        null,
-                                        null);
-                        prevPercent = percent;
-                        prevTimestamp = currentTime;
-                    }
+                    // The progress is only written to the provider periodically, which also
+                    // notifies NFC that this transfer is still alive
+                    progress.update(position);
                 }
+                // Report the errors of the pending writes before the transfer is completed
+                os.flush();
             } catch (IOException e1) {
                 ContentProfileErrorReportUtils.report(
                         BluetoothProfile.OPP,
@@ -585,6 +576,7 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
                 }
                 error = true;
             }
+            progress.finish(position);
         }
 
         if (mInterrupted) {
@@ -604,7 +596,7 @@ public class BluetoothOppObexServerSession extends ServerRequestHandler
 
         if (os != null) {
             try {
-                os.flush();
+                // Also stops the writer thread and closes the file after a write error.
                 os.close();
             } catch (IOException e) {
                 ContentProfileErrorReportUtils.report(
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads ahead from another stream on a separate thread.
+ *
+ * <p>The reader thread fills one of two large buffers while the caller consumes the other one, so
+ * the caller only blocks when it gets ahead of the source stream. Closing this stream stops the
+ * reader thread but does not close the source stream, which stays owned by the caller.
+ */
+class BluetoothOppPipelinedInputStream extends InputStream {
+    private static final String TAG = "BtOppPipelinedInputStream";
+
+    @VisibleForTesting static final int BUFFER_SIZE = 128 * 1024;
+
+    private static final int BUFFER_COUNT = 2;
+
+    private final InputStream mSource;
+    private final BlockingQueue<Chunk> mFilled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+    private final BlockingQueue<byte[]> mFree = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread mReaderThread;
+
+    private Chunk mChunk;
+    private int mPosition;
+    private boolean mClosed;
+
+    private static class Chunk {
+        final byte[] mData;
+        // -1 at the end of the source stream.
+        final int mLength;
+        final IOException mError;
+
+        Chunk(byte[] data, int length, IOException error) {
+            mData = data;
+            mLength = length;
+            mError = error;
+        }
+    }
+
+    BluetoothOppPipelinedInputStream(InputStream source) {
+        this(source, BUFFER_SIZE);
+    }
+
+    @VisibleForTesting
+    BluetoothOppPipelinedInputStream(InputStream source, int bufferSize) {
+        mSource = source;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mFree.add(new byte[bufferSize]);
+        }
+        mReaderThread = new Thread(this::readChunks, TAG);
+        mReaderThread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int done = 0;
+        while (done < len) {
+            // Only block for the first bytes, then return what is already available.
+            if (!nextChunk(done == 0)) {
+                break;
+            }
+            if (mChunk.mError != null) {
+                if (done > 0) {
+                    break;
+                }
+                throw mChunk.mError;
+            }
+            if (mChunk.mLength == -1) {
+                return done > 0 ? done : -1;
+            }
+            int count = Math.min(len - done, mChunk.mLength - mPosition);
+            System.arraycopy(mChunk.mData, mPosition, b, off + done, count);
+            mPosition += count;
+            done += count;
+        }
+        return done;
+    }
+
+    @Override
+    public int available() {
+        Chunk chunk = mChunk;
+        return chunk != null && chunk.mLength > 0 ? chunk.mLength - mPosition : 0;
+    }
+
+    /** Stops reading ahead. The source stream is not closed. */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mReaderThread.interrupt();
+        try {
+            mReaderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Makes mChunk a chunk with data left, the end of stream or an error. Returns false if none
+    // is available without blocking.
+    private boolean nextChunk(boolean block) throws IOException {
+        if (mChunk != null && (mChunk.mLength < 0 || mChunk.mError != null)) {
+            return true;
+        }
+        if (mChunk != null && mPosition < mChunk.mLength) {
+            return true;
+        }
+        if (mChunk != null) {
+            mFree.add(mChunk.mData);
+            mChunk = null;
+        }
+        try {
+            mChunk = block ? mFilled.take() : mFilled.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        }
+        mPosition = 0;
+        return mChunk != null;
+    }
+
+    private void readChunks() {
+        try {
+            while (true) {
+                byte[] buffer = mFree.take();
+                int length;
+                try {
+                    length =
+                            BluetoothOppObexClientSession.readFully(
+                                    mSource, buffer, buffer.length);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Error when reading: " + e);
+                    mFilled.put(new Chunk(null, 0, asIOException(e)));
+                    return;
+                }
+                if (length > 0) {
+                    mFilled.put(new Chunk(buffer, length, null));
+                }
+                if (length < buffer.length) {
+                    mFilled.put(new Chunk(null, -1, null));
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.v(TAG, "Reader thread stopped");
+        }
+    }
+
+    // A runtime exception must not stop the reader thread silently, the caller would wait for
+    // the next chunk forever.
+    private static IOException asIOException(Exception e) {
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Output stream that writes to another stream on a separate thread.
+ *
+ * <p>Data is collected into one of two large buffers. Once a buffer is full it is handed over to
+ * the writer thread, and the next writes go to the other buffer, so the caller only blocks when
+ * both buffers are waiting to be written. An error from the writer thread is thrown by the next
+ * call to {@link #write}, {@link #flush} or {@link #close}.
+ */
+class BluetoothOppPipelinedOutputStream extends OutputStream {
+    private static final String TAG = "BtOppPipelinedOutputStream";
+
+    @VisibleForTesting static final int BUFFER_SIZE = 128 * 1024;
+
+    private static final int BUFFER_COUNT = 2;
+
+    private final OutputStream mOut;
+    private final BlockingQueue<Chunk> mFilled = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+    private final BlockingQueue<byte[]> mFree = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread mWriterThread;
+
+    private volatile IOException mError;
+    private byte[] mBuffer;
+    private int mCount;
+    private boolean mClosed;
+
+    private static class Chunk {
+        final byte[] mData;
+        final int mLength;
+        // Only set for a flush request, counted down once all previous chunks are written.
+        final CountDownLatch mFlushed;
+
+        Chunk(byte[] data, int length, CountDownLatch flushed) {
+            mData = data;
+            mLength = length;
+            mFlushed = flushed;
+        }
+    }
+
+    BluetoothOppPipelinedOutputStream(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    @VisibleForTesting
+    BluetoothOppPipelinedOutputStream(OutputStream out, int bufferSize) {
+        mOut = out;
+        mBuffer = new byte[bufferSize];
+        mFree.add(new byte[bufferSize]);
+        mWriterThread = new Thread(this::writeChunks, TAG);
+        mWriterThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int count = Math.min(len, mBuffer.length - mCount);
+            System.arraycopy(b, off, mBuffer, mCount, count);
+            mCount += count;
+            off += count;
+            len -= count;
+            if (mCount == mBuffer.length) {
+                handOver();
+            }
+        }
+    }
+
+    /** Waits until all the data written so far has been written to the target stream. */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (mCount > 0) {
+            handOver();
+        }
+        CountDownLatch flushed = new CountDownLatch(1);
+        put(new Chunk(null, 0, flushed));
+        try {
+            flushed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing");
+        }
+        throwIfError();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            mClosed = true;
+            mWriterThread.interrupt();
+            try {
+                mWriterThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mOut.close();
+        }
+    }
+
+    private void handOver() throws IOException {
+        put(new Chunk(mBuffer, mCount, null));
+        try {
+            mBuffer = mFree.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing");
+        }
+        mCount = 0;
+        throwIfError();
+    }
+
+    private void writeChunks() {
+        try {
+            while (true) {
+                Chunk chunk = mFilled.take();
+                if (chunk.mFlushed != null) {
+                    if (mError == null) {
+                        try {
+                            mOut.flush();
+                        } catch (IOException | RuntimeException e) {
+                            Log.e(TAG, "Error when flushing: " + e);
+                            mError = asIOException(e);
+                        }
+                    }
+                    chunk.mFlushed.countDown();
+                    continue;
+                }
+                // Keep draining the buffers after an error so the caller never blocks on them.
+                if (mError == null) {
+                    try {
+                        mOut.write(chunk.mData, 0, chunk.mLength);
+                    } catch (IOException | RuntimeException e) {
+                        Log.e(TAG, "Error when writing: " + e);
+                        mError = asIOException(e);
+                    }
+                }
+                mFree.put(chunk.mData);
+            }
+        } catch (InterruptedException e) {
+            Log.v(TAG, "Writer thread stopped");
+        }
+    }
+
+    // A runtime exception must not stop the writer thread, the caller would wait for it forever.
+    private static IOException asIOException(Exception e) {
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+
+    private void put(Chunk chunk) throws IOException {
+        try {
+            mFilled.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void throwIfError() throws IOException {
+        IOException error = mError;
+        if (error != null) {
+            throw error;
+        }
+    }
+}
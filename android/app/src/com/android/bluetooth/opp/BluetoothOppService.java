@@ -41,6 +41,7 @@ import android.bluetooth.BluetoothSocket;
 import android.bluetooth.BluetoothUtils;
 import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -75,9 +76,12 @@ import com.android.obex.ObexTransport;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Performs the background Bluetooth OPP transfer. It also starts thread to accept incoming OPP
@@ -117,7 +121,12 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
 
         @Override
         public void onChange(boolean selfChange) {
-            Log.v(TAG, "ContentObserver received notification");
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            Log.v(TAG, "ContentObserver received notification for " + uri);
 
             // Since ContentObserver is created with Handler, onChange() can be called
             // even after the observer is unregistered.
@@ -125,7 +134,13 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
                 Log.d(TAG, "onChange() called after stop() is called.");
                 return;
             }
-            updateFromProvider();
+            // A change to a single share, such as the progress of a transfer, only reloads it.
+            int shareId = getShareId(uri);
+            if (shareId != -1) {
+                updateFromProvider(shareId);
+            } else {
+                updateFromProvider();
+            }
         }
     }
 
@@ -139,6 +154,9 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
 
     private boolean mPendingUpdate;
 
+    // Shares changed since the last update, reloaded one by one when no full update is pending.
+    private final Set<Integer> mPendingShareIds = new TreeSet<>();
+
     @VisibleForTesting UpdateThread mUpdateThread;
 
     private boolean mUpdateThreadRunning;
@@ -690,6 +708,19 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
     private void updateFromProvider() {
         synchronized (BluetoothOppService.this) {
             mPendingUpdate = true;
+            startUpdateThread();
+        }
+    }
+
+    private void updateFromProvider(int shareId) {
+        synchronized (BluetoothOppService.this) {
+            mPendingShareIds.add(shareId);
+            startUpdateThread();
+        }
+    }
+
+    private void startUpdateThread() {
+        synchronized (BluetoothOppService.this) {
             if (mUpdateThread == null) {
                 mUpdateThread = new UpdateThread();
                 BluetoothMethodProxy.getInstance().threadStart(mUpdateThread);
@@ -698,6 +729,27 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
         }
     }
 
+    /** Returns the id of the share the uri points to, or -1 if it is not a single share uri. */
+    @VisibleForTesting
+    static int getShareId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        List<String> sharesSegments = BluetoothShare.CONTENT_URI.getPathSegments();
+        if (!BluetoothShare.CONTENT_URI.getAuthority().equals(uri.getAuthority())
+                || segments.size() != sharesSegments.size() + 1
+                || !segments.subList(0, sharesSegments.size()).equals(sharesSegments)) {
+            return -1;
+        }
+        try {
+            int shareId = Integer.parseInt(uri.getLastPathSegment());
+            return shareId >= 0 ? shareId : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private class UpdateThread extends Thread {
         private boolean mIsInterrupted;
 
@@ -718,6 +770,7 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
             Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
 
             while (!mIsInterrupted) {
+                List<Integer> shareIds;
                 synchronized (BluetoothOppService.this) {
                     if (mUpdateThread != this) {
                         mUpdateThreadRunning = false;
@@ -732,12 +785,20 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
                                     + mListenStarted
                                     + " isInterrupted :"
                                     + mIsInterrupted);
-                    if (!mPendingUpdate) {
+                    if (!mPendingUpdate && mPendingShareIds.isEmpty()) {
                         mUpdateThread = null;
                         mUpdateThreadRunning = false;
                         return;
                     }
+                    // A full update also covers the shares changed since the last update.
+                    shareIds = mPendingUpdate ? null : new ArrayList<>(mPendingShareIds);
                     mPendingUpdate = false;
+                    mPendingShareIds.clear();
+                }
+                if (shareIds != null) {
+                    updateShares(shareIds);
+                    mNotifier.updateNotification();
+                    continue;
                 }
                 Cursor cursor =
                         getContentResolver()
@@ -837,6 +898,67 @@ public class BluetoothOppService extends ProfileService implements IObexConnecti
         }
     }
 
+    /**
+     * Reloads the given shares from the provider, inserting, updating or deleting their local copy.
+     * Unlike a full update, only the rows of these shares are queried.
+     */
+    @VisibleForTesting
+    void updateShares(Collection<Integer> shareIds) {
+        for (int shareId : shareIds) {
+            Cursor cursor =
+                    BluetoothMethodProxy.getInstance()
+                            .contentResolverQuery(
+                                    getContentResolver(),
+                                    ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, shareId),
+                                    null,
+                                    null,
+                                    null,
+                                    null);
+            if (cursor == null) {
+                Log.w(TAG, "updateShares: no cursor for share " + shareId);
+                continue;
+            }
+            try {
+                int arrayPos = findShare(shareId);
+                if (cursor.moveToFirst()) {
+                    if (arrayPos >= 0) {
+                        updateShare(cursor, arrayPos);
+                        scanFileIfNeeded(arrayPos);
+                    } else {
+                        Log.v(TAG, "Share update: inserting " + shareId);
+                        insertShare(cursor, -(arrayPos + 1));
+                    }
+                } else if (arrayPos >= 0) {
+                    Log.v(TAG, "Share update: removing " + shareId);
+                    deleteShare(arrayPos);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the share in {@link #mShares}, which is sorted by id, or {@code
+     * -(insertion point) - 1} if there is no share with this id.
+     */
+    private int findShare(int shareId) {
+        int low = 0;
+        int high = mShares.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = mShares.get(mid).mId;
+            if (midId < shareId) {
+                low = mid + 1;
+            } else if (midId > shareId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
     private void insertShare(Cursor cursor, int arrayPos) {
         String uriString = cursor.getString(cursor.getColumnIndexOrThrow(BluetoothShare.URI));
         Uri uri;
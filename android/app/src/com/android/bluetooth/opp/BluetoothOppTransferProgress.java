@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the number of bytes transferred for a share.
+ *
+ * <p>The live byte count is kept in memory, where {@link #getCurrentBytes} makes it available to
+ * the UI and notifications. As every write to the provider notifies all of its observers, it is
+ * only written to {@link BluetoothShare#CURRENT_BYTES} when the percentage changed and the persist
+ * interval has elapsed, when the transfer has not been reported for {@link
+ * Constants#NFC_ALIVE_CHECK_MS}, and when the transfer ends.
+ */
+class BluetoothOppTransferProgress {
+    private static final Map<Integer, Long> sLiveBytes = new ConcurrentHashMap<>();
+
+    private final Context mContext;
+    private final int mShareId;
+    private final Uri mContentUri;
+    private final long mTotalBytes;
+    private final long mPersistIntervalMillis;
+    private long mPersistedBytes = -1;
+    private long mPersistedPercent = 0;
+    private long mPersistedTime;
+
+    BluetoothOppTransferProgress(Context context, int shareId, long totalBytes) {
+        this(
+                context,
+                shareId,
+                totalBytes,
+                SystemProperties.getInt(
+                        Constants.PROGRESS_PERSIST_INTERVAL_PROPERTY,
+                        Constants.PROGRESS_PERSIST_INTERVAL_MS));
+    }
+
+    @VisibleForTesting
+    BluetoothOppTransferProgress(
+            Context context, int shareId, long totalBytes, long persistIntervalMillis) {
+        mContext = context;
+        mShareId = shareId;
+        mContentUri = ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, shareId);
+        mTotalBytes = totalBytes;
+        mPersistIntervalMillis =
+                Math.min(Math.max(persistIntervalMillis, 0), Constants.NFC_ALIVE_CHECK_MS);
+        mPersistedTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records the number of bytes transferred, and writes it to the provider if the percentage
+     * changed and the persist interval has elapsed since the last write, or if nothing was written
+     * for {@link Constants#NFC_ALIVE_CHECK_MS} to notify NFC that the transfer is still alive.
+     */
+    void update(long currentBytes) {
+        update(currentBytes, SystemClock.elapsedRealtime());
+    }
+
+    @VisibleForTesting
+    void update(long currentBytes, long now) {
+        sLiveBytes.put(mShareId, currentBytes);
+        long elapsed = now - mPersistedTime;
+        if ((getPercent(currentBytes) > mPersistedPercent && elapsed >= mPersistIntervalMillis)
+                || elapsed > Constants.NFC_ALIVE_CHECK_MS) {
+            persist(currentBytes, now);
+        }
+    }
+
+    /** Records the number of bytes transferred and writes it to the provider right away. */
+    void persist(long currentBytes) {
+        persist(currentBytes, SystemClock.elapsedRealtime());
+    }
+
+    private void persist(long currentBytes, long now) {
+        sLiveBytes.put(mShareId, currentBytes);
+        mPersistedTime = now;
+        mPersistedPercent = getPercent(currentBytes);
+        if (currentBytes == mPersistedBytes) {
+            return;
+        }
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(BluetoothShare.CURRENT_BYTES, currentBytes);
+        BluetoothMethodProxy.getInstance()
+                .contentResolverUpdate(
+                        mContext.getContentResolver(), mContentUri, updateValues, null, null);
+        mPersistedBytes = currentBytes;
+    }
+
+    private long getPercent(long currentBytes) {
+        return mTotalBytes > 0 ? currentBytes * 100 / mTotalBytes : 0;
+    }
+
+    /** Writes the final number of bytes transferred to the provider and stops tracking it. */
+    void finish(long currentBytes) {
+        persist(currentBytes);
+        sLiveBytes.remove(mShareId);
+    }
+
+    /**
+     * Returns the live number of bytes transferred for a share, or {@code persistedBytes}, read
+     * from the provider, if the share is not being transferred.
+     */
+    static long getCurrentBytes(int shareId, long persistedBytes) {
+        Long liveBytes = sLiveBytes.get(shareId);
+        return liveBytes != null ? liveBytes : persistedBytes;
+    }
+}
@@ -117,7 +117,9 @@ public class BluetoothOppUtility {
         info.mDirection = cursor.getInt(cursor.getColumnIndexOrThrow(BluetoothShare.DIRECTION));
         info.mTotalBytes = cursor.getLong(cursor.getColumnIndexOrThrow(BluetoothShare.TOTAL_BYTES));
         info.mCurrentBytes =
-                cursor.getLong(cursor.getColumnIndexOrThrow(BluetoothShare.CURRENT_BYTES));
+                BluetoothOppTransferProgress.getCurrentBytes(
+                        info.mID,
+                        cursor.getLong(cursor.getColumnIndexOrThrow(BluetoothShare.CURRENT_BYTES)));
         info.mTimeStamp = cursor.getLong(cursor.getColumnIndexOrThrow(BluetoothShare.TIMESTAMP));
         info.mDestAddr = cursor.getString(cursor.getColumnIndexOrThrow(BluetoothShare.DESTINATION));
 
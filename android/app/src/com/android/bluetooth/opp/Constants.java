@@ -227,6 +227,16 @@ public class Constants {
     /** Notify NFC of the transfer progress periodically, or it will timeout after 20sec. */
     static final int NFC_ALIVE_CHECK_MS = 10000;
 
+    /**
+     * Default min interval between two writes of the transfer progress to the provider, even if
+     * the percentage changed. Can be overridden with {@link #PROGRESS_PERSIST_INTERVAL_PROPERTY},
+     * and is capped at {@link #NFC_ALIVE_CHECK_MS}.
+     */
+    static final int PROGRESS_PERSIST_INTERVAL_MS = 5000;
+
+    static final String PROGRESS_PERSIST_INTERVAL_PROPERTY =
+            "bluetooth.opp.progress_persist_interval_ms";
+
     /**
      * To log debug/verbose in OPP, use the command "setprop log.tag.BluetoothOpp DEBUG" or "setprop
      * log.tag.BluetoothOpp VERBOSE" and then "adb root" + "adb shell "stop; start""
@@ -26,6 +26,7 @@ import com.android.vcard.VCardEntry;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
     private static final String TAG = "PbapClient.PullPb";
@@ -40,6 +41,8 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
 
     private final byte mFormat;
 
+    private final Consumer<VCardEntry> mEntryConsumer;
+
     BluetoothPbapRequestPullPhoneBook(
             String pbName,
             Account account,
@@ -47,7 +50,23 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
             byte format,
             int maxListCount,
             int listStartOffset) {
+        this(pbName, account, filter, format, maxListCount, listStartOffset, null);
+    }
+
+    /**
+     * Creates a request handing each received entry over to {@code entryConsumer} as soon as it is
+     * parsed, instead of collecting them for {@link #getList}.
+     */
+    BluetoothPbapRequestPullPhoneBook(
+            String pbName,
+            Account account,
+            long filter,
+            byte format,
+            int maxListCount,
+            int listStartOffset,
+            Consumer<VCardEntry> entryConsumer) {
         mAccount = account;
+        mEntryConsumer = entryConsumer;
         if (maxListCount < 0 || maxListCount > 65535) {
             throw new IllegalArgumentException("maxListCount should be [0..65535]");
         }
@@ -97,7 +116,7 @@ final class BluetoothPbapRequestPullPhoneBook extends BluetoothPbapRequest {
     protected void readResponse(InputStream stream) throws IOException {
         Log.v(TAG, "readResponse");
 
-        mResponse = new BluetoothPbapVcardList(mAccount, stream, mFormat);
+        mResponse = new BluetoothPbapVcardList(mAccount, stream, mFormat, mEntryConsumer);
         Log.d(TAG, "Read " + mResponse.getCount() + " entries");
     }
 
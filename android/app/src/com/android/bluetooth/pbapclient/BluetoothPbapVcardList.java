@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 class BluetoothPbapVcardList {
     private static final String TAG = BluetoothPbapVcardList.class.getSimpleName();
@@ -42,6 +43,11 @@ class BluetoothPbapVcardList {
 
     private final List<VCardEntry> mCards = new ArrayList<VCardEntry>();
     private final Account mAccount;
+    // When set, entries are handed over as they are parsed rather than kept in mCards.
+    private final Consumer<VCardEntry> mEntryConsumer;
+    private int mCount;
+    // Entries handed over before the vCards are parsed again with the other version.
+    private int mConsumedCount;
 
     class CardEntryHandler implements VCardEntryHandler {
         @Override
@@ -49,7 +55,15 @@ class BluetoothPbapVcardList {
 
         @Override
         public void onEntryCreated(VCardEntry entry) {
-            mCards.add(entry);
+            mCount++;
+            if (mEntryConsumer != null) {
+                // The first entries of a new attempt were already handed over by the previous one
+                if (mCount > mConsumedCount) {
+                    mEntryConsumer.accept(entry);
+                }
+            } else {
+                mCards.add(entry);
+            }
         }
 
         @Override
@@ -57,11 +71,22 @@ class BluetoothPbapVcardList {
     }
 
     BluetoothPbapVcardList(Account account, InputStream in, byte format) throws IOException {
+        this(account, in, format, null);
+    }
+
+    /**
+     * Parses the vCards of {@code in}, handing each entry over to {@code entryConsumer} as soon as
+     * it is parsed. The entries are then not kept, and {@link #getList} is empty.
+     */
+    BluetoothPbapVcardList(
+            Account account, InputStream in, byte format, Consumer<VCardEntry> entryConsumer)
+            throws IOException {
         if (format != PbapClientConnectionHandler.VCARD_TYPE_21
                 && format != PbapClientConnectionHandler.VCARD_TYPE_30) {
             throw new IllegalArgumentException("Unsupported vCard version.");
         }
         mAccount = account;
+        mEntryConsumer = entryConsumer;
         parse(in, format);
     }
 
@@ -102,11 +127,16 @@ class BluetoothPbapVcardList {
             // reset and try again
             bufferedInput.reset();
             mCards.clear();
+            mConsumedCount = mCount;
+            mCount = 0;
             constructor.clear();
             parser.addInterpreter(constructor);
             if (parsedWithVcardVersionException(parser, bufferedInput)) {
                 Log.e(TAG, "unsupported vCard version, neither v2.1 nor v3.0");
             }
+            if (mEntryConsumer != null) {
+                mCount = Math.max(mCount, mConsumedCount);
+            }
         }
     }
 
@@ -133,7 +163,7 @@ class BluetoothPbapVcardList {
     }
 
     public int getCount() {
-        return mCards.size();
+        return mCount;
     }
 
     public List<VCardEntry> getList() {
@@ -41,8 +41,8 @@ import com.android.vcard.VCardEntry;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /* Bluetooth/pbapclient/PbapClientConnectionHandler is responsible
  * for connecting, disconnecting and downloading contacts from the
@@ -375,10 +375,18 @@ class PbapClientConnectionHandler extends Handler {
 
     @VisibleForTesting
     void downloadContacts(String path) {
+        PhonebookPullRequest processor =
+                new PhonebookPullRequest(mPbapClientStateMachine.getContext());
+        // Contacts are inserted as they are parsed, rather than once each batch is received.
+        Consumer<VCardEntry> entryConsumer =
+                vcard -> {
+                    if (FAV_PATH.equals(path)) {
+                        // mark each vcard as a favorite
+                        vcard.setStarred(true);
+                    }
+                    processor.onEntry(vcard);
+                };
         try {
-            PhonebookPullRequest processor =
-                    new PhonebookPullRequest(mPbapClientStateMachine.getContext());
-
             // Download contacts in batches of size DEFAULT_BATCH_SIZE
             BluetoothPbapRequestPullPhoneBookSize requestPbSize =
                     new BluetoothPbapRequestPullPhoneBookSize(path, PBAP_REQUESTED_FIELDS);
@@ -407,17 +415,9 @@ class PbapClientConnectionHandler extends Handler {
                                 PBAP_REQUESTED_FIELDS,
                                 VCARD_TYPE_30,
                                 numberOfContactsToDownload,
-                                startOffset);
+                                startOffset,
+                                entryConsumer);
                 request.execute(mObexSession);
-                List<VCardEntry> vcards = request.getList();
-                if (FAV_PATH.equals(path)) {
-                    // mark each vcard as a favorite
-                    for (VCardEntry v : vcards) {
-                        v.setStarred(true);
-                    }
-                }
-                processor.setResults(vcards);
-                processor.onPullComplete();
 
                 startOffset += numberOfContactsToDownload;
                 numberOfContactsRemaining -= numberOfContactsToDownload;
@@ -429,6 +429,8 @@ class PbapClientConnectionHandler extends Handler {
             Log.e(TAG, "Download contacts failure", e);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Download contacts failure: " + e.getMessage(), e);
+        } finally {
+            processor.onEntriesComplete();
         }
     }
 
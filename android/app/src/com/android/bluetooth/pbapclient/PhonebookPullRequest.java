@@ -36,6 +36,9 @@ public class PhonebookPullRequest extends PullRequest {
     private final Context mContext;
     public boolean complete = false;
 
+    // Insert operations of the contacts received by onEntry() and not inserted yet.
+    private ArrayList<ContentProviderOperation> mInsertOperations = new ArrayList<>();
+
     public PhonebookPullRequest(Context context) {
         mContext = context;
         path = PbapClientConnectionHandler.PB_PATH;
@@ -59,20 +62,7 @@ public class PhonebookPullRequest extends PullRequest {
                     Log.e(TAG, "Interrupted durring insert.");
                     break;
                 }
-                int numberOfOperations = insertOperations.size();
-                // Append current vcard to list of insert operations.
-                e.constructInsertOperations(contactsProvider, insertOperations);
-                if (insertOperations.size() >= MAX_OPS) {
-                    // If we have exceded the limit to the insert operation remove the latest vcard
-                    // and submit.
-                    insertOperations.subList(numberOfOperations, insertOperations.size()).clear();
-                    contactsProvider.applyBatch(ContactsContract.AUTHORITY, insertOperations);
-                    insertOperations = e.constructInsertOperations(contactsProvider, null);
-                    if (insertOperations.size() >= MAX_OPS) {
-                        // Current VCard has more than 500 attributes, drop the card.
-                        insertOperations.clear();
-                    }
-                }
+                insertOperations = addInsertOperations(contactsProvider, insertOperations, e);
             }
             if (insertOperations.size() > 0) {
                 // Apply any unsubmitted vcards.
@@ -86,4 +76,63 @@ public class PhonebookPullRequest extends PullRequest {
             complete = true;
         }
     }
+
+    /**
+     * Inserts a contact as soon as it is received, grouped with the next ones as by {@link
+     * #onPullComplete}. {@link #onEntriesComplete} must be called after the last contact.
+     */
+    public void onEntry(VCardEntry e) {
+        if (Thread.currentThread().isInterrupted()) {
+            Log.e(TAG, "Interrupted durring insert.");
+            return;
+        }
+        try {
+            mInsertOperations =
+                    addInsertOperations(mContext.getContentResolver(), mInsertOperations, e);
+        } catch (OperationApplicationException | RemoteException | NumberFormatException ex) {
+            Log.e(TAG, "Exception occurred while processing phonebook entry: ", ex);
+            mInsertOperations.clear();
+        }
+    }
+
+    /** Inserts the contacts received by {@link #onEntry} that are not inserted yet. */
+    public void onEntriesComplete() {
+        try {
+            if (mInsertOperations.size() > 0) {
+                mContext.getContentResolver()
+                        .applyBatch(ContactsContract.AUTHORITY, mInsertOperations);
+            }
+        } catch (OperationApplicationException | RemoteException | NumberFormatException e) {
+            Log.e(TAG, "Exception occurred while processing phonebook pull: ", e);
+        } finally {
+            mInsertOperations.clear();
+            complete = true;
+        }
+    }
+
+    /**
+     * Appends the insert operations of a vcard, applying the previous ones first if the batch
+     * would exceed {@link #MAX_OPS}. Returns the operations left to apply.
+     */
+    private static ArrayList<ContentProviderOperation> addInsertOperations(
+            ContentResolver contactsProvider,
+            ArrayList<ContentProviderOperation> insertOperations,
+            VCardEntry e)
+            throws OperationApplicationException, RemoteException {
+        int numberOfOperations = insertOperations.size();
+        // Append current vcard to list of insert operations.
+        e.constructInsertOperations(contactsProvider, insertOperations);
+        if (insertOperations.size() >= MAX_OPS) {
+            // If we have exceded the limit to the insert operation remove the latest vcard
+            // and submit.
+            insertOperations.subList(numberOfOperations, insertOperations.size()).clear();
+            contactsProvider.applyBatch(ContactsContract.AUTHORITY, insertOperations);
+            insertOperations = e.constructInsertOperations(contactsProvider, null);
+            if (insertOperations.size() >= MAX_OPS) {
+                // Current VCard has more than 500 attributes, drop the card.
+                insertOperations.clear();
+            }
+        }
+        return insertOperations;
+    }
 }
@@ -194,6 +194,26 @@ public class UtilsTest {
         assertThat(Utils.getLoggableAddress(device)).isEqualTo(loggableAddress);
     }
 
+    @Test
+    public void getAddressStringFromByte() {
+        byte[] address = new byte[] {0x00, 0x11, 0x2a, (byte) 0x9b, (byte) 0xcc, (byte) 0xff};
+
+        assertThat(Utils.getAddressStringFromByte(address)).isEqualTo("00:11:2A:9B:CC:FF");
+        assertThat(Utils.getAddressStringFromByte(new byte[5])).isNull();
+        assertThat(Utils.getAddressStringFromByte(null)).isNull();
+    }
+
+    @Test
+    public void getLongFromAddress() {
+        assertThat(Utils.getLongFromAddress("00:11:2A:9B:CC:FF")).isEqualTo(0x00112A9BCCFFL);
+        assertThat(Utils.getLongFromAddress("00:11:2a:9b:cc:ff")).isEqualTo(0x00112A9BCCFFL);
+        assertThat(Utils.getLongFromAddress("FF:FF:FF:FF:FF:FF")).isEqualTo(0xFFFFFFFFFFFFL);
+        assertThat(Utils.getLongFromAddress("00:11:2A:9B:CC")).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress("00-11-2A-9B-CC-FF")).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress("00:11:2A:9B:CC:FG")).isEqualTo(-1);
+        assertThat(Utils.getLongFromAddress(null)).isEqualTo(-1);
+    }
+
     @Test
     public void checkCallerIsSystemMethods_doesNotCrash() {
         Context context = InstrumentationRegistry.getTargetContext();
@@ -128,6 +128,22 @@ public class CoverArtTest {
         assertThat(artwork.getImage()).isNotNull();
     }
 
+    /** Make sure the image is encoded once for all the formats until the encoding is released */
+    @Test
+    public void testGetImageReusesEncodingUntilReleased() {
+        CoverArt artwork = new CoverArt(mImage);
+        byte[] image = artwork.getImage();
+        assertThat(artwork.getThumbnail()).isSameInstanceAs(image);
+        assertThat(artwork.getEncodedImageSize()).isEqualTo(image.length);
+
+        artwork.releaseEncodedImage();
+
+        assertThat(artwork.getEncodedImageSize()).isEqualTo(0);
+        byte[] reencoded = artwork.getThumbnail();
+        assertThat(reencoded).isNotSameInstanceAs(image);
+        assertThat(reencoded).isEqualTo(image);
+    }
+
     /** Make sure you get an image hash from a valid image */
     @Test
     public void testGetImageHash() {
@@ -35,6 +35,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
 import java.io.InputStream;
 
 /** A test suite for the AvrcpCoverArtStorage class. */
@@ -327,6 +328,59 @@ public final class AvrcpCoverArtStorageTest {
         Assert.assertFalse(mAvrcpCoverArtStorage.doesImageExist(mDevice2, mHandle2));
     }
 
+    @Test
+    public void addImageOverMemoryBudget_spillsLeastRecentlyUsedToDisk() {
+        mAvrcpCoverArtStorage =
+                new AvrcpCoverArtStorage(mTargetContext, mImage2.getAllocationByteCount());
+        mAvrcpCoverArtStorage.addImage(mDevice1, mHandle1, mImage1);
+        mAvrcpCoverArtStorage.addImage(mDevice2, mHandle1, mImage2);
+
+        Assert.assertEquals(1, mAvrcpCoverArtStorage.getEvictionCount());
+        Assert.assertEquals(
+                mImage2.getAllocationByteCount(), mAvrcpCoverArtStorage.getMemoryBytes());
+        Assert.assertTrue(mAvrcpCoverArtStorage.doesImageExist(mDevice1, mHandle1));
+        Assert.assertTrue(mAvrcpCoverArtStorage.doesImageExist(mDevice2, mHandle1));
+
+        assertImageSame(mImage1, mDevice1, mHandle1);
+        Assert.assertEquals(1, mAvrcpCoverArtStorage.getDiskHitCount());
+        Assert.assertEquals(2, mAvrcpCoverArtStorage.getEvictionCount());
+        assertImageSame(mImage2, mDevice2, mHandle1);
+        Assert.assertEquals(2, mAvrcpCoverArtStorage.getDiskHitCount());
+    }
+
+    @Test
+    public void getImageFile_returnsEncodedImage() {
+        mAvrcpCoverArtStorage.addImage(mDevice1, mHandle1, mImage1);
+
+        File file = mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle1);
+
+        Assert.assertNotNull(file);
+        Assert.assertTrue(mImage1.sameAs(BitmapFactory.decodeFile(file.getPath())));
+        Assert.assertNull(mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle2));
+    }
+
+    @Test
+    public void removeImage_deletesImageFile() {
+        mAvrcpCoverArtStorage.addImage(mDevice1, mHandle1, mImage1);
+        File file = mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle1);
+
+        mAvrcpCoverArtStorage.removeImage(mDevice1, mHandle1);
+
+        Assert.assertFalse(file.exists());
+        Assert.assertNull(mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle1));
+    }
+
+    @Test
+    public void addExistingImage_imageFileUpdated() {
+        mAvrcpCoverArtStorage.addImage(mDevice1, mHandle1, mImage1);
+        mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle1);
+
+        mAvrcpCoverArtStorage.addImage(mDevice1, mHandle1, mImage2);
+        File file = mAvrcpCoverArtStorage.getImageFile(mDevice1, mHandle1);
+
+        Assert.assertTrue(mImage2.sameAs(BitmapFactory.decodeFile(file.getPath())));
+    }
+
     @Test
     public void toString_returnsDeviceInfo() {
         String expectedString =
@@ -40,11 +40,14 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 @MediumTest
 @RunWith(AndroidJUnit4.class)
 public class RemoteDevicesTest {
     private static final String TEST_BT_ADDR_1 = "00:11:22:33:44:55";
+    private static final String TEST_BT_ADDR_2 = "00:11:22:33:44:66";
 
     private ArgumentCaptor<Intent> mIntentArgument = ArgumentCaptor.forClass(Intent.class);
     private ArgumentCaptor<String> mStringArgument = ArgumentCaptor.forClass(String.class);
@@ -815,6 +818,132 @@ public class RemoteDevicesTest {
         Assert.assertFalse(deviceProp.isCoordinatedSetMember());
     }
 
+    @Test
+    public void testGetIdentityAddress() {
+        byte[] address = Utils.getBytesFromAddress(TEST_BT_ADDR_1);
+        byte[] identityAddress = Utils.getBytesFromAddress(TEST_BT_ADDR_2);
+        mRemoteDevices.addDeviceProperties(address);
+        Assert.assertNull(mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_1));
+
+        mRemoteDevices.leAddressAssociateCallback(address, identityAddress);
+        Assert.assertEquals(TEST_BT_ADDR_2, mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_1));
+        Assert.assertEquals(
+                TEST_BT_ADDR_2,
+                mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_1.toLowerCase(Locale.ROOT)));
+        Assert.assertNull(mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_2));
+
+        // New properties for the address drop its identity address.
+        mRemoteDevices.addDeviceProperties(address);
+        Assert.assertNull(mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_1));
+    }
+
+    @Test
+    public void testGetIdentityAddress_afterAddressConsolidation() {
+        byte[] address = Utils.getBytesFromAddress(TEST_BT_ADDR_1);
+        byte[] identityAddress = Utils.getBytesFromAddress(TEST_BT_ADDR_2);
+        mRemoteDevices.addDeviceProperties(address);
+
+        mRemoteDevices.addressConsolidateCallback(address, identityAddress);
+
+        // The identity address resolves to the consolidated device, and so to itself.
+        Assert.assertEquals(TEST_BT_ADDR_2, mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_1));
+        Assert.assertEquals(TEST_BT_ADDR_2, mRemoteDevices.getIdentityAddress(TEST_BT_ADDR_2));
+        Assert.assertNull(mRemoteDevices.getIdentityAddress("invalid"));
+    }
+
+    @Test
+    public void testAddDeviceProperties_evictsLeastRecentlyUsed() {
+        mRemoteDevices.setMaxDevicesForTesting(2);
+        BluetoothDevice device1 = addTestDevice(1);
+        BluetoothDevice device2 = addTestDevice(2);
+
+        // Using the first device makes the second one the least recently used.
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device1));
+        BluetoothDevice device3 = addTestDevice(3);
+
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device1));
+        Assert.assertNull(mRemoteDevices.getDeviceProperties(device2));
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device3));
+    }
+
+    @Test
+    public void testAddDeviceProperties_keepsBondedDevices() {
+        mRemoteDevices.setMaxDevicesForTesting(1);
+        BluetoothDevice device1 = addTestDevice(1);
+        mRemoteDevices.getDeviceProperties(device1).mBondState = BluetoothDevice.BOND_BONDED;
+        BluetoothDevice device2 = addTestDevice(2);
+        BluetoothDevice device3 = addTestDevice(3);
+
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device1));
+        Assert.assertNull(mRemoteDevices.getDeviceProperties(device2));
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device3));
+    }
+
+    @Test
+    public void testAddDeviceProperties_pinnedDevicesOverLimit_doesNotEvictThem() {
+        mRemoteDevices.setMaxDevicesForTesting(1);
+        BluetoothDevice device1 = addTestDevice(1);
+        mRemoteDevices.getDeviceProperties(device1).setBondState(BluetoothDevice.BOND_BONDED);
+        BluetoothDevice device2 = addTestDevice(2);
+        mRemoteDevices
+                .getDeviceProperties(device2)
+                .setConnectionHandle(1, BluetoothDevice.TRANSPORT_LE);
+        BluetoothDevice device3 = addTestDevice(3);
+
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device1));
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device2));
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device3));
+        verify(mAdapterService, never()).getBondedDevices();
+    }
+
+    @Test
+    public void testSetBondState_unbonded_makesDeviceEvictableAgain() {
+        mRemoteDevices.setMaxDevicesForTesting(1);
+        BluetoothDevice device1 = addTestDevice(1);
+        DeviceProperties prop1 = mRemoteDevices.getDeviceProperties(device1);
+        prop1.setBondState(BluetoothDevice.BOND_BONDED);
+        BluetoothDevice device2 = addTestDevice(2);
+
+        // The unbonded device is ordered after the other one, which is then evicted.
+        prop1.setBondState(BluetoothDevice.BOND_NONE);
+
+        Assert.assertNotNull(mRemoteDevices.getDeviceProperties(device1));
+        Assert.assertNull(mRemoteDevices.getDeviceProperties(device2));
+    }
+
+    @Test
+    public void testDeviceFoundCallback_withBatchWindow_sendsLatestUpdateOnce() {
+        mRemoteDevices.setFoundBatchWindowForTesting(500);
+        List<DiscoveringPackage> packages = new ArrayList<>();
+        packages.add(new DiscoveringPackage("pkg", null, false));
+        doReturn(packages).when(mAdapterService).getDiscoveringPackages();
+        byte[] address = Utils.getBytesFromAddress(TEST_BT_ADDR_1);
+        DeviceProperties deviceProp = mRemoteDevices.addDeviceProperties(address);
+
+        deviceProp.setRssi((short) -80);
+        mRemoteDevices.deviceFoundCallback(address);
+        deviceProp.setRssi((short) -60);
+        mRemoteDevices.deviceFoundCallback(address);
+        verify(mAdapterService, never()).sendBroadcastMultiplePermissions(any(), any(), any());
+
+        // The batch is sent once its window expires, with the latest properties only.
+        Message msg = mTestLooperManager.next();
+        Assert.assertNotNull(msg);
+        mTestLooperManager.execute(msg);
+
+        verify(mAdapterService)
+                .sendBroadcastMultiplePermissions(mIntentArgument.capture(), any(), any());
+        Intent intent = mIntentArgument.getValue();
+        Assert.assertEquals(BluetoothDevice.ACTION_FOUND, intent.getAction());
+        Assert.assertEquals("pkg", intent.getPackage());
+        Assert.assertEquals(-60, intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, (short) 0));
+    }
+
+    private BluetoothDevice addTestDevice(int id) {
+        byte[] address = new byte[] {0x00, 0x11, 0x22, 0x33, 0x44, (byte) id};
+        return mRemoteDevices.addDeviceProperties(address).getDevice();
+    }
+
     @Test
     public void testIsDeviceNull() {
         Assert.assertNull(mRemoteDevices.getDeviceProperties(null));
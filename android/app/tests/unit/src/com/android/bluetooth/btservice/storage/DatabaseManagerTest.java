@@ -127,7 +127,8 @@ public final class DatabaseManagerTest {
                                 .getTargetContext()
                                 .getPackageManager());
 
-        mDatabaseManager = new DatabaseManager(mAdapterService);
+        // Write updates right away, so tests only need to wait for the handler thread.
+        mDatabaseManager = new DatabaseManager(mAdapterService, 0);
 
         BluetoothDevice[] bondedDevices = {mTestDevice};
         doReturn(bondedDevices).when(mAdapterService).getBondedDevices();
@@ -314,6 +315,44 @@ public final class DatabaseManagerTest {
                 BluetoothA2dp.OPTIONAL_CODECS_PREF_UNKNOWN);
     }
 
+    @Test
+    public void testUpdateDatabase_writtenBehindAndFlushedOnCleanup() {
+        mDatabaseManager.cleanup();
+        // Use a delay long enough for the updates to only be written by cleanup().
+        mDatabaseManager = new DatabaseManager(mAdapterService, 60_000);
+        mDatabaseManager.start(mDatabase);
+        TestUtils.waitForLooperToFinishScheduledTask(mDatabaseManager.getHandlerLooper());
+
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice, BluetoothProfile.HEADSET, BluetoothProfile.CONNECTION_POLICY_ALLOWED);
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice, BluetoothProfile.A2DP, BluetoothProfile.CONNECTION_POLICY_ALLOWED);
+        mDatabaseManager.setProfileConnectionPolicy(
+                mTestDevice,
+                BluetoothProfile.HEADSET,
+                BluetoothProfile.CONNECTION_POLICY_FORBIDDEN);
+        TestUtils.waitForLooperToFinishScheduledTask(mDatabaseManager.getHandlerLooper());
+
+        Assert.assertTrue(
+                mDatabase.load().stream()
+                        .noneMatch(data -> TEST_BT_ADDR.equals(data.getAddress())));
+
+        mDatabaseManager.cleanup();
+
+        Metadata stored =
+                mDatabase.load().stream()
+                        .filter(data -> TEST_BT_ADDR.equals(data.getAddress()))
+                        .findFirst()
+                        .orElse(null);
+        Assert.assertNotNull(stored);
+        Assert.assertEquals(
+                BluetoothProfile.CONNECTION_POLICY_FORBIDDEN,
+                stored.getProfileConnectionPolicy(BluetoothProfile.HEADSET));
+        Assert.assertEquals(
+                BluetoothProfile.CONNECTION_POLICY_ALLOWED,
+                stored.getProfileConnectionPolicy(BluetoothProfile.A2DP));
+    }
+
     @Test
     public void testRemoveUnusedMetadata_WithSingleBondedDevice() {
         // Insert two devices to database and cache, only mTestDevice is
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test cases for {@link CongestionQueue}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class CongestionQueueTest {
+    private static final String ADDRESS = "00:01:02:03:04:05";
+    private static final String OTHER_ADDRESS = "00:01:02:03:04:06";
+
+    @Test
+    public void poll_returnsCallbacksInOrder() {
+        CongestionQueue queue = new CongestionQueue(100);
+        for (int handle = 0; handle < 20; handle++) {
+            queue.add(callback(ADDRESS, 0, handle), false);
+        }
+
+        assertThat(queue.size()).isEqualTo(20);
+        for (int handle = 0; handle < 20; handle++) {
+            assertThat(queue.poll().handle).isEqualTo(handle);
+        }
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    public void add_whenFull_rejectsNewCallbacks() {
+        CongestionQueue queue = new CongestionQueue(3);
+        for (int handle = 0; handle < 3; handle++) {
+            assertThat(queue.add(callback(ADDRESS, 0, handle), false)).isTrue();
+        }
+
+        assertThat(queue.add(callback(ADDRESS, 0, 3), false)).isFalse();
+        assertThat(queue.add(callback(ADDRESS, 0, 4), false)).isFalse();
+
+        assertThat(queue.size()).isEqualTo(3);
+        assertThat(queue.poll().handle).isEqualTo(0);
+        assertThat(queue.poll().handle).isEqualTo(1);
+        assertThat(queue.poll().handle).isEqualTo(2);
+    }
+
+    @Test
+    public void add_whenFull_stillCoalesces() {
+        CongestionQueue queue = new CongestionQueue(1);
+        CallbackInfo latest = callback(ADDRESS, 0, 1);
+        queue.add(callback(ADDRESS, 0, 1), true);
+
+        assertThat(queue.add(latest, true)).isTrue();
+        assertThat(queue.poll()).isSameInstanceAs(latest);
+    }
+
+    @Test
+    public void add_withCoalesce_replacesLastCallbackForSameHandle() {
+        CongestionQueue queue = new CongestionQueue(100);
+        CallbackInfo latest = callback(ADDRESS, 0, 1);
+        queue.add(callback(ADDRESS, 0, 1), true);
+        queue.add(latest, true);
+
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(queue.poll()).isSameInstanceAs(latest);
+    }
+
+    @Test
+    public void add_withCoalesce_keepsDifferentCallbacks() {
+        CongestionQueue queue = new CongestionQueue(100);
+        queue.add(callback(ADDRESS, 0, 1), true);
+        queue.add(callback(ADDRESS, 0, 2), true);
+        queue.add(callback(OTHER_ADDRESS, 0, 2), true);
+        queue.add(callback(OTHER_ADDRESS, 1, 2), true);
+        queue.add(callback(OTHER_ADDRESS, 1, 2), false);
+
+        assertThat(queue.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void poll_afterWrapAround_keepsOrder() {
+        CongestionQueue queue = new CongestionQueue(100);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 7; i++) {
+                queue.add(callback(ADDRESS, 0, next++), false);
+            }
+            for (int i = 0; i < 5; i++) {
+                assertThat(queue.poll().handle).isEqualTo(expected++);
+            }
+        }
+        assertThat(queue.size()).isEqualTo(next - expected);
+    }
+
+    @Test
+    public void testDump_doesNotCrash() {
+        CongestionQueue queue = new CongestionQueue(1);
+        queue.add(callback(ADDRESS, 0, 1), false);
+        queue.add(callback(ADDRESS, 0, 2), false);
+
+        StringBuilder sb = new StringBuilder();
+        queue.dump(sb);
+        assertThat(sb.toString()).contains("rejected: 1");
+    }
+
+    private static CallbackInfo callback(String address, int status, int handle) {
+        return new CallbackInfo.Builder(address, status).setHandle(handle).build();
+    }
+}
@@ -163,6 +163,26 @@ public class ContextMapTest {
         assertThat(contextMap.getConnectedMap()).isEmpty();
     }
 
+    @Test
+    public void lookups_followIdAssignmentAndRemoval() {
+        ContextMap<IBluetoothGattCallback> contextMap = new ContextMap<>();
+        App app = contextMap.add(RANDOM_UUID1, mMockCallback, mAdapterService);
+        assertThat(contextMap.getById(APP_ID1)).isNull();
+
+        app.id = APP_ID1;
+        assertThat(contextMap.getById(APP_ID1)).isSameInstanceAs(app);
+
+        contextMap.addConnection(APP_ID1, CONN_ID1, ADDRESS1);
+        assertThat(contextMap.getByConnId(CONN_ID1)).isSameInstanceAs(app);
+        assertThat(contextMap.connIdByAddress(APP_ID1, ADDRESS1.toLowerCase())).isEqualTo(CONN_ID1);
+
+        contextMap.remove(APP_ID1);
+        assertThat(contextMap.getById(APP_ID1)).isNull();
+        assertThat(contextMap.getByUuid(RANDOM_UUID1)).isNull();
+        assertThat(contextMap.getByConnId(CONN_ID1)).isNull();
+        assertThat(contextMap.addressByConnId(CONN_ID1)).isNull();
+    }
+
     @Test
     public void testDump_doesNotCrash() throws Exception {
         StringBuilder sb = new StringBuilder();
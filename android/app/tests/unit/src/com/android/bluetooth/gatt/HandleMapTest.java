@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.gatt;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/** Test cases for {@link HandleMap}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class HandleMapTest {
+    private static final int SERVER_IF = 5;
+    private static final int OTHER_SERVER_IF = 6;
+    private static final UUID SERVICE_UUID = UUID.randomUUID();
+    private static final UUID CHAR_UUID = UUID.randomUUID();
+    private static final UUID DESC_UUID = UUID.randomUUID();
+
+    @Test
+    public void addService_entriesFoundByHandle() {
+        HandleMap handleMap = getMapWithService(SERVER_IF, 40);
+
+        assertThat(handleMap.getByHandle(40).type).isEqualTo(HandleMap.TYPE_SERVICE);
+        assertThat(handleMap.getByHandle(42).type).isEqualTo(HandleMap.TYPE_CHARACTERISTIC);
+        HandleMap.Entry descriptor = handleMap.getByHandle(43);
+        assertThat(descriptor.type).isEqualTo(HandleMap.TYPE_DESCRIPTOR);
+        assertThat(descriptor.charHandle).isEqualTo(42);
+        assertThat(descriptor.serviceHandle).isEqualTo(40);
+        assertThat(handleMap.getByHandle(44)).isNull();
+        assertThat(handleMap.checkServiceExists(SERVICE_UUID, 40)).isTrue();
+        assertThat(handleMap.checkServiceExists(CHAR_UUID, 42)).isFalse();
+    }
+
+    @Test
+    public void setStarted_onlyForMatchingService() {
+        HandleMap handleMap = getMapWithService(SERVER_IF, 40);
+
+        handleMap.setStarted(OTHER_SERVER_IF, 40, true);
+        assertThat(handleMap.getByHandle(40).started).isFalse();
+        handleMap.setStarted(SERVER_IF, 42, true);
+        assertThat(handleMap.getByHandle(42).started).isFalse();
+        handleMap.setStarted(SERVER_IF, 40, true);
+        assertThat(handleMap.getByHandle(40).started).isTrue();
+    }
+
+    @Test
+    public void deleteService_removesOnlyItsAttributes() {
+        HandleMap handleMap = getMapWithService(SERVER_IF, 40);
+        handleMap.addService(OTHER_SERVER_IF, 10, SERVICE_UUID, 0, 0, false);
+
+        handleMap.deleteService(OTHER_SERVER_IF, 40);
+        assertThat(handleMap.getEntries()).hasSize(4);
+
+        handleMap.deleteService(SERVER_IF, 40);
+        assertThat(handleMap.getByHandle(40)).isNull();
+        assertThat(handleMap.getByHandle(42)).isNull();
+        assertThat(handleMap.getByHandle(43)).isNull();
+        assertThat(handleMap.getEntries()).hasSize(1);
+    }
+
+    @Test
+    public void getEntries_orderedByHandle() {
+        HandleMap handleMap = getMapWithService(SERVER_IF, 40);
+        handleMap.addService(OTHER_SERVER_IF, 10, SERVICE_UUID, 0, 0, false);
+
+        assertThat(
+                        handleMap.getEntries().stream()
+                                .map(entry -> entry.handle)
+                                .collect(Collectors.toList()))
+                .containsExactly(10, 40, 42, 43)
+                .inOrder();
+    }
+
+    @Test
+    public void getEntries_reusesSnapshotUntilChanged() {
+        HandleMap handleMap = getMapWithService(SERVER_IF, 40);
+        List<HandleMap.Entry> entries = handleMap.getEntries();
+        assertThat(handleMap.getEntries()).isSameInstanceAs(entries);
+
+        handleMap.addService(OTHER_SERVER_IF, 10, SERVICE_UUID, 0, 0, false);
+        assertThat(handleMap.getEntries()).hasSize(4);
+        assertThat(entries).hasSize(3);
+
+        handleMap.deleteService(SERVER_IF, 40);
+        assertThat(handleMap.getEntries()).hasSize(1);
+    }
+
+    @Test
+    public void testDump_doesNotCrash() {
+        StringBuilder sb = new StringBuilder();
+        getMapWithService(SERVER_IF, 40).dump(sb);
+    }
+
+    private static HandleMap getMapWithService(int serverIf, int serviceHandle) {
+        HandleMap handleMap = new HandleMap();
+        handleMap.addService(serverIf, serviceHandle, SERVICE_UUID, 0, 0, false);
+        handleMap.addCharacteristic(serverIf, serviceHandle + 2, CHAR_UUID, serviceHandle);
+        handleMap.addDescriptor(serverIf, serviceHandle + 3, DESC_UUID, serviceHandle);
+        return handleMap;
+    }
+}
@@ -20,9 +20,11 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -341,6 +343,92 @@ public class AtPhonebookTest {
         verify(mNativeInterface).atResponseString(mTestDevice, expected);
     }
 
+    @Test
+    public void processCpbrCommand_withMissedCalls_looksUpEachNumberOnce() {
+        Cursor mockCursorOne = mock(Cursor.class);
+        when(mockCursorOne.getCount()).thenReturn(3);
+        when(mockCursorOne.getColumnIndexOrThrow(CallLog.Calls.NUMBER)).thenReturn(1);
+        when(mockCursorOne.getColumnIndexOrThrow(CallLog.Calls.NUMBER_PRESENTATION)).thenReturn(2);
+        String number = "5551212";
+        when(mockCursorOne.getString(1)).thenReturn(number);
+        when(mockCursorOne.getInt(2)).thenReturn(CallLog.Calls.PRESENTATION_ALLOWED);
+        when(mockCursorOne.moveToNext()).thenReturn(true);
+        doReturn(mockCursorOne)
+                .when(mHfpMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any());
+
+        Cursor mockCursorTwo = mock(Cursor.class);
+        when(mockCursorTwo.moveToFirst()).thenReturn(true);
+        String name = "Name";
+        when(mockCursorTwo.getString(0)).thenReturn(name);
+        doReturn(mockCursorTwo)
+                .when(mHfpMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+
+        mAtPhonebook.mCurrentPhonebook = "MC";
+        mAtPhonebook.mCpbrIndex1 = 1;
+        mAtPhonebook.mCpbrIndex2 = 3;
+
+        mAtPhonebook.processCpbrCommand(mTestDevice);
+        mAtPhonebook.processCpbrCommand(mTestDevice);
+
+        verify(mHfpMethodProxy, times(1))
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+        verify(mNativeInterface, times(2))
+                .atResponseString(
+                        mTestDevice,
+                        "+CPBR: 3,\""
+                                + number
+                                + "\","
+                                + PhoneNumberUtils.toaFromString(number)
+                                + ",\""
+                                + name
+                                + "\"\r\n\r\n");
+
+        mAtPhonebook.clearCallerNames();
+        mAtPhonebook.processCpbrCommand(mTestDevice);
+
+        verify(mHfpMethodProxy, times(2))
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+        mAtPhonebook.cleanup();
+    }
+
+    @Test
+    public void processCpbrCommand_contactsChangedDuringLookup_doesNotCacheName() {
+        Cursor mockCursorOne = mock(Cursor.class);
+        when(mockCursorOne.getCount()).thenReturn(3);
+        when(mockCursorOne.getColumnIndexOrThrow(CallLog.Calls.NUMBER)).thenReturn(1);
+        when(mockCursorOne.getColumnIndexOrThrow(CallLog.Calls.NUMBER_PRESENTATION)).thenReturn(2);
+        String number = "5551212";
+        when(mockCursorOne.getString(1)).thenReturn(number);
+        when(mockCursorOne.getInt(2)).thenReturn(CallLog.Calls.PRESENTATION_ALLOWED);
+        when(mockCursorOne.moveToNext()).thenReturn(true);
+        doReturn(mockCursorOne)
+                .when(mHfpMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any());
+
+        Cursor mockCursorTwo = mock(Cursor.class);
+        when(mockCursorTwo.moveToFirst()).thenReturn(true);
+        when(mockCursorTwo.getString(0)).thenReturn("Name");
+        // The contacts change while the name is looked up.
+        doAnswer(
+                        invocation -> {
+                            mAtPhonebook.clearCallerNames();
+                            return mockCursorTwo;
+                        })
+                .when(mHfpMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+
+        mAtPhonebook.mCurrentPhonebook = "MC";
+        mAtPhonebook.mCpbrIndex1 = 1;
+        mAtPhonebook.mCpbrIndex2 = 3;
+
+        mAtPhonebook.processCpbrCommand(mTestDevice);
+
+        assertThat(mAtPhonebook.mCallerNames).isEmpty();
+        mAtPhonebook.cleanup();
+    }
+
     @Test
     public void processCpbrCommand_doesNotCrashWithEncodingNeededNumber() {
         final String encodingNeededNumber = "###0102124";
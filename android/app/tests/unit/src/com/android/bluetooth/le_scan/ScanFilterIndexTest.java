@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.le_scan;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/** Test cases for {@link ScanFilterIndex}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ScanFilterIndexTest {
+    private static final String ADDRESS = "00:01:02:03:04:05";
+    private static final String OTHER_ADDRESS = "00:01:02:03:04:06";
+    private static final ParcelUuid UUID_1 =
+            ParcelUuid.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final ParcelUuid UUID_2 =
+            ParcelUuid.fromString("0000fef3-0000-1000-8000-00805f9b34fb");
+    private static final ScanSettings SETTINGS = new ScanSettings.Builder().build();
+
+    @Test
+    public void clientWithoutFilters_isAlwaysCandidate() {
+        ScanClient client = new ScanClient(1, SETTINGS, null);
+        Set<ScanClient> clients = Set.of(client);
+        ScanFilterIndex index = new ScanFilterIndex(clients);
+
+        Set<ScanClient> candidates = index.getCandidates(buildResult(ADDRESS, new byte[0]), null);
+
+        assertThat(index.isCurrent(clients)).isTrue();
+        assertThat(index.isCandidate(client, candidates)).isTrue();
+    }
+
+    @Test
+    public void addressFilter_matchesDeviceAndOriginalAddress() {
+        ScanClient client =
+                new ScanClient(
+                        1,
+                        SETTINGS,
+                        List.of(new ScanFilter.Builder().setDeviceAddress(ADDRESS).build()));
+        ScanFilterIndex index = new ScanFilterIndex(Set.of(client));
+
+        assertThat(
+                        index.isCandidate(
+                                client,
+                                index.getCandidates(buildResult(ADDRESS, new byte[0]), null)))
+                .isTrue();
+        assertThat(
+                        index.isCandidate(
+                                client,
+                                index.getCandidates(
+                                        buildResult(OTHER_ADDRESS, new byte[0]),
+                                        ADDRESS.toLowerCase())))
+                .isTrue();
+        assertThat(
+                        index.isCandidate(
+                                client,
+                                index.getCandidates(buildResult(OTHER_ADDRESS, new byte[0]), null)))
+                .isFalse();
+    }
+
+    @Test
+    public void serviceUuidFilter_onlyCandidateWhenUuidAdvertised() {
+        ScanClient client =
+                new ScanClient(
+                        1,
+                        SETTINGS,
+                        List.of(new ScanFilter.Builder().setServiceUuid(UUID_1).build()));
+        ScanFilterIndex index = new ScanFilterIndex(Set.of(client));
+
+        assertThat(
+                        index.isCandidate(
+                                client,
+                                index.getCandidates(
+                                        buildResult(ADDRESS, serviceUuidAd(UUID_1)), null)))
+                .isTrue();
+        assertThat(
+                        index.isCandidate(
+                                client,
+                                index.getCandidates(
+                                        buildResult(ADDRESS, serviceUuidAd(UUID_2)), null)))
+                .isFalse();
+    }
+
+    @Test
+    public void isCurrent_falseAfterClientChanges() {
+        ScanClient client = new ScanClient(1, SETTINGS, null);
+        ScanFilterIndex index = new ScanFilterIndex(Set.of(client));
+
+        assertThat(index.isCurrent(Set.of(client, new ScanClient(2, SETTINGS, null)))).isFalse();
+
+        client.filters = List.of(new ScanFilter.Builder().setServiceUuid(UUID_1).build());
+        assertThat(index.isCurrent(Set.of(client))).isFalse();
+        // A stale client is still checked against its filters.
+        assertThat(index.isCandidate(client, new HashSet<>())).isTrue();
+    }
+
+    @Test
+    public void manyFilters_sameResultsAsLinearMatching() {
+        Random random = new Random(1234);
+        List<ScanClient> clients = new ArrayList<>();
+        for (int id = 0; id < 40; id++) {
+            List<ScanFilter> filters = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                filters.add(randomFilter(random));
+            }
+            clients.add(new ScanClient(id, SETTINGS, filters));
+        }
+        clients.add(new ScanClient(40, SETTINGS, null));
+        ScanFilterIndex index = new ScanFilterIndex(clients);
+
+        for (int i = 0; i < 500; i++) {
+            ScanResult result = buildResult(randomAddress(random), randomAdvertisement(random));
+            Set<ScanClient> candidates = index.getCandidates(result, null);
+            for (ScanClient client : clients) {
+                boolean expected = linearMatch(client, result);
+                boolean actual =
+                        index.isCandidate(client, candidates) && linearMatch(client, result);
+                assertThat(actual).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static boolean linearMatch(ScanClient client, ScanResult result) {
+        if (client.filters == null || client.filters.isEmpty()) {
+            return true;
+        }
+        for (ScanFilter filter : client.filters) {
+            if (filter.matches(result)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ScanFilter randomFilter(Random random) {
+        ScanFilter.Builder builder = new ScanFilter.Builder();
+        switch (random.nextInt(5)) {
+            case 0:
+                builder.setDeviceAddress(randomAddress(random));
+                break;
+            case 1:
+                builder.setManufacturerData(random.nextInt(4), new byte[] {0x01});
+                break;
+            case 2:
+                builder.setServiceData(random.nextBoolean() ? UUID_1 : UUID_2, new byte[0]);
+                break;
+            case 3:
+                builder.setServiceUuid(random.nextBoolean() ? UUID_1 : UUID_2);
+                break;
+            default:
+                builder.setDeviceName("name" + random.nextInt(2));
+                break;
+        }
+        return builder.build();
+    }
+
+    private static String randomAddress(Random random) {
+        return String.format("00:01:02:03:04:%02X", random.nextInt(4));
+    }
+
+    private static byte[] randomAdvertisement(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return new byte[] {0x04, (byte) 0xFF, (byte) random.nextInt(4), 0x00, 0x01};
+            case 1:
+                return new byte[] {
+                    0x03, 0x16, random.nextBoolean() ? (byte) 0x0D : (byte) 0xF3,
+                    random.nextBoolean() ? (byte) 0x18 : (byte) 0xFE
+                };
+            case 2:
+                return serviceUuidAd(random.nextBoolean() ? UUID_1 : UUID_2);
+            case 3:
+                byte suffix = (byte) ('0' + random.nextInt(2));
+                return new byte[] {0x06, 0x09, 'n', 'a', 'm', 'e', suffix};
+            default:
+                return new byte[0];
+        }
+    }
+
+    private static byte[] serviceUuidAd(ParcelUuid uuid) {
+        long bits = uuid.getUuid().getMostSignificantBits() >>> 32;
+        return new byte[] {0x03, 0x03, (byte) bits, (byte) (bits >> 8)};
+    }
+
+    private static ScanResult buildResult(String address, byte[] advData) {
+        BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
+        return new ScanResult(device, ScanRecord.parseFromBytes(advData), 0, 0);
+    }
+}
@@ -36,6 +36,7 @@ import static com.android.bluetooth.le_scan.ScanManager.SCAN_MODE_SCREEN_OFF_LOW
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -43,6 +44,7 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -52,6 +54,7 @@ import static org.mockito.Mockito.when;
 
 import android.app.ActivityManager;
 import android.app.AlarmManager;
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothProfile;
 import android.bluetooth.BluetoothProtoEnums;
 import android.bluetooth.le.ScanFilter;
@@ -97,6 +100,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
@@ -1746,6 +1750,115 @@ public class ScanManagerTest {
         assertThat(capturedRadioScanDuration7).isAtLeast(scanTestDuration);
     }
 
+    @Test
+    public void testStartScanWithFilters_programsFiltersWithSingleWait() {
+        List<ScanFilter> scanFilterList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scanFilterList.add(new ScanFilter.Builder().setDeviceName("TestName" + i).build());
+        }
+        ScanSettings scanSettings = createScanSettings(SCAN_MODE_LOW_POWER, false, false);
+        ScanClient client =
+                new ScanClient(0, scanSettings, scanFilterList, Binder.getCallingUid());
+        client.stats = mMockAppScanStats;
+        client.stats.recordScanStart(scanSettings, scanFilterList, true, false, 0);
+        sendMessageWaitForProcessed(createScreenOnOffMessage(true));
+        Mockito.clearInvocations(mScanNativeInterface);
+
+        sendMessageWaitForProcessed(createStartStopScanMessage(true, client));
+
+        // Enable, then a filter and its parameters per scan filter, all awaited together.
+        InOrder order = inOrder(mScanNativeInterface);
+        order.verify(mScanNativeInterface).resetCountDownLatch(7);
+        order.verify(mScanNativeInterface).gattClientScanFilterEnable(0, true);
+        for (int i = 0; i < 3; i++) {
+            order.verify(mScanNativeInterface).gattClientScanFilterAdd(eq(0), any(), anyInt());
+            order.verify(mScanNativeInterface).gattClientScanFilterParamAdd(any());
+        }
+        order.verify(mScanNativeInterface).waitForCallback(anyInt());
+        verify(mScanNativeInterface, times(1)).waitForCallback(anyInt());
+        Mockito.clearInvocations(mScanNativeInterface);
+
+        sendMessageWaitForProcessed(createStartStopScanMessage(false, client));
+
+        verify(mScanNativeInterface).resetCountDownLatch(3);
+        verify(mScanNativeInterface, times(3)).gattClientScanFilterParamDelete(eq(0), anyInt());
+        verify(mScanNativeInterface, times(1)).waitForCallback(anyInt());
+    }
+
+    @Test
+    public void testStartScanWithFilters_missingCompletion_timesOutOnceCompletionsStop() {
+        ScanClient client = createScanClient(0, true, SCAN_MODE_LOW_POWER);
+        sendMessageWaitForProcessed(createScreenOnOffMessage(true));
+        Mockito.clearInvocations(mScanNativeInterface);
+        doReturn(false).when(mScanNativeInterface).waitForCallback(anyInt());
+        // Completions arrive during the first wait, then the last one is missing.
+        doReturn(1L).when(mScanNativeInterface).getPendingCallbackCount();
+
+        sendMessageWaitForProcessed(createStartStopScanMessage(true, client));
+
+        verify(mScanNativeInterface, times(2)).waitForCallback(anyInt());
+
+        // A late completion of the timed out batch is not counted for the next operations.
+        mScanManager.callbackDone(0, 0);
+        verify(mScanNativeInterface, never()).callbackDone();
+    }
+
+    @Test
+    public void testStartScanWithSameFilter_sharesFilterIndexAcrossClients() {
+        // More clients than the available filter indices, all using the same filter.
+        final int numOfClients = DEFAULT_NUM_OFFLOAD_SCAN_FILTER + 4;
+        sendMessageWaitForProcessed(createScreenOnOffMessage(true));
+        List<ScanClient> clients = new ArrayList<>();
+        for (int i = 0; i < numOfClients; i++) {
+            ScanClient client = createScanClient(i, true, SCAN_MODE_LOW_POWER);
+            clients.add(client);
+            sendMessageWaitForProcessed(createStartStopScanMessage(true, client));
+        }
+
+        verify(mScanNativeInterface, times(1)).gattClientScanFilterAdd(anyInt(), any(), anyInt());
+        verify(mScanNativeInterface, times(1)).gattClientScanFilterParamAdd(any());
+
+        for (int i = 0; i < numOfClients - 1; i++) {
+            sendMessageWaitForProcessed(createStartStopScanMessage(false, clients.get(i)));
+        }
+        verify(mScanNativeInterface, never()).gattClientScanFilterParamDelete(anyInt(), anyInt());
+
+        sendMessageWaitForProcessed(
+                createStartStopScanMessage(false, clients.get(numOfClients - 1)));
+        verify(mScanNativeInterface, times(1))
+                .gattClientScanFilterParamDelete(eq(numOfClients - 1), anyInt());
+    }
+
+    @Test
+    public void testStartScanWithSameAddressOfOtherType_doesNotShareFilterIndex() {
+        sendMessageWaitForProcessed(createScreenOnOffMessage(true));
+        String address = "F0:11:22:33:44:55";
+        ScanFilter publicFilter =
+                new ScanFilter.Builder()
+                        .setDeviceAddress(address, BluetoothDevice.ADDRESS_TYPE_PUBLIC)
+                        .build();
+        ScanFilter randomFilter =
+                new ScanFilter.Builder()
+                        .setDeviceAddress(address, BluetoothDevice.ADDRESS_TYPE_RANDOM)
+                        .build();
+        // Equal for ScanFilter#equals, but programmed with a different address type.
+        assertThat(publicFilter).isEqualTo(randomFilter);
+
+        List<ScanFilter> filters = List.of(publicFilter, randomFilter);
+        for (int i = 0; i < filters.size(); i++) {
+            ScanClient client =
+                    new ScanClient(
+                            i,
+                            createScanSettings(SCAN_MODE_LOW_POWER, false, false),
+                            List.of(filters.get(i)),
+                            Binder.getCallingUid());
+            client.stats = mMockAppScanStats;
+            sendMessageWaitForProcessed(createStartStopScanMessage(true, client));
+        }
+
+        verify(mScanNativeInterface, times(2)).gattClientScanFilterParamAdd(any());
+    }
+
     @Test
     public void testMetricsScanRadioDurationScreenOn() {
         // Set filtered scan flag
@@ -157,10 +157,17 @@ public class TransitionalScanHelperTest {
 
     @Test
     public void testParseBatchTimestamp() {
-        long timestampNanos = mScanHelper.parseTimestampNanos(new byte[] {-54, 7});
+        // Little endian {0xCA, 0x07} in the batch buffer
+        long timestampNanos = TransitionalScanHelper.parseTimestampNanos((short) 0x07CA);
         assertThat(timestampNanos).isEqualTo(99700000000L);
     }
 
+    @Test
+    public void testParseBatchTimestamp_isUnsigned() {
+        long timestampNanos = TransitionalScanHelper.parseTimestampNanos((short) 0xFFFF);
+        assertThat(timestampNanos).isEqualTo(65535 * 50_000_000L);
+    }
+
     @Test
     public void continuePiStartScan() {
         int scannerId = 1;
@@ -59,14 +59,17 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -2087,6 +2090,132 @@ public class BluetoothMapContentObserverTest {
                 mObserver.getMsgListSms().get(TEST_HANDLE_ONE).flagRead, TEST_READ_FLAG_ONE);
     }
 
+    @Test
+    public void handleMsgListChangesSms_withExistingMessage_onlyQueriesShortProjection() {
+        MatrixCursor cursor =
+                new MatrixCursor(new String[] {Sms._ID, Sms.TYPE, Sms.THREAD_ID, Sms.READ});
+        cursor.addRow(
+                new Object[] {
+                    TEST_HANDLE_ONE, TEST_SMS_TYPE_ALL, TEST_THREAD_ID, TEST_READ_FLAG_ONE
+                });
+        doReturn(cursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+
+        Map<Long, BluetoothMapContentObserver.Msg> map = new HashMap<>();
+        BluetoothMapContentObserver.Msg msg =
+                new BluetoothMapContentObserver.Msg(
+                        TEST_HANDLE_ONE, TEST_SMS_TYPE_ALL, TEST_THREAD_ID, TEST_READ_FLAG_ZERO);
+        map.put(TEST_HANDLE_ONE, msg);
+        mObserver.setMsgListSms(map, true);
+        mObserver.mMapEventReportVersion = BluetoothMapUtils.MAP_EVENT_REPORT_V12;
+
+        mObserver.handleMsgListChangesSms();
+
+        verify(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(Sms.CONTENT_URI),
+                        eq(BluetoothMapContentObserver.SMS_PROJECTION_SHORT),
+                        any(),
+                        any(),
+                        any());
+        verify(mMapMethodProxy, never())
+                .contentResolverQuery(
+                        any(),
+                        any(),
+                        eq(BluetoothMapContentObserver.SMS_PROJECTION_SHORT_EXT),
+                        any(),
+                        any(),
+                        any());
+        Assert.assertEquals(
+                mObserver.getMsgListSms().get(TEST_HANDLE_ONE).flagRead, TEST_READ_FLAG_ONE);
+    }
+
+    @Test
+    public void handleMsgListChangesSms_withNewMessage_queriesDetailsOfNewMessagesOnly() {
+        MatrixCursor listCursor =
+                new MatrixCursor(new String[] {Sms._ID, Sms.TYPE, Sms.THREAD_ID, Sms.READ});
+        listCursor.addRow(
+                new Object[] {
+                    TEST_HANDLE_TWO, TEST_SMS_TYPE_ALL, TEST_THREAD_ID, TEST_READ_FLAG_ONE
+                });
+        doReturn(listCursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(Sms.CONTENT_URI),
+                        eq(BluetoothMapContentObserver.SMS_PROJECTION_SHORT),
+                        any(),
+                        any(),
+                        any());
+        MatrixCursor detailCursor =
+                new MatrixCursor(
+                        new String[] {
+                            Sms._ID,
+                            Sms.TYPE,
+                            Sms.THREAD_ID,
+                            Sms.READ,
+                            Sms.DATE,
+                            Sms.BODY,
+                            Sms.ADDRESS
+                        });
+        detailCursor.addRow(
+                new Object[] {
+                    TEST_HANDLE_TWO,
+                    TEST_SMS_TYPE_ALL,
+                    TEST_THREAD_ID,
+                    TEST_READ_FLAG_ONE,
+                    TEST_DATE_MS,
+                    "",
+                    null
+                });
+        doReturn(detailCursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(Sms.CONTENT_URI),
+                        eq(BluetoothMapContentObserver.SMS_PROJECTION_SHORT_EXT),
+                        any(),
+                        any(),
+                        any());
+        when(mClient.isConnected()).thenReturn(true);
+        when(mTelephonyManager.getLine1Number()).thenReturn("");
+
+        mObserver.setMsgListSms(new HashMap<>(), true);
+        mObserver.mMapEventReportVersion = BluetoothMapUtils.MAP_EVENT_REPORT_V12;
+
+        mObserver.handleMsgListChangesSms();
+
+        verify(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(Sms.CONTENT_URI),
+                        eq(BluetoothMapContentObserver.SMS_PROJECTION_SHORT_EXT),
+                        eq(Sms._ID + " >= " + TEST_HANDLE_TWO),
+                        any(),
+                        any());
+        ArgumentCaptor<byte[]> eventCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mClient).sendEvent(eventCaptor.capture(), eq(TEST_ID));
+        String event = new String(eventCaptor.getValue(), StandardCharsets.UTF_8);
+        Assert.assertTrue(
+                event.contains("type=\"" + BluetoothMapContentObserver.EVENT_TYPE_NEW + "\""));
+        Assert.assertTrue(
+                event.contains(
+                        "datetime=\""
+                                + BluetoothMapUtils.getDateTimeString(TEST_DATE_MS)
+                                + "\""));
+        Assert.assertEquals(mObserver.getMsgListSms().get(TEST_HANDLE_TWO).id, TEST_HANDLE_TWO);
+    }
+
+    @Test
+    public void getNewMsgsSelection_selectsFromOldestNewMessage() {
+        Assert.assertEquals(
+                BluetoothMapContentObserver.getNewMsgsSelection(
+                        Sms._ID, Arrays.asList(7L, 3L, 12L)),
+                Sms._ID + " >= 3");
+    }
+
     @Test
     public void handleMmsSendIntent_withMnsClientNotConnected() {
         when(mClient.isConnected()).thenReturn(false);
@@ -31,11 +31,15 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 @RunWith(AndroidJUnit4.class)
 public class BluetoothMapMessageListingTest {
@@ -108,6 +112,59 @@ public class BluetoothMapMessageListingTest {
         assertThat(mListing.getList().get(2).getDateTime()).isEqualTo(TEST_DATE_TIME_EARLIEST);
     }
 
+    @Test
+    public void sortAndSegment_sameAsSortThenSegment() {
+        Random random = new Random(1234);
+        for (int round = 0; round < 20; round++) {
+            // A few date ordered runs, as added by each message type, with equal dates
+            List<BluetoothMapMessageListingElement> elements = new ArrayList<>();
+            int runCount = 1 + random.nextInt(4);
+            for (int run = 0; run < runCount; run++) {
+                long dateTime = 100;
+                for (int i = random.nextInt(20); i > 0; i--) {
+                    dateTime -= random.nextInt(3);
+                    BluetoothMapMessageListingElement element =
+                            new BluetoothMapMessageListingElement();
+                    element.setDateTime(dateTime);
+                    elements.add(element);
+                }
+            }
+            int count = random.nextInt(elements.size() + 2);
+            int offset = random.nextInt(elements.size() + 2);
+
+            BluetoothMapMessageListing expected = new BluetoothMapMessageListing();
+            BluetoothMapMessageListing listing = new BluetoothMapMessageListing();
+            for (BluetoothMapMessageListingElement element : elements) {
+                expected.add(element);
+                listing.add(element);
+            }
+            expected.sort();
+            expected.segment(count, offset);
+            listing.sortAndSegment(count, offset);
+
+            assertThat(listing.getList()).containsExactlyElementsIn(expected.getList()).inOrder();
+        }
+    }
+
+    @Test
+    public void sortAndSegment_withUnorderedElements() {
+        mListing.sortAndSegment(2, 1);
+
+        assertThat(mListing.getList())
+                .containsExactly(
+                        mListingElementMiddleWithReadFalse, mListingElementEarliestWithReadFalse)
+                .inOrder();
+    }
+
+    @Test
+    public void encodeToStream_sameAsEncodeToBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        mListing.encode(out, false, TEST_VERSION);
+
+        assertThat(out.toByteArray()).isEqualTo(mListing.encode(false, TEST_VERSION));
+    }
+
     @Test
     public void encodeToXml_thenAppendFromXml() throws Exception {
         final BluetoothMapMessageListing listingToAppend = new BluetoothMapMessageListing();
@@ -20,9 +20,14 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.notNull;
+import static org.mockito.Mockito.verify;
 
 import android.content.ContentResolver;
 import android.database.MatrixCursor;
+import android.provider.Telephony.CanonicalAddressesColumns;
 
 import androidx.test.filters.SmallTest;
 import androidx.test.runner.AndroidJUnit4;
@@ -101,6 +106,33 @@ public class SmsMmsContactsTest {
         assertThat(mContacts.getPhoneNumber(mResolver, TEST_ID)).isEqualTo(TEST_PHONE_NUMBER);
     }
 
+    @Test
+    public void getPhoneNumber_withMissingId_onlyQueriesThatId() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {"COL_ADDR_ID", "COL_ADDR_ADDR"});
+        cursor.addRow(new Object[] {TEST_ID, TEST_PHONE_NUMBER});
+        doReturn(cursor)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(any(), any(), any(), isNull(), any(), any());
+        mContacts.fillPhoneCache(mResolver);
+        doReturn(null)
+                .when(mMapMethodProxy)
+                .contentResolverQuery(any(), any(), any(), notNull(), any(), any());
+
+        assertThat(mContacts.getPhoneNumber(mResolver, TEST_ID + 1)).isNull();
+        assertThat(mContacts.getPhoneNumber(mResolver, TEST_ID + 1)).isNull();
+        assertThat(mContacts.getPhoneNumber(mResolver, TEST_ID)).isEqualTo(TEST_PHONE_NUMBER);
+
+        verify(mMapMethodProxy).contentResolverQuery(any(), any(), any(), isNull(), any(), any());
+        verify(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        any(),
+                        any(),
+                        eq(CanonicalAddressesColumns._ID + " = " + (TEST_ID + 1)),
+                        any(),
+                        any());
+    }
+
     @Test
     public void fillPhoneCache_withNonNullPhoneNumbers() {
         MatrixCursor cursor = new MatrixCursor(new String[] {"COL_ADDR_ID", "COL_ADDR_ADDR"});
@@ -208,4 +240,18 @@ public class SmsMmsContactsTest {
         assertThat(mContacts.getContactNameFromPhone(TEST_PHONE, mResolver, nonMatchingFilter))
                 .isNull();
     }
+
+    @Test
+    public void names_leastRecentlyUsedEvictedWhenFull() {
+        for (int i = 0; i < SmsMmsContacts.MAX_CACHED_NAMES; i++) {
+            mContacts.mNames.put(TEST_PHONE + i, MapContact.create(i, TEST_NAME));
+        }
+        mContacts.mNames.get(TEST_PHONE + 0);
+
+        mContacts.mNames.put(TEST_PHONE, MapContact.create(TEST_ID, TEST_NAME));
+
+        assertThat(mContacts.mNames).hasSize(SmsMmsContacts.MAX_CACHED_NAMES);
+        assertThat(mContacts.mNames).containsKey(TEST_PHONE + 0);
+        assertThat(mContacts.mNames).doesNotContainKey(TEST_PHONE + 1);
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.ContentResolver;
+import android.database.MatrixCursor;
+import android.provider.ContactsContract;
+import android.provider.Telephony;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.List;
+
+/** Test cases for {@link SmsMmsListingResolver}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class SmsMmsListingResolverTest {
+    private static final long TEST_ID = 1;
+    private static final String TEST_NAME = "test_name";
+    private static final String TEST_PHONE = "test_phone";
+    private static final String TEST_OTHER_PHONE = "test_other_phone";
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock private ContentResolver mResolver;
+    @Spy private BluetoothMethodProxy mMapMethodProxy = BluetoothMethodProxy.getInstance();
+
+    private SmsMmsListingResolver mListingResolver;
+
+    @Before
+    public void setUp() {
+        BluetoothMethodProxy.setInstanceForTesting(mMapMethodProxy);
+        mListingResolver = new SmsMmsListingResolver(mResolver);
+    }
+
+    @After
+    public void tearDown() {
+        BluetoothMethodProxy.setInstanceForTesting(null);
+    }
+
+    @Test
+    public void getContactName_queriedOncePerPhone() {
+        doAnswer(
+                        invocation -> {
+                            MatrixCursor cursor =
+                                    new MatrixCursor(
+                                            new String[] {
+                                                ContactsContract.Contacts._ID,
+                                                ContactsContract.Contacts.DISPLAY_NAME
+                                            });
+                            cursor.addRow(new Object[] {TEST_ID, TEST_NAME});
+                            return cursor;
+                        })
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(), any(), eq(SmsMmsContacts.CONTACT_PROJECTION), any(), any(), any());
+
+        assertThat(mListingResolver.getContactName(TEST_PHONE)).isEqualTo(TEST_NAME);
+        assertThat(mListingResolver.getContactName(TEST_PHONE)).isEqualTo(TEST_NAME);
+        assertThat(mListingResolver.getContactName(TEST_OTHER_PHONE)).isEqualTo(TEST_NAME);
+        assertThat(mListingResolver.getContactName("")).isNull();
+
+        verify(mMapMethodProxy, times(2))
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void getMmsAddress_queriedOncePerMessageAndType() {
+        doAnswer(
+                        invocation -> {
+                            MatrixCursor cursor =
+                                    new MatrixCursor(new String[] {Telephony.Mms.Addr.ADDRESS});
+                            cursor.addRow(new Object[] {TEST_PHONE});
+                            return cursor;
+                        })
+                .when(mMapMethodProxy)
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(mListingResolver.getMmsAddress(TEST_ID, BluetoothMapContent.MMS_FROM))
+                    .isEqualTo(TEST_PHONE);
+            assertThat(mListingResolver.getMmsAddress(TEST_ID, BluetoothMapContent.MMS_TO))
+                    .isEqualTo(TEST_PHONE);
+        }
+
+        verify(mMapMethodProxy, times(2))
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void prefetchCanonicalAddresses_resolvesAllThreadsWithTwoQueries() {
+        doAnswer(
+                        invocation -> {
+                            MatrixCursor cursor =
+                                    new MatrixCursor(
+                                            SmsMmsListingResolver.THREAD_RECIPIENTS_PROJECTION);
+                            cursor.addRow(new Object[] {1, "10 11"});
+                            cursor.addRow(new Object[] {2, "11"});
+                            return cursor;
+                        })
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        any(),
+                        eq(SmsMmsListingResolver.THREAD_RECIPIENTS_PROJECTION),
+                        any(),
+                        any(),
+                        any());
+        doAnswer(
+                        invocation -> {
+                            MatrixCursor cursor =
+                                    new MatrixCursor(SmsMmsContacts.ADDRESS_PROJECTION);
+                            cursor.addRow(new Object[] {10, TEST_PHONE});
+                            cursor.addRow(new Object[] {11, TEST_OTHER_PHONE});
+                            return cursor;
+                        })
+                .when(mMapMethodProxy)
+                .contentResolverQuery(
+                        any(), any(), eq(SmsMmsContacts.ADDRESS_PROJECTION), any(), any(), any());
+
+        mListingResolver.prefetchCanonicalAddresses(List.of(1, 2, 1));
+
+        assertThat(mListingResolver.getCanonicalAddress(1))
+                .isEqualTo(TEST_PHONE + ";" + TEST_OTHER_PHONE);
+        assertThat(mListingResolver.getCanonicalAddress(2)).isEqualTo(TEST_OTHER_PHONE);
+        verify(mMapMethodProxy, times(2))
+                .contentResolverQuery(any(), any(), any(), any(), any(), any());
+    }
+}
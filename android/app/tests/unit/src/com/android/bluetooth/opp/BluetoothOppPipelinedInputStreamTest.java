@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/** Test cases for {@link BluetoothOppPipelinedInputStream}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BluetoothOppPipelinedInputStreamTest {
+    private static final int BUFFER_SIZE = 64;
+
+    @Test
+    public void read_returnsAllDataInOrder() throws IOException {
+        byte[] data = new byte[BUFFER_SIZE * 10 + 7];
+        new Random(1234).nextBytes(data);
+        BluetoothOppPipelinedInputStream is =
+                new BluetoothOppPipelinedInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] packet = new byte[BUFFER_SIZE + 13];
+        int length;
+        while ((length = is.read(packet, 0, packet.length)) != -1) {
+            result.write(packet, 0, length);
+        }
+        is.close();
+
+        assertThat(result.toByteArray()).isEqualTo(data);
+        assertThat(is.read(packet, 0, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void readFully_fillsPacketsAcrossBuffers() throws IOException {
+        byte[] data = new byte[BUFFER_SIZE * 3];
+        BluetoothOppPipelinedInputStream is =
+                new BluetoothOppPipelinedInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+
+        byte[] packet = new byte[BUFFER_SIZE * 2];
+        assertThat(BluetoothOppObexClientSession.readFully(is, packet, packet.length))
+                .isEqualTo(packet.length);
+        is.close();
+    }
+
+    @Test
+    public void readError_thrownToCaller() throws IOException {
+        InputStream source =
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("File removed");
+                    }
+                };
+        BluetoothOppPipelinedInputStream is =
+                new BluetoothOppPipelinedInputStream(source, BUFFER_SIZE);
+
+        assertThrows(IOException.class, () -> is.read(new byte[10], 0, 10));
+        is.close();
+    }
+
+    @Test
+    public void runtimeReadError_thrownToCaller() throws IOException {
+        InputStream source =
+                new InputStream() {
+                    @Override
+                    public int read() {
+                        throw new IllegalStateException("Provider gone");
+                    }
+                };
+        BluetoothOppPipelinedInputStream is =
+                new BluetoothOppPipelinedInputStream(source, BUFFER_SIZE);
+
+        assertThrows(IOException.class, () -> is.read(new byte[10], 0, 10));
+        is.close();
+    }
+
+    @Test
+    public void close_doesNotCloseSource() throws IOException {
+        InputStream source = mock(InputStream.class);
+        BluetoothOppPipelinedInputStream is =
+                new BluetoothOppPipelinedInputStream(source, BUFFER_SIZE);
+
+        is.close();
+
+        verify(source, never()).close();
+        assertThrows(IOException.class, () -> is.read(new byte[10], 0, 10));
+    }
+}
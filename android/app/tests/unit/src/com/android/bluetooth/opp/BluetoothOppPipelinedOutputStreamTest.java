@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/** Test cases for {@link BluetoothOppPipelinedOutputStream}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BluetoothOppPipelinedOutputStreamTest {
+    private static final int BUFFER_SIZE = 64;
+
+    @Test
+    public void write_thenClose_writesAllDataInOrder() throws IOException {
+        byte[] data = new byte[BUFFER_SIZE * 10 + 7];
+        new Random(1234).nextBytes(data);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        BluetoothOppPipelinedOutputStream os =
+                new BluetoothOppPipelinedOutputStream(target, BUFFER_SIZE);
+
+        // Packets smaller and larger than the buffers
+        int offset = 0;
+        int packetSize = 1;
+        while (offset < data.length) {
+            int length = Math.min(packetSize, data.length - offset);
+            os.write(data, offset, length);
+            offset += length;
+            packetSize = packetSize * 3 % 200 + 1;
+        }
+        os.close();
+
+        assertThat(target.toByteArray()).isEqualTo(data);
+    }
+
+    @Test
+    public void flush_waitsForPendingWrites() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        BluetoothOppPipelinedOutputStream os =
+                new BluetoothOppPipelinedOutputStream(target, BUFFER_SIZE);
+
+        os.write(new byte[10], 0, 10);
+        os.flush();
+
+        assertThat(target.size()).isEqualTo(10);
+        os.close();
+    }
+
+    @Test
+    public void writeError_thrownByFlushAndClose() throws IOException {
+        OutputStream target =
+                new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("No space left");
+                    }
+                };
+        BluetoothOppPipelinedOutputStream os =
+                new BluetoothOppPipelinedOutputStream(target, BUFFER_SIZE);
+
+        os.write(new byte[10], 0, 10);
+
+        assertThrows(IOException.class, os::flush);
+        assertThrows(IOException.class, os::close);
+        assertThrows(IOException.class, () -> os.write(1));
+    }
+
+    @Test
+    public void runtimeWriteError_thrownByFlushAndClose_closesTarget() throws IOException {
+        boolean[] closed = new boolean[1];
+        OutputStream target =
+                new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        throw new IllegalStateException("Provider gone");
+                    }
+
+                    @Override
+                    public void close() {
+                        closed[0] = true;
+                    }
+                };
+        BluetoothOppPipelinedOutputStream os =
+                new BluetoothOppPipelinedOutputStream(target, BUFFER_SIZE);
+
+        os.write(new byte[10], 0, 10);
+
+        assertThrows(IOException.class, os::flush);
+        assertThrows(IOException.class, os::close);
+        assertThat(closed[0]).isTrue();
+    }
+}
@@ -30,8 +30,10 @@ import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.Context;
 import android.database.MatrixCursor;
+import android.net.Uri;
 import android.os.Looper;
 
 import androidx.test.filters.MediumTest;
@@ -52,6 +54,8 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.List;
+
 @MediumTest
 @RunWith(AndroidJUnit4.class)
 public class BluetoothOppServiceTest {
@@ -176,6 +180,66 @@ public class BluetoothOppServiceTest {
         assertThat(mService.mBatches).containsExactly(batch2);
     }
 
+    @Test
+    public void getShareId_onlyForSingleShareUri() {
+        assertThat(BluetoothOppService.getShareId(null)).isEqualTo(-1);
+        assertThat(BluetoothOppService.getShareId(BluetoothShare.CONTENT_URI)).isEqualTo(-1);
+        assertThat(
+                        BluetoothOppService.getShareId(
+                                ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, 12)))
+                .isEqualTo(12);
+        assertThat(
+                        BluetoothOppService.getShareId(
+                                Uri.withAppendedPath(BluetoothShare.CONTENT_URI, "abc")))
+                .isEqualTo(-1);
+        assertThat(BluetoothOppService.getShareId(Uri.parse("content://other/btopp/12")))
+                .isEqualTo(-1);
+    }
+
+    @Test
+    public void updateShares_onlyReloadsGivenShares() {
+        BluetoothOppShareInfo shareInfo = createShareInfo(1);
+        BluetoothOppShareInfo shareInfo2 = createShareInfo(2);
+        BluetoothOppShareInfo shareInfo3 = createShareInfo(3);
+        mService.mShares.clear();
+        mService.mShares.add(shareInfo);
+        mService.mShares.add(shareInfo2);
+        mService.mShares.add(shareInfo3);
+        mService.mBatches.clear();
+
+        MatrixCursor cursor = createShareCursor();
+        cursor.addRow(
+                new Object[] {
+                    1, "content://test/1", "hint", "filename", "mimetype", 0, "AA:BB:CC:DD:EE:FF",
+                    0, 0, 0, 1000L, 100L, 123456789L, 0
+                });
+        doReturn(cursor)
+                .when(mBluetoothMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, 1)),
+                        any(),
+                        any(),
+                        any(),
+                        any());
+        doReturn(createShareCursor())
+                .when(mBluetoothMethodProxy)
+                .contentResolverQuery(
+                        any(),
+                        eq(ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, 2)),
+                        any(),
+                        any(),
+                        any(),
+                        any());
+
+        mService.updateShares(List.of(1, 2));
+
+        assertThat(mService.mShares).containsExactly(shareInfo, shareInfo3).inOrder();
+        assertThat(shareInfo.mCurrentBytes).isEqualTo(100L);
+        assertThat(shareInfo.mTotalBytes).isEqualTo(1000L);
+        assertThat(shareInfo3.mCurrentBytes).isEqualTo(0L);
+    }
+
     @Test
     public void dump_shouldNotThrow() {
         BluetoothOppShareInfo info = mock(BluetoothOppShareInfo.class);
@@ -228,4 +292,42 @@ public class BluetoothOppServiceTest {
                         eq(BluetoothShare._ID + " < " + 20),
                         any());
     }
+
+    private static BluetoothOppShareInfo createShareInfo(int id) {
+        return new BluetoothOppShareInfo(
+                id,
+                Uri.parse("content://test/" + id),
+                "hint",
+                "filename",
+                "mimetype",
+                0, // direction
+                "AA:BB:CC:DD:EE:FF", // destination
+                0, // visibility,
+                0, // confirm
+                0, // status
+                0, // totalBytes
+                0, // currentBytes
+                123456789, // timestamp
+                false); // mediaScanned
+    }
+
+    private static MatrixCursor createShareCursor() {
+        return new MatrixCursor(
+                new String[] {
+                    BluetoothShare._ID,
+                    BluetoothShare.URI,
+                    BluetoothShare.FILENAME_HINT,
+                    BluetoothShare._DATA,
+                    BluetoothShare.MIMETYPE,
+                    BluetoothShare.DIRECTION,
+                    BluetoothShare.DESTINATION,
+                    BluetoothShare.VISIBILITY,
+                    BluetoothShare.USER_CONFIRMATION,
+                    BluetoothShare.STATUS,
+                    BluetoothShare.TOTAL_BYTES,
+                    BluetoothShare.CURRENT_BYTES,
+                    BluetoothShare.TIMESTAMP,
+                    Constants.MEDIA_SCANNED
+                });
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bluetooth.opp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.bluetooth.BluetoothMethodProxy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+/** Test cases for {@link BluetoothOppTransferProgress}. */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BluetoothOppTransferProgressTest {
+    private static final int SHARE_ID = 3;
+    private static final long TOTAL_BYTES = 1000;
+    private static final long PERSIST_INTERVAL_MS = 5000;
+    private static final Uri SHARE_URI =
+            ContentUris.withAppendedId(BluetoothShare.CONTENT_URI, SHARE_ID);
+
+    @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock BluetoothMethodProxy mMethodProxy;
+
+    Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        BluetoothMethodProxy.setInstanceForTesting(mMethodProxy);
+        doReturn(1)
+                .when(mMethodProxy)
+                .contentResolverUpdate(any(), any(), any(), nullable(String.class), any());
+    }
+
+    @After
+    public void tearDown() {
+        BluetoothMethodProxy.setInstanceForTesting(null);
+    }
+
+    @Test
+    public void update_onlyPersistsOncePerInterval() {
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(
+                        mContext, SHARE_ID, TOTAL_BYTES, PERSIST_INTERVAL_MS);
+        long start = SystemClock.elapsedRealtime();
+
+        progress.update(100, start + PERSIST_INTERVAL_MS);
+        progress.update(200, start + PERSIST_INTERVAL_MS + 1000);
+        progress.update(300, start + PERSIST_INTERVAL_MS + 2000);
+
+        verifyPersisted(100, 1);
+        verifyPersisted(200, 0);
+        verifyPersisted(300, 0);
+        assertThat(BluetoothOppTransferProgress.getCurrentBytes(SHARE_ID, 100)).isEqualTo(300);
+
+        progress.finish(300);
+    }
+
+    @Test
+    public void update_withoutInterval_persistsEveryChange() {
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(mContext, SHARE_ID, TOTAL_BYTES, 0);
+
+        progress.update(100);
+        progress.update(100);
+        progress.update(200);
+
+        verifyPersisted(100, 1);
+        verifyPersisted(200, 1);
+
+        progress.finish(200);
+    }
+
+    @Test
+    public void update_withoutPercentChange_persistsOncePerNfcAliveCheck() {
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(
+                        mContext, SHARE_ID, Long.MAX_VALUE, PERSIST_INTERVAL_MS);
+        long start = SystemClock.elapsedRealtime();
+
+        progress.update(100, start + PERSIST_INTERVAL_MS);
+        progress.update(200, start + Constants.NFC_ALIVE_CHECK_MS + 1);
+
+        verifyPersisted(100, 0);
+        verifyPersisted(200, 1);
+
+        progress.finish(200);
+    }
+
+    @Test
+    public void update_longSlowTransfer_persistsNoMoreThanOnPercentChangeAndNfcAliveCheck() {
+        // 500 MB sent at 300 KB/s in 32 KB packets
+        long totalBytes = 500L * 1024 * 1024;
+        long packetBytes = 32 * 1024;
+        long bytesPerSecond = 300 * 1024;
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(
+                        mContext, SHARE_ID, totalBytes, Constants.PROGRESS_PERSIST_INTERVAL_MS);
+        long start = SystemClock.elapsedRealtime();
+
+        // Writes of the previous scheme, on every percent change and once per NFC alive check
+        int previousWrites = 0;
+        long previousPercent = 0;
+        long previousTime = start;
+        long position = 0;
+        while (position < totalBytes) {
+            position = Math.min(position + packetBytes, totalBytes);
+            long now = start + position * 1000 / bytesPerSecond;
+            long percent = position * 100 / totalBytes;
+            if (percent > previousPercent || now - previousTime > Constants.NFC_ALIVE_CHECK_MS) {
+                previousWrites++;
+                previousPercent = percent;
+                previousTime = now;
+            }
+            progress.update(position, now);
+        }
+
+        verify(mMethodProxy, atMost(previousWrites))
+                .contentResolverUpdate(
+                        any(ContentResolver.class),
+                        eq(SHARE_URI),
+                        any(),
+                        nullable(String.class),
+                        any());
+
+        progress.finish(totalBytes);
+    }
+
+    @Test
+    public void finish_persistsAndStopsTracking() {
+        BluetoothOppTransferProgress progress =
+                new BluetoothOppTransferProgress(
+                        mContext, SHARE_ID, TOTAL_BYTES, PERSIST_INTERVAL_MS);
+
+        progress.update(100);
+        progress.update(500);
+        progress.finish(1000);
+
+        verifyPersisted(1000, 1);
+        assertThat(BluetoothOppTransferProgress.getCurrentBytes(SHARE_ID, 1000)).isEqualTo(1000);
+        assertThat(BluetoothOppTransferProgress.getCurrentBytes(SHARE_ID, 0)).isEqualTo(0);
+    }
+
+    private void verifyPersisted(long currentBytes, int wantedNumberOfInvocations) {
+        verify(mMethodProxy, times(wantedNumberOfInvocations))
+                .contentResolverUpdate(
+                        any(ContentResolver.class),
+                        eq(SHARE_URI),
+                        argThat(
+                                values ->
+                                        Long.valueOf(currentBytes)
+                                                .equals(
+                                                        values.getAsLong(
+                                                                BluetoothShare.CURRENT_BYTES))),
+                        nullable(String.class),
+                        any());
+    }
+}
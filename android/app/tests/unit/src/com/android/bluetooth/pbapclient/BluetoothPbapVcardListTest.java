@@ -30,6 +30,7 @@ import androidx.test.filters.SmallTest;
 import androidx.test.runner.AndroidJUnit4;
 
 import com.android.bluetooth.TestUtils;
+import com.android.vcard.VCardEntry;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,6 +38,8 @@ import org.junit.runner.RunWith;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 @SmallTest
 @RunWith(AndroidJUnit4.class)
@@ -100,6 +103,50 @@ public class BluetoothPbapVcardListTest {
         assertThat(result.getCount()).isEqualTo(1);
     }
 
+    @Test
+    public void constructor_withEntryConsumer_handsOverEntries() throws IOException {
+        InputStream fileStream =
+                mTestResources.openRawResource(com.android.bluetooth.tests.R.raw.v30_simple);
+        List<VCardEntry> entries = new ArrayList<>();
+        BluetoothPbapVcardList result =
+                new BluetoothPbapVcardList(
+                        ACCOUNT,
+                        fileStream,
+                        PbapClientConnectionHandler.VCARD_TYPE_30,
+                        entries::add);
+        assertThat(entries).hasSize(1);
+        assertThat(result.getCount()).isEqualTo(1);
+        assertThat(result.getList()).isEmpty();
+    }
+
+    @Test
+    public void constructor_withEntryConsumerAndMixedVersions_handsOverEntriesOnce()
+            throws IOException {
+        // The first vCard is parsed by both parsers, the second one only by the v3.0 parser.
+        String vcards =
+                "BEGIN:VCARD\r\n"
+                        + "FN:Jean Dupont\r\n"
+                        + "N:Dupont;Jean\r\n"
+                        + "END:VCARD\r\n"
+                        + "BEGIN:VCARD\r\n"
+                        + "VERSION:3.0\r\n"
+                        + "FN:And Roid\r\n"
+                        + "N:And;Roid;;;\r\n"
+                        + "END:VCARD\r\n";
+        List<VCardEntry> entries = new ArrayList<>();
+        BluetoothPbapVcardList result =
+                new BluetoothPbapVcardList(
+                        ACCOUNT,
+                        new ByteArrayInputStream(vcards.getBytes()),
+                        PbapClientConnectionHandler.VCARD_TYPE_21,
+                        entries::add);
+
+        assertThat(entries).hasSize(2);
+        assertThat(entries.get(0).getDisplayName()).isEqualTo("Jean Dupont");
+        assertThat(entries.get(1).getDisplayName()).isEqualTo("And Roid");
+        assertThat(result.getCount()).isEqualTo(2);
+    }
+
     @Test
     public void test21ParserWith30Vcard_parsingSucceeds() throws IOException {
         InputStream fileStream =
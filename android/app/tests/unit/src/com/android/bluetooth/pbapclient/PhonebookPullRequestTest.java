@@ -71,6 +71,19 @@ public class PhonebookPullRequestTest {
         assertThat(mRequest.complete).isTrue();
     }
 
+    @Test
+    public void onEntriesComplete_afterEntries_success() {
+        mRequest.onEntry(createEntry(200));
+        mRequest.onEntry(createEntry(200));
+        mRequest.onEntry(createEntry(PhonebookPullRequest.MAX_OPS));
+
+        assertThat(mRequest.complete).isFalse();
+
+        mRequest.onEntriesComplete();
+
+        assertThat(mRequest.complete).isTrue();
+    }
+
     private VCardProperty createProperty(String name, String value) {
         VCardProperty property = new VCardProperty();
         property.setName(name);
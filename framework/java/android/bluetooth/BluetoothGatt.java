@@ -35,14 +35,17 @@ import android.os.IBinder;
 import android.os.ParcelUuid;
 import android.os.RemoteException;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.bluetooth.flags.Flags;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Public API for the Bluetooth GATT Profile.
@@ -76,6 +79,10 @@ public final class BluetoothGatt implements BluetoothProfile {
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private Boolean mDeviceBusy = false;
 
+    // Operations waiting for the in flight one to complete, guarded by mDeviceBusyLock.
+    private final ArrayDeque<PendingOperation> mPendingOperations = new ArrayDeque<>();
+    private boolean mOperationQueueEnabled;
+
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private int mTransport;
 
@@ -91,6 +98,13 @@ public final class BluetoothGatt implements BluetoothProfile {
     private static final int CONN_STATE_CONNECTED = 2;
     private static final int CONN_STATE_CLOSED = 4;
 
+    private static final int OPERATION_SEND = 0;
+    private static final int OPERATION_QUEUED = 1;
+    private static final int OPERATION_BUSY = 2;
+
+    // Max number of operations queued behind the in flight one.
+    private static final int MAX_PENDING_OPERATIONS = 64;
+
     private static final int WRITE_CHARACTERISTIC_MAX_RETRIES = 5;
     private static final int WRITE_CHARACTERISTIC_TIME_TO_WAIT = 10; // milliseconds
     // Max length of an attribute value, defined in gatt_api.h
@@ -98,6 +112,34 @@ public final class BluetoothGatt implements BluetoothProfile {
 
     private List<BluetoothGattService> mServices;
 
+    /** Characteristics and descriptors of {@link #mServices} by instance id. */
+    private static final class AttributeIndex {
+        final SparseArray<BluetoothGattCharacteristic> mCharacteristics = new SparseArray<>();
+        final SparseArray<BluetoothGattDescriptor> mDescriptors = new SparseArray<>();
+    }
+
+    // Built on first lookup and invalidated whenever mServices changes.
+    private final Object mAttributeIndexLock = new Object();
+    private volatile AttributeIndex mAttributeIndex;
+
+    /** Sends a read or write request to the remote device. */
+    private interface GattOperation {
+        /** Returns {@link BluetoothStatusCodes#SUCCESS} if the request was sent. */
+        int send() throws RemoteException;
+    }
+
+    /** A {@link GattOperation} queued while the device is busy. */
+    private static final class PendingOperation {
+        final GattOperation mOperation;
+        // Reports the failure to the application if the operation cannot be sent.
+        final Runnable mOnFailure;
+
+        PendingOperation(GattOperation operation, Runnable onFailure) {
+            mOperation = operation;
+            mOnFailure = onFailure;
+        }
+    }
+
     /** A GATT operation completed successfully */
     public static final int GATT_SUCCESS = 0;
 
@@ -403,6 +445,11 @@ public final class BluetoothGatt implements BluetoothProfile {
                     synchronized (mDeviceBusyLock) {
                         mDeviceBusy = false;
                     }
+                    if (connected) {
+                        sendNextOperation();
+                    } else {
+                        failPendingOperations();
+                    }
                 }
 
                 /**
@@ -428,6 +475,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                     }
 
                     mServices.addAll(services);
+                    invalidateAttributeIndex();
 
                     // Fix references to included services, as they doesn't point to right objects.
                     for (BluetoothGattService fixedService : mServices) {
@@ -510,6 +558,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                             getCharacteristicById(mDevice, handle);
                     if (characteristic == null) {
                         Log.w(TAG, "onCharacteristicRead() failed to find characteristic!");
+                        sendNextOperation();
                         return;
                     }
 
@@ -525,6 +574,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     }
                                 }
                             });
+                    sendNextOperation();
                 }
 
                 /**
@@ -556,7 +606,10 @@ public final class BluetoothGatt implements BluetoothProfile {
 
                     BluetoothGattCharacteristic characteristic =
                             getCharacteristicById(mDevice, handle);
-                    if (characteristic == null) return;
+                    if (characteristic == null) {
+                        sendNextOperation();
+                        return;
+                    }
 
                     if ((status == GATT_INSUFFICIENT_AUTHENTICATION
                                     || status == GATT_INSUFFICIENT_ENCRYPTION)
@@ -606,6 +659,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     }
                                 }
                             });
+                    sendNextOperation();
                 }
 
                 /**
@@ -660,7 +714,10 @@ public final class BluetoothGatt implements BluetoothProfile {
                     }
 
                     BluetoothGattDescriptor descriptor = getDescriptorById(mDevice, handle);
-                    if (descriptor == null) return;
+                    if (descriptor == null) {
+                        sendNextOperation();
+                        return;
+                    }
 
                     if ((status == GATT_INSUFFICIENT_AUTHENTICATION
                                     || status == GATT_INSUFFICIENT_ENCRYPTION)
@@ -693,6 +750,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     }
                                 }
                             });
+                    sendNextOperation();
                 }
 
                 /**
@@ -717,7 +775,10 @@ public final class BluetoothGatt implements BluetoothProfile {
                     }
 
                     BluetoothGattDescriptor descriptor = getDescriptorById(mDevice, handle);
-                    if (descriptor == null) return;
+                    if (descriptor == null) {
+                        sendNextOperation();
+                        return;
+                    }
 
                     if ((status == GATT_INSUFFICIENT_AUTHENTICATION
                                     || status == GATT_INSUFFICIENT_ENCRYPTION)
@@ -749,6 +810,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     }
                                 }
                             });
+                    sendNextOperation();
                 }
 
                 /**
@@ -780,6 +842,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                                     }
                                 }
                             });
+                    sendNextOperation();
                 }
 
                 /**
@@ -896,6 +959,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                     if (!address.equals(mDevice.getAddress())) {
                         return;
                     }
+                    invalidateAttributeIndex();
 
                     runOrQueueCallback(
                             new Runnable() {
@@ -1005,6 +1069,9 @@ public final class BluetoothGatt implements BluetoothProfile {
         unregisterApp();
         mConnState = CONN_STATE_CLOSED;
         mAuthRetryState = AUTH_RETRY_STATE_IDLE;
+        synchronized (mDeviceBusyLock) {
+            mPendingOperations.clear();
+        }
     }
 
     /**
@@ -1030,14 +1097,7 @@ public final class BluetoothGatt implements BluetoothProfile {
      */
     /*package*/ BluetoothGattCharacteristic getCharacteristicById(
             BluetoothDevice device, int instanceId) {
-        for (BluetoothGattService svc : mServices) {
-            for (BluetoothGattCharacteristic charac : svc.getCharacteristics()) {
-                if (charac.getInstanceId() == instanceId) {
-                    return charac;
-                }
-            }
-        }
-        return null;
+        return getAttributeIndex().mCharacteristics.get(instanceId);
     }
 
     /**
@@ -1046,16 +1106,45 @@ public final class BluetoothGatt implements BluetoothProfile {
      * @hide
      */
     /*package*/ BluetoothGattDescriptor getDescriptorById(BluetoothDevice device, int instanceId) {
-        for (BluetoothGattService svc : mServices) {
-            for (BluetoothGattCharacteristic charac : svc.getCharacteristics()) {
-                for (BluetoothGattDescriptor desc : charac.getDescriptors()) {
-                    if (desc.getInstanceId() == instanceId) {
-                        return desc;
+        return getAttributeIndex().mDescriptors.get(instanceId);
+    }
+
+    /**
+     * Returns the characteristics and descriptors of {@link #mServices} by instance id, keeping
+     * the first attribute found for an id.
+     */
+    private AttributeIndex getAttributeIndex() {
+        AttributeIndex index = mAttributeIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (mAttributeIndexLock) {
+            if (mAttributeIndex != null) {
+                return mAttributeIndex;
+            }
+            index = new AttributeIndex();
+            for (BluetoothGattService svc : mServices) {
+                for (BluetoothGattCharacteristic charac : svc.getCharacteristics()) {
+                    if (index.mCharacteristics.indexOfKey(charac.getInstanceId()) < 0) {
+                        index.mCharacteristics.put(charac.getInstanceId(), charac);
+                    }
+                    for (BluetoothGattDescriptor desc : charac.getDescriptors()) {
+                        if (index.mDescriptors.indexOfKey(desc.getInstanceId()) < 0) {
+                            index.mDescriptors.put(desc.getInstanceId(), desc);
+                        }
                     }
                 }
             }
+            mAttributeIndex = index;
+            return index;
+        }
+    }
+
+    /** Drops the attribute index, to be rebuilt from {@link #mServices} on next lookup. */
+    private void invalidateAttributeIndex() {
+        synchronized (mAttributeIndexLock) {
+            mAttributeIndex = null;
         }
-        return null;
     }
 
     /**
@@ -1313,6 +1402,7 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (mService == null || mClientIf == 0) return false;
 
         mServices.clear();
+        invalidateAttributeIndex();
 
         try {
             mService.discoverServices(mClientIf, mDevice.getAddress(), mAttributionSource);
@@ -1340,6 +1430,7 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (mService == null || mClientIf == 0) return false;
 
         mServices.clear();
+        invalidateAttributeIndex();
 
         try {
             mService.discoverServiceByUuid(
@@ -1425,23 +1516,33 @@ public final class BluetoothGatt implements BluetoothProfile {
         BluetoothDevice device = service.getDevice();
         if (device == null) return false;
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return false;
-            mDeviceBusy = true;
-        }
+        GattOperation operation =
+                () -> {
+                    mService.readCharacteristic(
+                            mClientIf,
+                            device.getAddress(),
+                            characteristic.getInstanceId(),
+                            AUTHENTICATION_NONE,
+                            mAttributionSource);
+                    return BluetoothStatusCodes.SUCCESS;
+                };
+        int result =
+                acquireOrQueue(
+                        () -> operation,
+                        () -> {
+                            final BluetoothGattCallback callback = mCallback;
+                            if (callback != null) {
+                                callback.onCharacteristicRead(
+                                        this, characteristic, new byte[0], GATT_FAILURE);
+                            }
+                        });
+        if (result != OPERATION_SEND) return result == OPERATION_QUEUED;
 
         try {
-            mService.readCharacteristic(
-                    mClientIf,
-                    device.getAddress(),
-                    characteristic.getInstanceId(),
-                    AUTHENTICATION_NONE,
-                    mAttributionSource);
+            operation.send();
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            onOperationSendFailed();
             return false;
         }
 
@@ -1466,10 +1567,8 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (VDBG) Log.d(TAG, "readUsingCharacteristicUuid() - uuid: " + uuid);
         if (mService == null || mClientIf == 0) return false;
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return false;
-            mDeviceBusy = true;
-        }
+        // Not queued, as its failure cannot be reported without a characteristic.
+        if (acquireOrQueue(null, null) != OPERATION_SEND) return false;
 
         try {
             mService.readUsingCharacteristicUuid(
@@ -1482,9 +1581,7 @@ public final class BluetoothGatt implements BluetoothProfile {
                     mAttributionSource);
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            onOperationSendFailed();
             return false;
         }
 
@@ -1585,25 +1682,33 @@ public final class BluetoothGatt implements BluetoothProfile {
             throw new IllegalArgumentException("Service must have a non-null device");
         }
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) {
-                return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
-            }
-            mDeviceBusy = true;
+        int result =
+                acquireOrQueue(
+                        () -> {
+                            // A queued write must not see later changes made by the caller to
+                            // the array. It is sent from the callback thread, so it is not
+                            // retried while the stack is busy, but reported as failed.
+                            final byte[] valueCopy = value.clone();
+                            return () ->
+                                    sendWriteCharacteristic(
+                                            device, characteristic, writeType, valueCopy);
+                        },
+                        () -> {
+                            final BluetoothGattCallback callback = mCallback;
+                            if (callback != null) {
+                                callback.onCharacteristicWrite(this, characteristic, GATT_FAILURE);
+                            }
+                        });
+        if (result == OPERATION_QUEUED) {
+            return BluetoothStatusCodes.SUCCESS;
+        } else if (result == OPERATION_BUSY) {
+            return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
         }
 
         int requestStatus = BluetoothStatusCodes.ERROR_UNKNOWN;
         try {
             for (int i = 0; i < WRITE_CHARACTERISTIC_MAX_RETRIES; i++) {
-                requestStatus =
-                        mService.writeCharacteristic(
-                                mClientIf,
-                                device.getAddress(),
-                                characteristic.getInstanceId(),
-                                writeType,
-                                AUTHENTICATION_NONE,
-                                value,
-                                mAttributionSource);
+                requestStatus = sendWriteCharacteristic(device, characteristic, writeType, value);
                 if (requestStatus != BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY) {
                     break;
                 }
@@ -1615,22 +1720,34 @@ public final class BluetoothGatt implements BluetoothProfile {
             }
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            onOperationSendFailed();
             throw e.rethrowAsRuntimeException();
         }
         if (Flags.gattFixDeviceBusy()) {
             if (requestStatus != BluetoothStatusCodes.SUCCESS) {
-                synchronized (mDeviceBusyLock) {
-                    mDeviceBusy = false;
-                }
+                onOperationSendFailed();
             }
         }
 
         return requestStatus;
     }
 
+    private int sendWriteCharacteristic(
+            BluetoothDevice device,
+            BluetoothGattCharacteristic characteristic,
+            int writeType,
+            byte[] value)
+            throws RemoteException {
+        return mService.writeCharacteristic(
+                mClientIf,
+                device.getAddress(),
+                characteristic.getInstanceId(),
+                writeType,
+                AUTHENTICATION_NONE,
+                value,
+                mAttributionSource);
+    }
+
     /**
      * Reads the value for a given descriptor from the associated remote device.
      *
@@ -1657,23 +1774,33 @@ public final class BluetoothGatt implements BluetoothProfile {
         BluetoothDevice device = service.getDevice();
         if (device == null) return false;
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return false;
-            mDeviceBusy = true;
-        }
+        GattOperation operation =
+                () -> {
+                    mService.readDescriptor(
+                            mClientIf,
+                            device.getAddress(),
+                            descriptor.getInstanceId(),
+                            AUTHENTICATION_NONE,
+                            mAttributionSource);
+                    return BluetoothStatusCodes.SUCCESS;
+                };
+        int result =
+                acquireOrQueue(
+                        () -> operation,
+                        () -> {
+                            final BluetoothGattCallback callback = mCallback;
+                            if (callback != null) {
+                                callback.onDescriptorRead(
+                                        this, descriptor, GATT_FAILURE, new byte[0]);
+                            }
+                        });
+        if (result != OPERATION_SEND) return result == OPERATION_QUEUED;
 
         try {
-            mService.readDescriptor(
-                    mClientIf,
-                    device.getAddress(),
-                    descriptor.getInstanceId(),
-                    AUTHENTICATION_NONE,
-                    mAttributionSource);
+            operation.send();
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            onOperationSendFailed();
             return false;
         }
 
@@ -1746,25 +1873,165 @@ public final class BluetoothGatt implements BluetoothProfile {
             throw new IllegalArgumentException("Service must have a non-null device");
         }
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
-            mDeviceBusy = true;
+        int result =
+                acquireOrQueue(
+                        () -> {
+                            // A queued write must not see later changes made by the caller to
+                            // the array.
+                            final byte[] valueCopy = value.clone();
+                            return () -> sendWriteDescriptor(device, descriptor, valueCopy);
+                        },
+                        () -> {
+                            final BluetoothGattCallback callback = mCallback;
+                            if (callback != null) {
+                                callback.onDescriptorWrite(this, descriptor, GATT_FAILURE);
+                            }
+                        });
+        if (result == OPERATION_QUEUED) {
+            return BluetoothStatusCodes.SUCCESS;
+        } else if (result == OPERATION_BUSY) {
+            return BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
         }
 
+        int requestStatus;
         try {
-            return mService.writeDescriptor(
-                    mClientIf,
-                    device.getAddress(),
-                    descriptor.getInstanceId(),
-                    AUTHENTICATION_NONE,
-                    value,
-                    mAttributionSource);
+            requestStatus = sendWriteDescriptor(device, descriptor, value);
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
+            onOperationSendFailed();
+            throw e.rethrowAsRuntimeException();
+        }
+        if (Flags.gattFixDeviceBusy()) {
+            if (requestStatus != BluetoothStatusCodes.SUCCESS) {
+                onOperationSendFailed();
+            }
+        }
+
+        return requestStatus;
+    }
+
+    private int sendWriteDescriptor(
+            BluetoothDevice device, BluetoothGattDescriptor descriptor, byte[] value)
+            throws RemoteException {
+        return mService.writeDescriptor(
+                mClientIf,
+                device.getAddress(),
+                descriptor.getInstanceId(),
+                AUTHENTICATION_NONE,
+                value,
+                mAttributionSource);
+    }
+
+    /**
+     * Enables or disables queuing of read and write operations.
+     *
+     * <p>By default, {@link #readCharacteristic}, {@link #writeCharacteristic}, {@link
+     * #readDescriptor}, {@link #writeDescriptor} and {@link #executeReliableWrite} are rejected
+     * while a previous operation is still in progress. When the queue is enabled, these operations
+     * are instead accepted and sent to the remote device one after the other, each as soon as the
+     * previous one has completed. The result of every operation is still reported through the
+     * {@link BluetoothGattCallback}, in the order the operations were requested. If a queued
+     * operation cannot be sent right away, or the device is disconnected before it is sent, it is
+     * reported with {@link #GATT_FAILURE}.
+     *
+     * <p>Disabling the queue does not cancel operations that are already queued.
+     *
+     * @param enabled whether operations requested while the device is busy should be queued
+     */
+    @FlaggedApi(Flags.FLAG_GATT_OPERATION_QUEUE)
+    @RequiresNoPermission
+    public void setOperationQueueEnabled(boolean enabled) {
+        synchronized (mDeviceBusyLock) {
+            mOperationQueueEnabled = enabled;
+        }
+    }
+
+    /**
+     * Returns whether read and write operations are queued while the device is busy.
+     *
+     * @see #setOperationQueueEnabled
+     */
+    @FlaggedApi(Flags.FLAG_GATT_OPERATION_QUEUE)
+    @RequiresNoPermission
+    public boolean isOperationQueueEnabled() {
+        synchronized (mDeviceBusyLock) {
+            return mOperationQueueEnabled;
+        }
+    }
+
+    /**
+     * Marks the device busy if no operation is in progress or queued, otherwise queues the
+     * operation if the queue is enabled and not full.
+     *
+     * @param queuedOperation creates the operation to queue, only called if it is queued
+     * @param onFailure reports the failure of the queued operation, or null if the operation cannot
+     *     be queued
+     * @return {@code OPERATION_SEND} if the caller must send the operation itself, {@code
+     *     OPERATION_QUEUED} or {@code OPERATION_BUSY}
+     */
+    private int acquireOrQueue(Supplier<GattOperation> queuedOperation, Runnable onFailure) {
+        synchronized (mDeviceBusyLock) {
+            if (!mDeviceBusy && mPendingOperations.isEmpty()) {
+                mDeviceBusy = true;
+                return OPERATION_SEND;
+            }
+            if (!mOperationQueueEnabled
+                    || onFailure == null
+                    || mPendingOperations.size() >= MAX_PENDING_OPERATIONS) {
+                return OPERATION_BUSY;
+            }
+            mPendingOperations.add(new PendingOperation(queuedOperation.get(), onFailure));
+            return OPERATION_QUEUED;
+        }
+    }
+
+    /** Sends the next queued operation, unless another operation is in progress. */
+    private void sendNextOperation() {
+        while (true) {
+            PendingOperation pending;
+            synchronized (mDeviceBusyLock) {
+                if (mDeviceBusy) return;
+                pending = mPendingOperations.poll();
+                if (pending == null) return;
+                mDeviceBusy = true;
+            }
+
+            int requestStatus = BluetoothStatusCodes.ERROR_UNKNOWN;
+            try {
+                requestStatus = pending.mOperation.send();
+            } catch (RemoteException e) {
+                Log.e(TAG, "", e);
+            }
+            if (requestStatus == BluetoothStatusCodes.SUCCESS) return;
+
+            Log.w(TAG, "sendNextOperation() - failed to send queued operation: " + requestStatus);
             synchronized (mDeviceBusyLock) {
                 mDeviceBusy = false;
             }
-            throw e.rethrowAsRuntimeException();
+            runOrQueueCallback(pending.mOnFailure);
+        }
+    }
+
+    /**
+     * Clears the busy state after an operation could not be sent, and sends the operations queued
+     * behind it.
+     */
+    private void onOperationSendFailed() {
+        synchronized (mDeviceBusyLock) {
+            mDeviceBusy = false;
+        }
+        sendNextOperation();
+    }
+
+    /** Reports all queued operations as failed. */
+    private void failPendingOperations() {
+        ArrayList<PendingOperation> pendingOperations;
+        synchronized (mDeviceBusyLock) {
+            pendingOperations = new ArrayList<>(mPendingOperations);
+            mPendingOperations.clear();
+        }
+        for (PendingOperation pending : pendingOperations) {
+            runOrQueueCallback(pending.mOnFailure);
         }
     }
 
@@ -1820,18 +2087,28 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (VDBG) Log.d(TAG, "executeReliableWrite() - device: " + mDevice);
         if (mService == null || mClientIf == 0) return false;
 
-        synchronized (mDeviceBusyLock) {
-            if (mDeviceBusy) return false;
-            mDeviceBusy = true;
-        }
+        GattOperation operation =
+                () -> {
+                    mService.endReliableWrite(
+                            mClientIf, mDevice.getAddress(), true, mAttributionSource);
+                    return BluetoothStatusCodes.SUCCESS;
+                };
+        int result =
+                acquireOrQueue(
+                        () -> operation,
+                        () -> {
+                            final BluetoothGattCallback callback = mCallback;
+                            if (callback != null) {
+                                callback.onReliableWriteCompleted(this, GATT_FAILURE);
+                            }
+                        });
+        if (result != OPERATION_SEND) return result == OPERATION_QUEUED;
 
         try {
-            mService.endReliableWrite(mClientIf, mDevice.getAddress(), true, mAttributionSource);
+            operation.send();
         } catch (RemoteException e) {
             Log.e(TAG, "", e);
-            synchronized (mDeviceBusyLock) {
-                mDeviceBusy = false;
-            }
+            onOperationSendFailed();
             return false;
         }
 
@@ -1928,6 +2205,8 @@ public final class BluetoothGatt implements BluetoothProfile {
         if (DBG) Log.d(TAG, "refresh() - device: " + mDevice);
         if (mService == null || mClientIf == 0) return false;
 
+        invalidateAttributeIndex();
+
         try {
             mService.refreshDevice(mClientIf, mDevice.getAddress(), mAttributionSource);
         } catch (RemoteException e) {
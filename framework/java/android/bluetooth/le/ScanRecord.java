@@ -38,6 +38,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.Predicate;
 
 /** Represents a scan record from Bluetooth LE scan. */
@@ -338,29 +339,55 @@ public final class ScanRecord {
      */
     public static final int DATA_TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
 
-    // Flags of the advertising data.
-    private final int mAdvertiseFlags;
+    // Bits of mDecodedFields, set once the corresponding lazily decoded field is available.
+    private static final int FIELD_SERVICE_UUIDS = 1 << 0;
+    private static final int FIELD_SERVICE_SOLICITATION_UUIDS = 1 << 1;
+    private static final int FIELD_MANUFACTURER_SPECIFIC_DATA = 1 << 2;
+    private static final int FIELD_SERVICE_DATA = 1 << 3;
+    private static final int FIELD_DEVICE_NAME = 1 << 4;
+    private static final int FIELD_ADVERTISING_DATA_MAP = 1 << 5;
+    private static final int FIELD_TRANSPORT_DISCOVERY_DATA = 1 << 6;
+
+    // Sets the bits atomically, as getters of different fields may run concurrently.
+    private static final AtomicIntegerFieldUpdater<ScanRecord> DECODED_FIELDS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(ScanRecord.class, "mDecodedFields");
+
+    // Raw bytes of scan record.
+    private final byte[] mBytes;
 
-    @Nullable private final List<ParcelUuid> mServiceUuids;
-    @Nullable private final List<ParcelUuid> mServiceSolicitationUuids;
+    // Offsets in mBytes of the length byte of each AD structure, only the first
+    // mFieldCount entries are used.
+    private final int[] mFieldOffsets;
+    private final int mFieldCount;
 
-    private final SparseArray<byte[]> mManufacturerSpecificData;
+    // False if the record is malformed, in which case only the advertising data map is decoded.
+    private final boolean mIsValid;
 
-    private final Map<ParcelUuid, byte[]> mServiceData;
+    // Flags of the advertising data.
+    private final int mAdvertiseFlags;
 
     // Transmission power level(in dB).
     private final int mTxPowerLevel;
 
-    // Local name of the Bluetooth LE device.
-    private final String mDeviceName;
+    // The fields below are decoded from mBytes on first use. Concurrent first uses may decode a
+    // field more than once, which is harmless as decoding is deterministic; each field is written
+    // before its bit is published through the volatile mDecodedFields.
+    private volatile int mDecodedFields;
 
-    // Raw bytes of scan record.
-    private final byte[] mBytes;
+    @Nullable private List<ParcelUuid> mServiceUuids;
+    @Nullable private List<ParcelUuid> mServiceSolicitationUuids;
+
+    private SparseArray<byte[]> mManufacturerSpecificData;
+
+    private Map<ParcelUuid, byte[]> mServiceData;
+
+    // Local name of the Bluetooth LE device.
+    private String mDeviceName;
 
-    private final Map<Integer, byte[]> mAdvertisingDataMap;
+    private Map<Integer, byte[]> mAdvertisingDataMap;
 
     // Transport Discovery data.
-    private final TransportDiscoveryData mTransportDiscoveryData;
+    private TransportDiscoveryData mTransportDiscoveryData;
 
     /**
      * Returns the advertising flags indicating the discoverable mode and capability of the device.
@@ -375,6 +402,25 @@ public final class ScanRecord {
      * bluetooth GATT services.
      */
     public List<ParcelUuid> getServiceUuids() {
+        if (!isDecoded(FIELD_SERVICE_UUIDS)) {
+            List<ParcelUuid> serviceUuids = null;
+            if (mIsValid) {
+                serviceUuids = new ArrayList<ParcelUuid>();
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    int uuidLength = serviceUuidLength(mBytes[offset + 1] & 0xFF);
+                    if (uuidLength > 0) {
+                        parseServiceUuid(
+                                mBytes, offset + 2, dataLength(offset), uuidLength, serviceUuids);
+                    }
+                }
+                if (serviceUuids.isEmpty()) {
+                    serviceUuids = null;
+                }
+            }
+            mServiceUuids = serviceUuids;
+            setDecoded(FIELD_SERVICE_UUIDS);
+        }
         return mServiceUuids;
     }
 
@@ -384,6 +430,26 @@ public final class ScanRecord {
      */
     @NonNull
     public List<ParcelUuid> getServiceSolicitationUuids() {
+        if (!isDecoded(FIELD_SERVICE_SOLICITATION_UUIDS)) {
+            List<ParcelUuid> serviceSolicitationUuids = null;
+            if (mIsValid) {
+                serviceSolicitationUuids = new ArrayList<ParcelUuid>();
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    int uuidLength = serviceSolicitationUuidLength(mBytes[offset + 1] & 0xFF);
+                    if (uuidLength > 0) {
+                        parseServiceSolicitationUuid(
+                                mBytes,
+                                offset + 2,
+                                dataLength(offset),
+                                uuidLength,
+                                serviceSolicitationUuids);
+                    }
+                }
+            }
+            mServiceSolicitationUuids = serviceSolicitationUuids;
+            setDecoded(FIELD_SERVICE_SOLICITATION_UUIDS);
+        }
         return mServiceSolicitationUuids;
     }
 
@@ -392,6 +458,21 @@ public final class ScanRecord {
      * data.
      */
     public SparseArray<byte[]> getManufacturerSpecificData() {
+        if (!isDecoded(FIELD_MANUFACTURER_SPECIFIC_DATA)) {
+            SparseArray<byte[]> manufacturerData = null;
+            if (mIsValid) {
+                manufacturerData = new SparseArray<byte[]>();
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    if ((mBytes[offset + 1] & 0xFF) == DATA_TYPE_MANUFACTURER_SPECIFIC_DATA) {
+                        putManufacturerData(
+                                mBytes, offset + 2, dataLength(offset), manufacturerData);
+                    }
+                }
+            }
+            mManufacturerSpecificData = manufacturerData;
+            setDecoded(FIELD_MANUFACTURER_SPECIFIC_DATA);
+        }
         return mManufacturerSpecificData;
     }
 
@@ -401,14 +482,35 @@ public final class ScanRecord {
      */
     @Nullable
     public byte[] getManufacturerSpecificData(int manufacturerId) {
-        if (mManufacturerSpecificData == null) {
+        SparseArray<byte[]> manufacturerData = getManufacturerSpecificData();
+        if (manufacturerData == null) {
             return null;
         }
-        return mManufacturerSpecificData.get(manufacturerId);
+        return manufacturerData.get(manufacturerId);
     }
 
     /** Returns a map of service UUID and its corresponding service data. */
     public Map<ParcelUuid, byte[]> getServiceData() {
+        if (!isDecoded(FIELD_SERVICE_DATA)) {
+            Map<ParcelUuid, byte[]> serviceData = null;
+            if (mIsValid) {
+                serviceData = new ArrayMap<ParcelUuid, byte[]>();
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    int uuidLength = serviceDataUuidLength(mBytes[offset + 1] & 0xFF);
+                    if (uuidLength > 0) {
+                        int dataLength = dataLength(offset);
+                        serviceData.put(
+                                BluetoothUuid.parseUuidFrom(
+                                        extractBytes(mBytes, offset + 2, uuidLength)),
+                                extractBytes(
+                                        mBytes, offset + 2 + uuidLength, dataLength - uuidLength));
+                    }
+                }
+            }
+            mServiceData = serviceData;
+            setDecoded(FIELD_SERVICE_DATA);
+        }
         return mServiceData;
     }
 
@@ -418,10 +520,14 @@ public final class ScanRecord {
      */
     @Nullable
     public byte[] getServiceData(ParcelUuid serviceDataUuid) {
-        if (serviceDataUuid == null || mServiceData == null) {
+        if (serviceDataUuid == null) {
             return null;
         }
-        return mServiceData.get(serviceDataUuid);
+        Map<ParcelUuid, byte[]> serviceData = getServiceData();
+        if (serviceData == null) {
+            return null;
+        }
+        return serviceData.get(serviceDataUuid);
     }
 
     /**
@@ -438,6 +544,22 @@ public final class ScanRecord {
     /** Returns the local name of the BLE device. This is a UTF-8 encoded string. */
     @Nullable
     public String getDeviceName() {
+        if (!isDecoded(FIELD_DEVICE_NAME)) {
+            String localName = null;
+            if (mIsValid) {
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    int fieldType = mBytes[offset + 1] & 0xFF;
+                    if (fieldType == DATA_TYPE_LOCAL_NAME_SHORT
+                            || fieldType == DATA_TYPE_LOCAL_NAME_COMPLETE) {
+                        localName =
+                                new String(extractBytes(mBytes, offset + 2, dataLength(offset)));
+                    }
+                }
+            }
+            mDeviceName = localName;
+            setDecoded(FIELD_DEVICE_NAME);
+        }
         return mDeviceName;
     }
 
@@ -447,6 +569,17 @@ public final class ScanRecord {
      * (https://www.bluetooth.com/specifications/assigned-numbers/)
      */
     public @NonNull Map<Integer, byte[]> getAdvertisingDataMap() {
+        if (!isDecoded(FIELD_ADVERTISING_DATA_MAP)) {
+            HashMap<Integer, byte[]> advertisingDataMap = new HashMap<Integer, byte[]>();
+            for (int i = 0; i < mFieldCount; i++) {
+                int offset = mFieldOffsets[i];
+                advertisingDataMap.put(
+                        mBytes[offset + 1] & 0xFF,
+                        extractBytes(mBytes, offset + 2, dataLength(offset)));
+            }
+            mAdvertisingDataMap = advertisingDataMap;
+            setDecoded(FIELD_ADVERTISING_DATA_MAP);
+        }
         return mAdvertisingDataMap;
     }
 
@@ -458,6 +591,22 @@ public final class ScanRecord {
     @SystemApi
     @Nullable
     public TransportDiscoveryData getTransportDiscoveryData() {
+        if (!isDecoded(FIELD_TRANSPORT_DISCOVERY_DATA)) {
+            TransportDiscoveryData transportDiscoveryData = null;
+            if (mIsValid) {
+                for (int i = 0; i < mFieldCount; i++) {
+                    int offset = mFieldOffsets[i];
+                    if ((mBytes[offset + 1] & 0xFF) == DATA_TYPE_TRANSPORT_DISCOVERY_DATA) {
+                        // +1 / +1 to include the type in the extract
+                        transportDiscoveryData =
+                                new TransportDiscoveryData(
+                                        extractBytes(mBytes, offset + 1, dataLength(offset) + 1));
+                    }
+                }
+            }
+            mTransportDiscoveryData = transportDiscoveryData;
+            setDecoded(FIELD_TRANSPORT_DISCOVERY_DATA);
+        }
         return mTransportDiscoveryData;
     }
 
@@ -487,26 +636,34 @@ public final class ScanRecord {
     }
 
     private ScanRecord(
-            List<ParcelUuid> serviceUuids,
-            List<ParcelUuid> serviceSolicitationUuids,
-            SparseArray<byte[]> manufacturerData,
-            Map<ParcelUuid, byte[]> serviceData,
+            byte[] bytes,
+            int[] fieldOffsets,
+            int fieldCount,
+            boolean isValid,
             int advertiseFlags,
-            int txPowerLevel,
-            String localName,
-            Map<Integer, byte[]> advertisingDataMap,
-            TransportDiscoveryData transportDiscoveryData,
-            byte[] bytes) {
-        mServiceSolicitationUuids = serviceSolicitationUuids;
-        mServiceUuids = serviceUuids;
-        mManufacturerSpecificData = manufacturerData;
-        mServiceData = serviceData;
-        mDeviceName = localName;
+            int txPowerLevel) {
+        mBytes = bytes;
+        mFieldOffsets = fieldOffsets;
+        mFieldCount = fieldCount;
+        mIsValid = isValid;
         mAdvertiseFlags = advertiseFlags;
         mTxPowerLevel = txPowerLevel;
-        mAdvertisingDataMap = advertisingDataMap;
-        mTransportDiscoveryData = transportDiscoveryData;
-        mBytes = bytes;
+    }
+
+    private boolean isDecoded(int field) {
+        return (mDecodedFields & field) != 0;
+    }
+
+    private void setDecoded(int field) {
+        int decodedFields;
+        do {
+            decodedFields = mDecodedFields;
+        } while (!DECODED_FIELDS_UPDATER.compareAndSet(this, decodedFields, decodedFields | field));
+    }
+
+    // Length of the data of the AD structure at offset, excluding its type.
+    private int dataLength(int offset) {
+        return (mBytes[offset] & 0xFF) - 1;
     }
 
     /**
@@ -517,6 +674,9 @@ public final class ScanRecord {
      * <p>All numerical multi-byte entities and values shall use little-endian <strong>byte</strong>
      * order.
      *
+     * <p>Only the AD structure boundaries, the advertising flags and the tx power level are read
+     * here. The other fields keep referencing {@code scanRecord} and are decoded on first use.
+     *
      * @param scanRecord The scan record of Bluetooth LE advertisement and/or scan response.
      * @hide
      */
@@ -528,19 +688,13 @@ public final class ScanRecord {
 
         int currentPos = 0;
         int advertiseFlag = -1;
-        List<ParcelUuid> serviceUuids = new ArrayList<ParcelUuid>();
-        List<ParcelUuid> serviceSolicitationUuids = new ArrayList<ParcelUuid>();
-        String localName = null;
         int txPowerLevel = Integer.MIN_VALUE;
-
-        SparseArray<byte[]> manufacturerData = new SparseArray<byte[]>();
-        Map<ParcelUuid, byte[]> serviceData = new ArrayMap<ParcelUuid, byte[]>();
-        HashMap<Integer, byte[]> advertisingDataMap = new HashMap<Integer, byte[]>();
-
-        TransportDiscoveryData transportDiscoveryData = null;
+        int[] fieldOffsets = new int[8];
+        int fieldCount = 0;
 
         try {
             while (currentPos < scanRecord.length) {
+                int fieldOffset = currentPos;
                 // length is unsigned int.
                 int length = scanRecord[currentPos++] & 0xFF;
                 if (length == 0) {
@@ -550,159 +704,65 @@ public final class ScanRecord {
                 int dataLength = length - 1;
                 // fieldType is unsigned int.
                 int fieldType = scanRecord[currentPos++] & 0xFF;
-                byte[] advertisingData = extractBytes(scanRecord, currentPos, dataLength);
-                advertisingDataMap.put(fieldType, advertisingData);
+                checkBytes(scanRecord, currentPos, dataLength);
+                if (fieldCount == fieldOffsets.length) {
+                    fieldOffsets = Arrays.copyOf(fieldOffsets, fieldCount * 2);
+                }
+                fieldOffsets[fieldCount++] = fieldOffset;
+                // Validate what the lazy decoders will read, so that a malformed record is
+                // rejected as a whole like an eager parse would.
                 switch (fieldType) {
                     case DATA_TYPE_FLAGS:
                         advertiseFlag = scanRecord[currentPos] & 0xFF;
                         break;
-                    case DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
-                    case DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
-                        parseServiceUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_16_BIT,
-                                serviceUuids);
-                        break;
-                    case DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
-                    case DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
-                        parseServiceUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_32_BIT,
-                                serviceUuids);
-                        break;
-                    case DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
-                    case DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
-                        parseServiceUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_128_BIT,
-                                serviceUuids);
-                        break;
-                    case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_16_BIT:
-                        parseServiceSolicitationUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_16_BIT,
-                                serviceSolicitationUuids);
-                        break;
-                    case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_32_BIT:
-                        parseServiceSolicitationUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_32_BIT,
-                                serviceSolicitationUuids);
-                        break;
-                    case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_128_BIT:
-                        parseServiceSolicitationUuid(
-                                scanRecord,
-                                currentPos,
-                                dataLength,
-                                BluetoothUuid.UUID_BYTES_128_BIT,
-                                serviceSolicitationUuids);
-                        break;
-                    case DATA_TYPE_LOCAL_NAME_SHORT:
-                    case DATA_TYPE_LOCAL_NAME_COMPLETE:
-                        localName = new String(extractBytes(scanRecord, currentPos, dataLength));
-                        break;
                     case DATA_TYPE_TX_POWER_LEVEL:
                         txPowerLevel = scanRecord[currentPos];
                         break;
                     case DATA_TYPE_SERVICE_DATA_16_BIT:
                     case DATA_TYPE_SERVICE_DATA_32_BIT:
                     case DATA_TYPE_SERVICE_DATA_128_BIT:
-                        int serviceUuidLength = BluetoothUuid.UUID_BYTES_16_BIT;
-                        if (fieldType == DATA_TYPE_SERVICE_DATA_32_BIT) {
-                            serviceUuidLength = BluetoothUuid.UUID_BYTES_32_BIT;
-                        } else if (fieldType == DATA_TYPE_SERVICE_DATA_128_BIT) {
-                            serviceUuidLength = BluetoothUuid.UUID_BYTES_128_BIT;
-                        }
-
-                        byte[] serviceDataUuidBytes =
-                                extractBytes(scanRecord, currentPos, serviceUuidLength);
-                        ParcelUuid serviceDataUuid =
-                                BluetoothUuid.parseUuidFrom(serviceDataUuidBytes);
-                        byte[] serviceDataArray =
-                                extractBytes(
-                                        scanRecord,
-                                        currentPos + serviceUuidLength,
-                                        dataLength - serviceUuidLength);
-                        serviceData.put(serviceDataUuid, serviceDataArray);
+                        int serviceUuidLength = serviceDataUuidLength(fieldType);
+                        checkBytes(scanRecord, currentPos, serviceUuidLength);
+                        checkBytes(
+                                scanRecord,
+                                currentPos + serviceUuidLength,
+                                dataLength - serviceUuidLength);
                         break;
                     case DATA_TYPE_MANUFACTURER_SPECIFIC_DATA:
-                        // The first two bytes of the manufacturer specific data are
-                        // manufacturer ids in little endian.
-                        int manufacturerId =
-                                ((scanRecord[currentPos + 1] & 0xFF) << 8)
-                                        + (scanRecord[currentPos] & 0xFF);
-                        byte[] manufacturerDataBytes =
-                                extractBytes(scanRecord, currentPos + 2, dataLength - 2);
-                        if (Flags.scanRecordManufacturerDataMerge()) {
-                            if (manufacturerData.contains(manufacturerId)) {
-                                byte[] firstValue = manufacturerData.get(manufacturerId);
-                                ByteBuffer buffer =
-                                        ByteBuffer.allocate(
-                                                firstValue.length + manufacturerDataBytes.length);
-                                buffer.put(firstValue);
-                                buffer.put(manufacturerDataBytes);
-                                manufacturerData.put(manufacturerId, buffer.array());
-                            } else {
-                                manufacturerData.put(manufacturerId, manufacturerDataBytes);
-                            }
-                        } else {
-                            manufacturerData.put(manufacturerId, manufacturerDataBytes);
-                        }
+                        checkBytes(scanRecord, currentPos, 2);
+                        checkBytes(scanRecord, currentPos + 2, dataLength - 2);
                         break;
                     case DATA_TYPE_TRANSPORT_DISCOVERY_DATA:
-                        // -1 / +1 to include the type in the extract
-                        byte[] transportDiscoveryDataBytes =
-                                extractBytes(scanRecord, currentPos - 1, dataLength + 1);
-                        transportDiscoveryData =
-                                new TransportDiscoveryData(transportDiscoveryDataBytes);
+                        checkTransportDiscoveryData(scanRecord, currentPos, dataLength);
                         break;
-
                     default:
-                        // Just ignore, we don't handle such data type.
+                        int uuidLength = serviceUuidLength(fieldType);
+                        if (uuidLength == 0) {
+                            uuidLength = serviceSolicitationUuidLength(fieldType);
+                        }
+                        if (uuidLength == 0) {
+                            // Just ignore, we don't handle such data type.
+                            break;
+                        }
+                        // UUIDs are read by chunks until the data length is consumed.
+                        for (int pos = currentPos;
+                                pos < currentPos + dataLength;
+                                pos += uuidLength) {
+                            checkBytes(scanRecord, pos, uuidLength);
+                        }
                         break;
                 }
                 currentPos += dataLength;
             }
 
-            if (serviceUuids.isEmpty()) {
-                serviceUuids = null;
-            }
             return new ScanRecord(
-                    serviceUuids,
-                    serviceSolicitationUuids,
-                    manufacturerData,
-                    serviceData,
-                    advertiseFlag,
-                    txPowerLevel,
-                    localName,
-                    advertisingDataMap,
-                    transportDiscoveryData,
-                    scanRecord);
+                    scanRecord, fieldOffsets, fieldCount, true, advertiseFlag, txPowerLevel);
         } catch (Exception e) {
             Log.e(TAG, "unable to parse scan record: " + Arrays.toString(scanRecord));
             // As the record is invalid, ignore all the parsed results for this packet
             // and return an empty record with raw scanRecord bytes in results
             return new ScanRecord(
-                    null,
-                    null,
-                    null,
-                    null,
-                    -1,
-                    Integer.MIN_VALUE,
-                    null,
-                    advertisingDataMap,
-                    null,
-                    scanRecord);
+                    scanRecord, fieldOffsets, fieldCount, false, -1, Integer.MIN_VALUE);
         }
     }
 
@@ -711,22 +771,67 @@ public final class ScanRecord {
         return "ScanRecord [mAdvertiseFlags="
                 + mAdvertiseFlags
                 + ", mServiceUuids="
-                + mServiceUuids
+                + getServiceUuids()
                 + ", mServiceSolicitationUuids="
-                + mServiceSolicitationUuids
+                + getServiceSolicitationUuids()
                 + ", mManufacturerSpecificData="
-                + BluetoothLeUtils.toString(mManufacturerSpecificData)
+                + BluetoothLeUtils.toString(getManufacturerSpecificData())
                 + ", mServiceData="
-                + BluetoothLeUtils.toString(mServiceData)
+                + BluetoothLeUtils.toString(getServiceData())
                 + ", mTxPowerLevel="
                 + mTxPowerLevel
                 + ", mDeviceName="
-                + mDeviceName
+                + getDeviceName()
                 + ", mTransportDiscoveryData="
-                + mTransportDiscoveryData
+                + getTransportDiscoveryData()
                 + "]";
     }
 
+    // Returns the UUID length of a service UUID list field type, or 0 for other types.
+    private static int serviceUuidLength(int fieldType) {
+        switch (fieldType) {
+            case DATA_TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+            case DATA_TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+                return BluetoothUuid.UUID_BYTES_16_BIT;
+            case DATA_TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+            case DATA_TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+                return BluetoothUuid.UUID_BYTES_32_BIT;
+            case DATA_TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+            case DATA_TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+                return BluetoothUuid.UUID_BYTES_128_BIT;
+            default:
+                return 0;
+        }
+    }
+
+    // Returns the UUID length of a service solicitation UUID list field type, or 0 for other types.
+    private static int serviceSolicitationUuidLength(int fieldType) {
+        switch (fieldType) {
+            case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_16_BIT:
+                return BluetoothUuid.UUID_BYTES_16_BIT;
+            case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_32_BIT:
+                return BluetoothUuid.UUID_BYTES_32_BIT;
+            case DATA_TYPE_SERVICE_SOLICITATION_UUIDS_128_BIT:
+                return BluetoothUuid.UUID_BYTES_128_BIT;
+            default:
+                return 0;
+        }
+    }
+
+    // Returns the UUID length of a service data field type, or 0 for other types.
+    private static int serviceDataUuidLength(int fieldType) {
+        switch (fieldType) {
+            case DATA_TYPE_SERVICE_DATA_16_BIT:
+                return BluetoothUuid.UUID_BYTES_16_BIT;
+            case DATA_TYPE_SERVICE_DATA_32_BIT:
+                return BluetoothUuid.UUID_BYTES_32_BIT;
+            case DATA_TYPE_SERVICE_DATA_128_BIT:
+                return BluetoothUuid.UUID_BYTES_128_BIT;
+            default:
+                return 0;
+        }
+    }
+
     // Parse service UUIDs.
     private static int parseServiceUuid(
             byte[] scanRecord,
@@ -759,6 +864,63 @@ public final class ScanRecord {
         return currentPos;
     }
 
+    // Parse one manufacturer specific data field into manufacturerData.
+    private static void putManufacturerData(
+            byte[] scanRecord,
+            int currentPos,
+            int dataLength,
+            SparseArray<byte[]> manufacturerData) {
+        // The first two bytes of the manufacturer specific data are
+        // manufacturer ids in little endian.
+        int manufacturerId =
+                ((scanRecord[currentPos + 1] & 0xFF) << 8) + (scanRecord[currentPos] & 0xFF);
+        byte[] manufacturerDataBytes = extractBytes(scanRecord, currentPos + 2, dataLength - 2);
+        if (Flags.scanRecordManufacturerDataMerge()) {
+            if (manufacturerData.contains(manufacturerId)) {
+                byte[] firstValue = manufacturerData.get(manufacturerId);
+                ByteBuffer buffer =
+                        ByteBuffer.allocate(firstValue.length + manufacturerDataBytes.length);
+                buffer.put(firstValue);
+                buffer.put(manufacturerDataBytes);
+                manufacturerData.put(manufacturerId, buffer.array());
+            } else {
+                manufacturerData.put(manufacturerId, manufacturerDataBytes);
+            }
+        } else {
+            manufacturerData.put(manufacturerId, manufacturerDataBytes);
+        }
+    }
+
+    /**
+     * Throws like {@link TransportDiscoveryData} would when parsing this field: a transport block
+     * with a negative data length is rejected, a truncated one is ignored.
+     */
+    private static void checkTransportDiscoveryData(
+            byte[] scanRecord, int currentPos, int dataLength) {
+        // The field type is parsed as the transport data type, then the data is made of blocks
+        // of orgId, flags, length and transport data.
+        int end = currentPos + dataLength;
+        int pos = currentPos;
+        while (pos + 3 <= end) {
+            int transportDataLength = scanRecord[pos + 2];
+            if (transportDataLength < 0) {
+                throw new NegativeArraySizeException(
+                        "transport data length " + transportDataLength);
+            }
+            pos += 3 + transportDataLength;
+        }
+    }
+
+    // Helper method to check that bytes can be extracted from byte array.
+    private static void checkBytes(byte[] scanRecord, int start, int length) {
+        if (length < 0) {
+            throw new NegativeArraySizeException("length " + length);
+        }
+        if (start + length > scanRecord.length) {
+            throw new ArrayIndexOutOfBoundsException("end " + (start + length));
+        }
+    }
+
     // Helper method to extract bytes from byte array.
     private static byte[] extractBytes(byte[] scanRecord, int start, int length) {
         byte[] bytes = new byte[length];
@@ -361,6 +361,47 @@ public class GattClientTest {
         }
     }
 
+    @Test
+    @RequiresFlagsEnabled(Flags.FLAG_GATT_OPERATION_QUEUE)
+    public void consecutiveWriteCharacteristic_withOperationQueue_allSucceedInOrder()
+            throws Exception {
+        registerGattService();
+
+        BluetoothGattCallback gattCallback = mock(BluetoothGattCallback.class);
+        BluetoothGatt gatt = connectGattAndWaitConnection(gattCallback);
+
+        try {
+            gatt.discoverServices();
+            verify(gattCallback, timeout(10000)).onServicesDiscovered(any(), eq(GATT_SUCCESS));
+
+            BluetoothGattCharacteristic characteristic =
+                    gatt.getService(TEST_SERVICE_UUID).getCharacteristic(TEST_CHARACTERISTIC_UUID);
+
+            gatt.setOperationQueueEnabled(true);
+            assertThat(gatt.isOperationQueueEnabled()).isTrue();
+
+            byte[] newValue = new byte[] {13};
+            for (int i = 0; i < 5; i++) {
+                assertThat(
+                                gatt.writeCharacteristic(
+                                        characteristic,
+                                        newValue,
+                                        BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT))
+                        .isEqualTo(BluetoothStatusCodes.SUCCESS);
+            }
+            assertThat(gatt.readCharacteristic(characteristic)).isTrue();
+
+            InOrder inOrder = inOrder(gattCallback);
+            inOrder.verify(gattCallback, timeout(5000).times(5))
+                    .onCharacteristicWrite(any(), eq(characteristic), eq(GATT_SUCCESS));
+            inOrder.verify(gattCallback, timeout(5000))
+                    .onCharacteristicRead(
+                            any(), eq(characteristic), any(byte[].class), eq(GATT_SUCCESS));
+        } finally {
+            disconnectAndWaitDisconnection(gatt, gattCallback);
+        }
+    }
+
     @Test
     @RequiresFlagsEnabled(Flags.FLAG_GATT_FIX_MULTIPLE_DIRECT_CONNECT)
     public void connectMultiple_closeOne_shouldSuccess() {
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.bluetooth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.AttributionSource;
+import android.os.ParcelUuid;
+import android.os.RemoteException;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.UUID;
+
+/** Test cases for the operation queue of {@link BluetoothGatt}. */
+@SmallTest
+@RunWith(JUnit4.class)
+public class BluetoothGattTest {
+    private static final String TEST_ADDRESS = "00:01:02:03:04:05";
+    private static final int TEST_CLIENT_IF = 1;
+    private static final int CHARACTERISTIC_HANDLE = 3;
+    private static final int DESCRIPTOR_HANDLE = 4;
+    private static final int WRITABLE_CHARACTERISTIC_HANDLE = 6;
+    private static final UUID TEST_UUID = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+
+    @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+
+    @Mock private IBluetoothGatt mService;
+    @Mock private BluetoothGattCallback mCallback;
+
+    private BluetoothGatt mGatt;
+    private IBluetoothGattCallback mGattCallback;
+    private BluetoothGattCharacteristic mCharacteristic;
+    private BluetoothGattDescriptor mDescriptor;
+    private BluetoothGattCharacteristic mWritableCharacteristic;
+
+    @Before
+    public void setUp() throws Exception {
+        AttributionSource attributionSource =
+                InstrumentationRegistry.getInstrumentation()
+                        .getTargetContext()
+                        .getAttributionSource();
+        BluetoothDevice device =
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice(TEST_ADDRESS);
+        mGatt =
+                new BluetoothGatt(
+                        mService,
+                        device,
+                        BluetoothDevice.TRANSPORT_LE,
+                        false,
+                        BluetoothDevice.PHY_LE_1M_MASK,
+                        attributionSource);
+
+        ArgumentCaptor<IBluetoothGattCallback> gattCallback =
+                ArgumentCaptor.forClass(IBluetoothGattCallback.class);
+        assertThat(mGatt.connect(false, mCallback, null)).isTrue();
+        verify(mService)
+                .registerClient(any(ParcelUuid.class), gattCallback.capture(), anyBoolean(), any());
+        mGattCallback = gattCallback.getValue();
+        mGattCallback.onClientRegistered(BluetoothGatt.GATT_SUCCESS, TEST_CLIENT_IF);
+
+        BluetoothGattService service =
+                new BluetoothGattService(
+                        device, TEST_UUID, 1, BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        mCharacteristic =
+                new BluetoothGattCharacteristic(
+                        TEST_UUID,
+                        CHARACTERISTIC_HANDLE,
+                        BluetoothGattCharacteristic.PROPERTY_READ,
+                        BluetoothGattCharacteristic.PERMISSION_READ);
+        mDescriptor =
+                new BluetoothGattDescriptor(
+                        TEST_UUID, DESCRIPTOR_HANDLE, BluetoothGattDescriptor.PERMISSION_READ);
+        mCharacteristic.addDescriptor(mDescriptor);
+        service.addCharacteristic(mCharacteristic);
+        mWritableCharacteristic =
+                new BluetoothGattCharacteristic(
+                        TEST_UUID,
+                        WRITABLE_CHARACTERISTIC_HANDLE,
+                        BluetoothGattCharacteristic.PROPERTY_WRITE,
+                        BluetoothGattCharacteristic.PERMISSION_WRITE);
+        service.addCharacteristic(mWritableCharacteristic);
+    }
+
+    @Test
+    public void readCharacteristic_sendFailsWithQueuedOperation_sendsQueuedOperation()
+            throws Exception {
+        mGatt.setOperationQueueEnabled(true);
+        boolean[] queued = new boolean[1];
+        // Another operation is requested while the first one is being sent, then the send fails.
+        doAnswer(
+                        invocation -> {
+                            queued[0] = mGatt.readDescriptor(mDescriptor);
+                            throw new RemoteException();
+                        })
+                .when(mService)
+                .readCharacteristic(
+                        anyInt(), anyString(), eq(CHARACTERISTIC_HANDLE), anyInt(), any());
+
+        assertThat(mGatt.readCharacteristic(mCharacteristic)).isFalse();
+
+        assertThat(queued[0]).isTrue();
+        verify(mService)
+                .readDescriptor(
+                        eq(TEST_CLIENT_IF),
+                        eq(TEST_ADDRESS),
+                        eq(DESCRIPTOR_HANDLE),
+                        anyInt(),
+                        any());
+    }
+
+    @Test
+    public void writeCharacteristic_queuedWhileStackBusy_failsWithoutRetry() throws Exception {
+        mGatt.setOperationQueueEnabled(true);
+        doReturn(BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY)
+                .when(mService)
+                .writeCharacteristic(
+                        anyInt(), anyString(), anyInt(), anyInt(), anyInt(), any(), any());
+        assertThat(mGatt.readCharacteristic(mCharacteristic)).isTrue();
+        assertThat(
+                        mGatt.writeCharacteristic(
+                                mWritableCharacteristic,
+                                new byte[] {1},
+                                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT))
+                .isEqualTo(BluetoothStatusCodes.SUCCESS);
+
+        // Completing the read sends the queued write from the callback thread.
+        mGattCallback.onCharacteristicRead(
+                TEST_ADDRESS, BluetoothGatt.GATT_SUCCESS, CHARACTERISTIC_HANDLE, new byte[0]);
+
+        verify(mService, times(1))
+                .writeCharacteristic(
+                        anyInt(), anyString(), anyInt(), anyInt(), anyInt(), any(), any());
+        verify(mCallback)
+                .onCharacteristicWrite(mGatt, mWritableCharacteristic, BluetoothGatt.GATT_FAILURE);
+    }
+
+    @Test
+    public void executeReliableWrite_whileBusy_isQueued() throws Exception {
+        mGatt.setOperationQueueEnabled(true);
+        assertThat(mGatt.readCharacteristic(mCharacteristic)).isTrue();
+
+        assertThat(mGatt.executeReliableWrite()).isTrue();
+        verify(mService, never()).endReliableWrite(anyInt(), anyString(), anyBoolean(), any());
+
+        mGattCallback.onCharacteristicRead(
+                TEST_ADDRESS, BluetoothGatt.GATT_SUCCESS, CHARACTERISTIC_HANDLE, new byte[0]);
+
+        verify(mService).endReliableWrite(eq(TEST_CLIENT_IF), eq(TEST_ADDRESS), eq(true), any());
+    }
+}
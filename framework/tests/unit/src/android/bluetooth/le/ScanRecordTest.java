@@ -33,6 +33,7 @@ import org.junit.runners.JUnit4;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.function.Predicate;
 
 /**
@@ -264,6 +265,106 @@ public class ScanRecordTest {
         assertThat(data.getServiceData().get(uuid2)).isEqualTo(new byte[] {0x50, 0x64});
     }
 
+    @Test
+    public void testParserMalformedRecord() {
+        byte[] scanRecord =
+                new byte[] {
+                    0x02,
+                    0x01,
+                    0x1a, // advertising flags
+                    0x04,
+                    0x09,
+                    0x50,
+                    0x65,
+                    0x64, // name
+                    0x02,
+                    (byte) 0xff,
+                    (byte) 0xe0, // manufacturer specific data too short for its id
+                };
+
+        ScanRecord data = ScanRecord.parseFromBytes(scanRecord);
+
+        assertThat(data.getBytes()).isEqualTo(scanRecord);
+        assertThat(data.getAdvertiseFlags()).isEqualTo(-1);
+        assertThat(data.getTxPowerLevel()).isEqualTo(Integer.MIN_VALUE);
+        assertThat(data.getDeviceName()).isNull();
+        assertThat(data.getServiceUuids()).isNull();
+        assertThat(data.getServiceSolicitationUuids()).isNull();
+        assertThat(data.getManufacturerSpecificData()).isNull();
+        assertThat(data.getServiceData()).isNull();
+        assertThat(data.getAdvertisingDataMap().keySet()).containsExactly(0x01, 0x09, 0xff);
+    }
+
+    @Test
+    public void testParserFieldsDecodedOnce() {
+        byte[] scanRecord =
+                new byte[] {
+                    0x04,
+                    0x09,
+                    0x50,
+                    0x65,
+                    0x64, // name
+                    0x05,
+                    0x16,
+                    0x0b,
+                    0x11,
+                    0x50,
+                    0x64, // service data
+                };
+
+        ScanRecord data = ScanRecord.parseFromBytes(scanRecord);
+
+        assertThat(data.getServiceUuids()).isNull();
+        assertThat(data.getServiceSolicitationUuids()).isEmpty();
+        assertThat(data.getDeviceName()).isSameInstanceAs(data.getDeviceName());
+        assertThat(data.getServiceData()).isSameInstanceAs(data.getServiceData());
+        assertThat(data.getAdvertisingDataMap()).isSameInstanceAs(data.getAdvertisingDataMap());
+    }
+
+    @Test
+    public void testParserFieldsDecodedConcurrently_decodedOnce() throws Exception {
+        byte[] scanRecord =
+                new byte[] {
+                    0x04, 0x09, 0x50, 0x65, 0x64, // name
+                    0x05, 0x16, 0x0b, 0x11, 0x50, 0x64, // service data
+                };
+
+        for (int i = 0; i < 200; i++) {
+            ScanRecord data = ScanRecord.parseFromBytes(scanRecord);
+            Object[] results = new Object[2];
+            CountDownLatch start = new CountDownLatch(1);
+            Thread nameThread =
+                    new Thread(
+                            () -> {
+                                awaitUninterruptibly(start);
+                                results[0] = data.getDeviceName();
+                            });
+            Thread serviceDataThread =
+                    new Thread(
+                            () -> {
+                                awaitUninterruptibly(start);
+                                results[1] = data.getServiceData();
+                            });
+            nameThread.start();
+            serviceDataThread.start();
+            start.countDown();
+            nameThread.join();
+            serviceDataThread.join();
+
+            // A field whose decoded bit was lost would be decoded again as a new instance.
+            assertThat(data.getDeviceName()).isSameInstanceAs(results[0]);
+            assertThat(data.getServiceData()).isSameInstanceAs(results[1]);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void assertMatchesAnyField(String record, BytesMatcher matcher) {
         assertThat(
                         ScanRecord.parseFromBytes(HexDump.hexStringToByteArray(record))
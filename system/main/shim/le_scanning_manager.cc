@@ -227,6 +227,9 @@ void BleScannerInterfaceImpl::ScanFilterAdd(int filter_index, std::vector<ApcfCo
     bluetooth::hci::AdvertisingPacketContentFilterCommand command{};
     if (!parse_filter_command(command, filters[i])) {
       log::error("invalid apcf command");
+      // Still complete the operation, as the caller waits for one callback per operation
+      do_in_jni_thread(
+              base::BindOnce(cb, 0, 0, 0, btm_status_value(tBTM_STATUS::BTM_ILLEGAL_VALUE)));
       return;
     }
     new_filters.push_back(command);